@@ -0,0 +1,258 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * RowMath on the SIMD units of the CPU through the incubating Vector API,
+ * using the widest vectors the CPU has (4 doubles with AVX2, 8 with
+ * AVX-512). Pixels past the last whole vector of a row are done in scalar.
+ *
+ * This class needs JDK 16 or later, so it lives in src-vector rather than
+ * src, and is compiled and run with the incubator module added:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin src-vector/edu/sdstate/eastweb/prototype/util/VectorRowMath.java
+ * java --add-modules jdk.incubator.vector ...
+ * </pre>
+ *
+ * RowMath loads it by name, so a build without it, or a JVM without the
+ * module, just uses the scalar implementation.
+ *
+ * Each operator has its own loop with the vector operation spelled out, so
+ * that the JIT compiles it to vector instructions.
+ */
+public final class VectorRowMath extends RowMath {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final DoubleVector ZERO = DoubleVector.zero(SPECIES);
+    private static final DoubleVector ONE = DoubleVector.broadcast(SPECIES, 1);
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public void binary(int operator, double[] a, double[] b, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        switch (operator) {
+        case ADD:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        case SUBTRACT:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        case MULTIPLY:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        case DIVIDE:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        case LESS:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.LT, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case LESS_EQUAL:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.LE, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case GREATER:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.GT, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case GREATER_EQUAL:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.GE, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case EQUAL:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.EQ, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case NOT_EQUAL:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.NE, DoubleVector.fromArray(SPECIES, b, i));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case AND:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.NE, 0)
+                        .and(DoubleVector.fromArray(SPECIES, b, i).compare(VectorOperators.NE, 0));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case OR:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.NE, 0)
+                        .or(DoubleVector.fromArray(SPECIES, b, i).compare(VectorOperators.NE, 0));
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case MIN:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .min(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        case MAX:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i)
+                        .max(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Not a binary operator: " + operator);
+        }
+
+        for (; i < length; i++) {
+            out[i] = apply(operator, a[i], b[i]);
+        }
+    }
+
+    @Override
+    public void unary(int operator, double[] a, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        switch (operator) {
+        case NEGATE:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(out, i);
+            }
+            break;
+        case NOT:
+            for (; i < bound; i += LANES) {
+                final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, a, i)
+                        .compare(VectorOperators.EQ, 0);
+                ZERO.blend(ONE, mask).intoArray(out, i);
+            }
+            break;
+        case ABS:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(out, i);
+            }
+            break;
+        case SQRT:
+            for (; i < bound; i += LANES) {
+                DoubleVector.fromArray(SPECIES, a, i).sqrt().intoArray(out, i);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Not a unary operator: " + operator);
+        }
+
+        for (; i < length; i++) {
+            out[i] = apply(operator, a[i], 0);
+        }
+    }
+
+    @Override
+    public void select(double[] condition, double[] a, double[] b, double[] out, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, condition, i)
+                    .compare(VectorOperators.NE, 0);
+            DoubleVector.fromArray(SPECIES, b, i)
+                    .blend(DoubleVector.fromArray(SPECIES, a, i), mask).intoArray(out, i);
+        }
+        for (; i < length; i++) {
+            out[i] = condition[i] != 0 ? a[i] : b[i];
+        }
+    }
+
+    @Override
+    public void replaceWhere(double[] values, int offset, double[] keys, int keyOffset,
+            int length, double key, double replacement) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            final VectorMask<Double> mask = DoubleVector.fromArray(SPECIES, keys, keyOffset + i)
+                    .compare(VectorOperators.EQ, key);
+            DoubleVector.fromArray(SPECIES, values, offset + i)
+                    .blend(replacement, mask).intoArray(values, offset + i);
+        }
+        for (; i < length; i++) {
+            if (keys[keyOffset + i] == key) {
+                values[offset + i] = replacement;
+            }
+        }
+    }
+
+    @Override
+    public void filterRange(double[] values, int offset, int length, double min,
+            double max, double scale, double replacement) {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            final DoubleVector value = DoubleVector.fromArray(SPECIES, values, offset + i);
+            final VectorMask<Double> outside = value.compare(VectorOperators.LT, min)
+                    .or(value.compare(VectorOperators.GT, max));
+            value.mul(scale).blend(replacement, outside).intoArray(values, offset + i);
+        }
+        for (; i < length; i++) {
+            final double value = values[offset + i];
+            values[offset + i] = value < min || value > max ? replacement : value * scale;
+        }
+    }
+
+    /**
+     * Applies an operator to one pixel, for the tail of a row.
+     */
+    private static double apply(int operator, double a, double b) {
+        switch (operator) {
+        case ADD: return a + b;
+        case SUBTRACT: return a - b;
+        case MULTIPLY: return a * b;
+        case DIVIDE: return a / b;
+        case LESS: return a < b ? 1 : 0;
+        case LESS_EQUAL: return a <= b ? 1 : 0;
+        case GREATER: return a > b ? 1 : 0;
+        case GREATER_EQUAL: return a >= b ? 1 : 0;
+        case EQUAL: return a == b ? 1 : 0;
+        case NOT_EQUAL: return a != b ? 1 : 0;
+        case AND: return a != 0 && b != 0 ? 1 : 0;
+        case OR: return a != 0 || b != 0 ? 1 : 0;
+        case MIN: return Math.min(a, b);
+        case MAX: return Math.max(a, b);
+        case NEGATE: return -a;
+        case NOT: return a == 0 ? 1 : 0;
+        case ABS: return Math.abs(a);
+        case SQRT: return Math.sqrt(a);
+        default: throw new AssertionError(operator);
+        }
+    }
+}
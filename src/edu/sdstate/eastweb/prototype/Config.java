@@ -48,6 +48,7 @@ public class Config {
     private static final String WGS84_WGS72_TRANSFORM_KEY = "WGS84_WGS72_TRANSFORM";
     //private static final String DOWNLOAD_REFRESH_DAYS_KEY = "DOWNLOAD_REFRESH_DAYS";
     private static final String TRANSFORM_KEY = "Transform";
+    private static final String WARP_MEMORY_KEY = "WARP_MEMORY_MB";
     //private static final String HOST_ADDRESS_KEY = "HOST_ADDRESS";
     //private static final String CONTROL_PORT_KEY = "CONTROL_PORT";
     //private static final String TRANSFER_PORT_KEY = "TRANSFER_PORT";
@@ -91,6 +92,7 @@ public class Config {
     private String databaseUsername;
     private String databasePassword;
     private int downloadRefreshDays = -1;
+    private long warpMemory = 64L << 20;
     private String hostAddress;
     private int controlPort = -1;
     private int transferPort = -1;
@@ -247,6 +249,12 @@ public class Config {
         Element dfrDays=(Element) doc.getElementsByTagName(DOWNLOAD_REFRESH_DAYS_KEY).item(0);
         downloadRefreshDays=Integer.parseInt(dfrDays.getTextContent());
 
+        // Optional, in megabytes
+        Element warpMemoryMB=(Element) doc.getElementsByTagName(WARP_MEMORY_KEY).item(0);
+        if (warpMemoryMB != null) {
+            warpMemory=Long.parseLong(warpMemoryMB.getTextContent().trim()) << 20;
+        }
+
         NodeList transform=doc.getElementsByTagName(TRANSFORM_KEY);
         for (int count = 0; count < transform.getLength(); count++){
             Node temp=transform.item(count);
@@ -447,6 +455,14 @@ public class Config {
         return 5;
     }
 
+    /**
+     * Returns the approximate number of bytes of pixels a reprojection may
+     * hold in memory at once, over all of its threads.
+     */
+    public long getWarpMemory() {
+        return warpMemory;
+    }
+
     public void saveProject(ProjectInfo projectInfo) throws Exception {
         Document document = XmlUtils.newDocument("project");
         Element project = document.getDocumentElement();
@@ -497,6 +513,20 @@ public class Config {
                         Boolean.toString(projectInfo.shouldCalculateETa())));
         project.appendChild(calculateETa);
 
+        // Calculate zonal quantiles?
+        Element calculateQuantiles = document.createElement("zonal.quantiles");
+        calculateQuantiles.appendChild(
+                document.createTextNode(
+                        Boolean.toString(projectInfo.shouldCalculateQuantiles())));
+        project.appendChild(calculateQuantiles);
+
+        // Skip the clip stage?
+        Element skipClip = document.createElement("skip.clip");
+        skipClip.appendChild(
+                document.createTextNode(
+                        Boolean.toString(projectInfo.shouldSkipClip())));
+        project.appendChild(skipClip);
+
         // Projection
         writeProjection(document, project, projectInfo.getProjection());
 
@@ -682,6 +712,8 @@ public class Config {
         ModisTile[] modisTiles = null;
         ZonalSummary[] zonalSummaries = null;
         boolean calculateETa = false;
+        boolean calculateQuantiles = false;
+        boolean skipClip = false;
 
         Document document = XmlUtils.parse(getProjectFilename(name));
 
@@ -719,6 +751,10 @@ public class Config {
                 zonalSummaries = readZonalSummaries(element.getElementsByTagName("summary"));
             } else if (nodeName.equals("calculate.eta")) {
                 calculateETa = Boolean.parseBoolean(element.getTextContent());
+            } else if (nodeName.equals("zonal.quantiles")) {
+                calculateQuantiles = Boolean.parseBoolean(element.getTextContent());
+            } else if (nodeName.equals("skip.clip")) {
+                skipClip = Boolean.parseBoolean(element.getTextContent());
             }
         }
 
@@ -741,6 +777,8 @@ public class Config {
                 calculateETa
                 );
         projectInfo.setActive(active); // TODO: rearrange
+        projectInfo.setShouldCalculateQuantiles(calculateQuantiles);
+        projectInfo.setShouldSkipClip(skipClip);
 
         return projectInfo;
     }
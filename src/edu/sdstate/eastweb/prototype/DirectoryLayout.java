@@ -149,6 +149,45 @@ public final class DirectoryLayout {
                 ));
     }
 
+    public static File getProjectGridFile(ProjectInfo project, double pixelSize) throws ConfigReadException {
+        return new File(String.format(
+                "%s/grid_%s.xml",
+                getSettingsDirectory(project).getPath(),
+                Double.toString(pixelSize)
+                ));
+    }
+
+    public static File getProjectCacheDirectory(ProjectInfo project) throws ConfigReadException {
+        return new File(String.format(
+                "%s/projects/%s/cache",
+                getRootDirectory(),
+                getProjectDirectoryName(project)
+                ));
+    }
+
+    public static File getProjectWatermaskCache(ProjectInfo project, String gridKey)
+            throws ConfigReadException {
+        return new File(String.format(
+                "%s/watermask_%s.bits",
+                getProjectCacheDirectory(project).getPath(),
+                gridKey
+                ));
+    }
+
+    public static File getZoneIndexCacheDirectory(ProjectInfo project) throws ConfigReadException {
+        return new File(String.format(
+                "%s/zones",
+                getProjectCacheDirectory(project).getPath()
+                ));
+    }
+
+    public static File getClipMaskCacheDirectory(ProjectInfo project) throws ConfigReadException {
+        return new File(String.format(
+                "%s/clip",
+                getProjectCacheDirectory(project).getPath()
+                ));
+    }
+
     public static File getModisDateCache(ModisProduct product) throws ConfigReadException {
         return new File(String.format(
                 "%s/download/%s/DateCache.xml.gz",
@@ -211,6 +250,38 @@ public final class DirectoryLayout {
                 ));
     }
 
+    public static File getModisMosaicFolder(ModisProduct product, DataDate date, String key)
+            throws ConfigReadException
+            {
+        return new File(String.format(
+                "%s/download/%s/%04d/%03d/mosaic/%s",
+                getRootDirectory(),
+                getModisDirectoryName(product),
+                date.getYear(),
+                date.getDayOfYear(),
+                key
+                ));
+            }
+
+    public static File getModisMosaic(ModisProduct product, DataDate date, String key, int band)
+            throws ConfigReadException
+            {
+        return new File(String.format(
+                "%s/band%d.tif",
+                getModisMosaicFolder(product, date, key).getPath(),
+                band
+                ));
+            }
+
+    public static File getModisMosaicMetadata(ModisProduct product, DataDate date, String key)
+            throws ConfigReadException
+            {
+        return new File(String.format(
+                "%s/ModisMosaicMetadata.xml.gz",
+                getModisMosaicFolder(product, date, key).getPath()
+                ));
+            }
+
     public static File getTrmmDownload(TrmmProduct product, DataDate date) throws ConfigReadException {
         return new File(String.format(
                 "%s/download/%s/%04d/%03d/%s.bin",
@@ -292,6 +363,46 @@ public final class DirectoryLayout {
                 ));
     }
 
+    public static File getEtoCompositeFolder(DataDate date) throws ConfigReadException {
+        return new File(String.format(
+                "%s/download/eto/%04d/%03d/composite",
+                getRootDirectory(),
+                date.getYear(),
+                date.getDayOfYear()
+                ));
+    }
+
+    public static File getEtoComposite(DataDate date, String extension) throws ConfigReadException {
+        return new File(String.format(
+                "%s/composite.%s",
+                getEtoCompositeFolder(date).getPath(),
+                extension
+                ));
+    }
+
+    public static File getEtoCompositeMetadata(DataDate date) throws ConfigReadException {
+        return new File(String.format(
+                "%s/EtoCompositeMetadata.xml.gz",
+                getEtoCompositeFolder(date).getPath()
+                ));
+    }
+
+    public static File getEtoProjected(DataDate date, String gridKey) throws ConfigReadException {
+        return new File(String.format(
+                "%s/%s.tif",
+                getEtoCompositeFolder(date).getPath(),
+                gridKey
+                ));
+    }
+
+    public static File getEtoProjectedMetadata(DataDate date, String gridKey) throws ConfigReadException {
+        return new File(String.format(
+                "%s/%s.xml.gz",
+                getEtoCompositeFolder(date).getPath(),
+                gridKey
+                ));
+    }
+
     public static File getModisReprojectedFolder(ProjectInfo project, ModisProduct product,
             DataDate date) throws ConfigReadException {
         return new File(String.format(
@@ -20,6 +20,8 @@ public class ProjectInfo implements Serializable {
     private ModisTile[] modisTiles;
     private ZonalSummary[] zonalSummaries;
     private boolean calculateETa;
+    private boolean calculateQuantiles;
+    private boolean skipClip;
 
     public ProjectInfo() {
         projection = new Projection();
@@ -135,6 +137,29 @@ public class ProjectInfo implements Serializable {
         return calculateETa;
     }
 
+    /**
+     * Sets whether zonal summaries include estimated quantiles.
+     */
+    public void setShouldCalculateQuantiles(boolean calculateQuantiles) {
+        this.calculateQuantiles = calculateQuantiles;
+    }
+
+    public boolean shouldCalculateQuantiles() {
+        return calculateQuantiles;
+    }
+
+    /**
+     * Sets whether the clip stage is skipped, with the indices read through
+     * a feature window of the reprojected rasters instead.
+     */
+    public void setShouldSkipClip(boolean skipClip) {
+        this.skipClip = skipClip;
+    }
+
+    public boolean shouldSkipClip() {
+        return skipClip;
+    }
+
     @Override
     public String toString() {
         return new StringBuilder()
@@ -146,6 +171,8 @@ public class ProjectInfo implements Serializable {
         .append(", modisTiles: ")
         .append(", zonalSummaries: ")
         .append(", calculateETa: ").append(calculateETa)
+        .append(", calculateQuantiles: ").append(calculateQuantiles)
+        .append(", skipClip: ").append(skipClip)
         .append("}").toString();
     }
 
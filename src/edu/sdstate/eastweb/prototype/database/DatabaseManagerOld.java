@@ -1,8 +1,10 @@
 package edu.sdstate.eastweb.prototype.database;
 
 import java.sql.*;
+import java.util.*;
 import edu.sdstate.eastweb.prototype.*;
 import edu.sdstate.eastweb.prototype.indices.EnvironmentalIndex;
+import edu.sdstate.eastweb.prototype.zonalstatistics.GdalZonalStatisticsBatch;
 
 public class DatabaseManagerOld {
     private final Connection mConn;
@@ -124,7 +126,13 @@ public class DatabaseManagerOld {
                 mSchemaName
                 )).executeUpdate();
 
-        // Create the ZonalStats table
+        // Create the ZonalStats table, with nullable columns for the optional quantiles
+        final StringBuilder quantileColumns = new StringBuilder();
+        for (double quantile : GdalZonalStatisticsBatch.QUANTILES) {
+            quantileColumns.append(String.format("  \"%s\" double precision,\n",
+                    getQuantileColumnName(quantile)));
+        }
+
         mConn.prepareStatement(String.format(
                 "CREATE TABLE \"%1$s\".\"ZonalStats\"\n" +
                         "(\n" +
@@ -136,13 +144,15 @@ public class DatabaseManagerOld {
                         "  \"sum\" double precision NOT NULL,\n" +
                         "  \"mean\" double precision NOT NULL,\n" +
                         "  \"stdev\" double precision NOT NULL,\n" +
+                        "%2$s" +
                         "  CONSTRAINT \"pk_ZonalStats\"\n" +
                         "      PRIMARY KEY (\"index\", \"year\", \"day\", \"zoneID\"),\n" +
                         "  CONSTRAINT \"fk_ZonalStats\"\n" +
                         "      FOREIGN KEY (\"zoneID\")\n" +
                         "      REFERENCES \"%1$s\".\"Zones\" (\"zoneID\")\n" +
                         ")",
-                        mSchemaName
+                        mSchemaName,
+                        quantileColumns
                 )).executeUpdate();
 
         // Create an index for the ZonalStats table's foreign key
@@ -152,6 +162,37 @@ public class DatabaseManagerOld {
                 )).executeUpdate();
     }
 
+    /**
+     * Adds the quantile columns to a ZonalStats table that was created before
+     * they existed. Columns that are already there are left alone.
+     * @throws SQLException
+     */
+    public void addMissingQuantileColumns() throws SQLException {
+        final PreparedStatement ps = mConn.prepareStatement(
+                "SELECT \"column_name\"\n" +
+                        "FROM information_schema.columns\n" +
+                        "WHERE \"table_schema\" = ? AND \"table_name\" = 'ZonalStats'"
+                );
+        ps.setString(1, mSchemaName);
+
+        final Set<String> columns = new HashSet<String>();
+        final ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            columns.add(rs.getString(1));
+        }
+
+        for (double quantile : GdalZonalStatisticsBatch.QUANTILES) {
+            final String column = getQuantileColumnName(quantile);
+            if (!columns.contains(column)) {
+                mConn.prepareStatement(String.format(
+                        "ALTER TABLE \"%1$s\".\"ZonalStats\" ADD COLUMN \"%2$s\" double precision",
+                        mSchemaName,
+                        column
+                        )).executeUpdate();
+            }
+        }
+    }
+
     /**
      * Looks up the zoneFieldID for the specified (shapefile, field) pair.
      * Returns null if there is no matching record.
@@ -310,6 +351,35 @@ public class DatabaseManagerOld {
             int year, int day, double count, double sum, double mean, double stdev)
                     throws SQLException
                     {
+        testInsertRow(shapefile, field, zone, index, year, day, count, sum, mean, stdev, null);
+                    }
+
+    /**
+     * Creates records as needed to insert the specified zonal stats row.
+     * @param quantiles values at GdalZonalStatisticsBatch.QUANTILES, or null
+     * to leave the quantile columns untouched
+     * @throws SQLException
+     */
+    public void testInsertRow(String shapefile, String field, String zone, EnvironmentalIndex index,
+            int year, int day, double count, double sum, double mean, double stdev,
+            double[] quantiles)
+                    throws SQLException
+                    {
+        final int numQuantiles = quantiles == null ? 0 : quantiles.length;
+        if (quantiles != null && numQuantiles != GdalZonalStatisticsBatch.QUANTILES.length) {
+            throw new IllegalArgumentException("Expected a value for each quantile");
+        }
+
+        final StringBuilder quantileColumns = new StringBuilder();
+        final StringBuilder quantileValues = new StringBuilder();
+        final StringBuilder quantileUpdates = new StringBuilder();
+        for (int i = 0; i < numQuantiles; ++i) {
+            final String column = getQuantileColumnName(GdalZonalStatisticsBatch.QUANTILES[i]);
+            quantileColumns.append(",\n  \"").append(column).append("\"");
+            quantileValues.append(",\n  ?");
+            quantileUpdates.append(",\n  \"").append(column).append("\" = ?");
+        }
+
         final boolean previousAutoCommit = mConn.getAutoCommit();
         mConn.setAutoCommit(false);
         try {
@@ -352,7 +422,7 @@ public class DatabaseManagerOld {
                                 "  \"count\",\n" +
                                 "  \"sum\",\n" +
                                 "  \"mean\",\n" +
-                                "  \"stdev\"\n" +
+                                "  \"stdev\"%2$s\n" +
                                 ") VALUES (\n" +
                                 "  ?,\n" +
                                 "  ?,\n" +
@@ -361,9 +431,11 @@ public class DatabaseManagerOld {
                                 "  ?,\n" +
                                 "  ?,\n" +
                                 "  ?,\n" +
-                                "  ?\n" +
+                                "  ?%3$s\n" +
                                 ")",
-                                mSchemaName
+                                mSchemaName,
+                                quantileColumns,
+                                quantileValues
                         ));
                 psInsert.setInt(1, index.ordinal());
                 psInsert.setInt(2, year);
@@ -373,6 +445,9 @@ public class DatabaseManagerOld {
                 psInsert.setDouble(6, sum);
                 psInsert.setDouble(7, mean);
                 psInsert.setDouble(8, stdev);
+                for (int i = 0; i < numQuantiles; ++i) {
+                    psInsert.setDouble(9 + i, quantiles[i]);
+                }
                 psInsert.executeUpdate();
             } else {
                 final PreparedStatement psUpdate = mConn.prepareStatement(String.format(
@@ -381,22 +456,26 @@ public class DatabaseManagerOld {
                                 "  \"count\" = ?,\n" +
                                 "  \"sum\" = ?,\n" +
                                 "  \"mean\" = ?,\n" +
-                                "  \"stdev\" = ?\n" +
+                                "  \"stdev\" = ?%2$s\n" +
                                 "WHERE\n" +
                                 "  \"index\" = ? AND\n" +
                                 "  \"year\" = ? AND\n" +
                                 "  \"day\" = ? AND\n" +
                                 "  \"zoneID\" = ?\n",
-                                mSchemaName
+                                mSchemaName,
+                                quantileUpdates
                         ));
                 psUpdate.setDouble(1, count);
                 psUpdate.setDouble(2, sum);
                 psUpdate.setDouble(3, mean);
                 psUpdate.setDouble(4, stdev);
-                psUpdate.setInt(5, index.ordinal());
-                psUpdate.setInt(6, year);
-                psUpdate.setInt(7, day);
-                psUpdate.setInt(8, zoneId);
+                for (int i = 0; i < numQuantiles; ++i) {
+                    psUpdate.setDouble(5 + i, quantiles[i]);
+                }
+                psUpdate.setInt(5 + numQuantiles, index.ordinal());
+                psUpdate.setInt(6 + numQuantiles, year);
+                psUpdate.setInt(7 + numQuantiles, day);
+                psUpdate.setInt(8 + numQuantiles, zoneId);
                 psUpdate.executeUpdate();
             }
 
@@ -409,6 +488,14 @@ public class DatabaseManagerOld {
         }
                     }
 
+    /**
+     * Gets the name of the ZonalStats column of a quantile, e.g. "p50" for the
+     * median.
+     */
+    public static String getQuantileColumnName(double quantile) {
+        return "p" + Math.round(quantile * 100);
+    }
+
     /* private static void testCreateFakeData(DatabaseManagerOld mgr) throws SQLException {
         mgr.recreateSchema();
 
@@ -0,0 +1,617 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+
+import edu.sdstate.eastweb.prototype.util.RowMath;
+
+/**
+ * A band-math expression defining an index, such as
+ *
+ * <pre>
+ * (b2 - b1) / (b2 + b1)
+ * (b1 + b2) / 2 where b1 &gt;= minLst &amp;&amp; b2 &gt;= minLst
+ * </pre>
+ *
+ * Bands are named b1, b2, ... after the inputs of the index, in order. Other
+ * names are parameters whose values are given when a kernel is made. The
+ * operators are, by increasing precedence, ||, &amp;&amp;, comparisons
+ * (&lt; &lt;= &gt; &gt;= == !=), + -, * /, and unary - and !; the functions
+ * are min(a, b), max(a, b), abs(a), sqrt(a) and if(condition, a, b).
+ * Conditions are true when non-zero, and comparisons are 1 or 0.
+ *
+ * A pixel is no-data if any band the expression refers to is no-data there,
+ * or if the optional where clause is false.
+ *
+ * Expressions are parsed once, with constant parts folded. A kernel then
+ * evaluates the expression tree a whole row at a time, each operation in one
+ * RowMath loop over the row into a buffer of its own, so the cost per pixel is
+ * close to hand-written code, SIMD where available, and nothing is allocated
+ * per row.
+ */
+public final class BandExpression {
+    private final String mSource;
+    private final Node mValue;
+    private final Node mWhere; // Null if there is no where clause
+    private final int[] mBands; // Referenced bands, 0-based and sorted
+
+    private BandExpression(String source, Node value, Node where, int[] bands) {
+        mSource = source;
+        mValue = value;
+        mWhere = where;
+        mBands = bands;
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @throws IllegalArgumentException if it isn't well formed
+     */
+    public static BandExpression compile(String source) {
+        final Parser parser = new Parser(source);
+        final Node value = parser.parseExpression();
+        Node where = null;
+        if (parser.acceptKeyword("where")) {
+            where = parser.parseExpression();
+        }
+        parser.expectEnd();
+
+        final int[] bands = new int[parser.mBands.size()];
+        int i = 0;
+        for (Integer band : parser.mBands) {
+            bands[i++] = band;
+        }
+        return new BandExpression(source, value, where, bands);
+    }
+
+    /**
+     * Returns the 0-based indices of the bands the expression refers to.
+     */
+    public int[] getBands() {
+        return mBands.clone();
+    }
+
+    /**
+     * Returns the number of inputs the expression needs: the highest band
+     * it refers to.
+     */
+    public int getBandCount() {
+        return mBands.length == 0 ? 0 : mBands[mBands.length - 1] + 1;
+    }
+
+    /**
+     * Makes a kernel for rows of up to the given width.
+     *
+     * @param parameters values of the names used in the expression
+     * @param inputNoData no-data value of the inputs
+     * @param outputNoData value written for no-data pixels
+     * @throws IllegalArgumentException if a parameter is missing
+     */
+    public RowKernel newKernel(int width, Map<String, Double> parameters,
+            double inputNoData, double outputNoData) {
+        final Operation value = mValue.bind(width, parameters);
+        final Operation where = mWhere == null ? null : mWhere.bind(width, parameters);
+        return new Kernel(value, where, mBands, inputNoData, outputNoData);
+    }
+
+    @Override
+    public String toString() {
+        return mSource;
+    }
+
+    private static final class Kernel implements RowKernel {
+        private final Operation mValue;
+        private final Operation mWhere;
+        private final int[] mBands;
+        private final double mInputNoData;
+        private final double mOutputNoData;
+
+        Kernel(Operation value, Operation where, int[] bands, double inputNoData,
+                double outputNoData) {
+            mValue = value;
+            mWhere = where;
+            mBands = bands;
+            mInputNoData = inputNoData;
+            mOutputNoData = outputNoData;
+        }
+
+        @Override
+        public void apply(double[][] inputs, double[] output, int length) {
+            System.arraycopy(mValue.evaluate(inputs, length), 0, output, 0, length);
+
+            if (mWhere != null) {
+                final double[] where = mWhere.evaluate(inputs, length);
+                RowMath.get().replaceWhere(output, 0, where, 0, length, 0, mOutputNoData);
+            }
+
+            for (int band : mBands) {
+                RowMath.get().replaceWhere(output, 0, inputs[band], 0, length,
+                        mInputNoData, mOutputNoData);
+            }
+        }
+    }
+
+    // Operators
+    private static final int ADD = RowMath.ADD;
+    private static final int SUBTRACT = RowMath.SUBTRACT;
+    private static final int MULTIPLY = RowMath.MULTIPLY;
+    private static final int DIVIDE = RowMath.DIVIDE;
+    private static final int LESS = RowMath.LESS;
+    private static final int LESS_EQUAL = RowMath.LESS_EQUAL;
+    private static final int GREATER = RowMath.GREATER;
+    private static final int GREATER_EQUAL = RowMath.GREATER_EQUAL;
+    private static final int EQUAL = RowMath.EQUAL;
+    private static final int NOT_EQUAL = RowMath.NOT_EQUAL;
+    private static final int AND = RowMath.AND;
+    private static final int OR = RowMath.OR;
+    private static final int MIN = RowMath.MIN;
+    private static final int MAX = RowMath.MAX;
+    private static final int NEGATE = RowMath.NEGATE;
+    private static final int NOT = RowMath.NOT;
+    private static final int ABS = RowMath.ABS;
+    private static final int SQRT = RowMath.SQRT;
+
+    /**
+     * Applies an operator to constants, when folding.
+     */
+    private static double apply(int operator, double a, double b) {
+        switch (operator) {
+        case ADD: return a + b;
+        case SUBTRACT: return a - b;
+        case MULTIPLY: return a * b;
+        case DIVIDE: return a / b;
+        case LESS: return a < b ? 1 : 0;
+        case LESS_EQUAL: return a <= b ? 1 : 0;
+        case GREATER: return a > b ? 1 : 0;
+        case GREATER_EQUAL: return a >= b ? 1 : 0;
+        case EQUAL: return a == b ? 1 : 0;
+        case NOT_EQUAL: return a != b ? 1 : 0;
+        case AND: return a != 0 && b != 0 ? 1 : 0;
+        case OR: return a != 0 || b != 0 ? 1 : 0;
+        case MIN: return Math.min(a, b);
+        case MAX: return Math.max(a, b);
+        case NEGATE: return -a;
+        case NOT: return a == 0 ? 1 : 0;
+        case ABS: return Math.abs(a);
+        case SQRT: return Math.sqrt(a);
+        default: throw new AssertionError(operator);
+        }
+    }
+
+    /**
+     * A node of the parsed expression.
+     */
+    private static abstract class Node {
+        /**
+         * Makes the operation evaluating this node over rows.
+         */
+        abstract Operation bind(int width, Map<String, Double> parameters);
+    }
+
+    private static final class Constant extends Node {
+        final double mValue;
+
+        Constant(double value) {
+            mValue = value;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            return new Fill(width, mValue);
+        }
+    }
+
+    private static final class Parameter extends Node {
+        final String mName;
+
+        Parameter(String name) {
+            mName = name;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            final Double value = parameters == null ? null : parameters.get(mName);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for parameter " + mName);
+            }
+            return new Fill(width, value);
+        }
+    }
+
+    private static final class Band extends Node {
+        final int mIndex;
+
+        Band(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            return new Operation() {
+                @Override
+                double[] evaluate(double[][] inputs, int length) {
+                    return inputs[mIndex];
+                }
+            };
+        }
+    }
+
+    private static final class Unary extends Node {
+        final int mOperator;
+        final Node mOperand;
+
+        Unary(int operator, Node operand) {
+            mOperator = operator;
+            mOperand = operand;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            return new UnaryOperation(width, mOperator, mOperand.bind(width, parameters));
+        }
+    }
+
+    private static final class Binary extends Node {
+        final int mOperator;
+        final Node mLeft;
+        final Node mRight;
+
+        Binary(int operator, Node left, Node right) {
+            mOperator = operator;
+            mLeft = left;
+            mRight = right;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            return new BinaryOperation(width, mOperator,
+                    mLeft.bind(width, parameters), mRight.bind(width, parameters));
+        }
+    }
+
+    private static final class Conditional extends Node {
+        final Node mCondition;
+        final Node mThen;
+        final Node mElse;
+
+        Conditional(Node condition, Node then, Node otherwise) {
+            mCondition = condition;
+            mThen = then;
+            mElse = otherwise;
+        }
+
+        @Override
+        Operation bind(int width, Map<String, Double> parameters) {
+            return new ConditionalOperation(width, mCondition.bind(width, parameters),
+                    mThen.bind(width, parameters), mElse.bind(width, parameters));
+        }
+    }
+
+    /**
+     * Evaluates a node over a row, returning an array holding the values in
+     * its first length elements. The array may be a buffer of the operation
+     * or an input row, and must not be written to.
+     */
+    private static abstract class Operation {
+        abstract double[] evaluate(double[][] inputs, int length);
+    }
+
+    private static final class Fill extends Operation {
+        private final double[] mValues;
+
+        Fill(int width, double value) {
+            mValues = new double[width];
+            Arrays.fill(mValues, value);
+        }
+
+        @Override
+        double[] evaluate(double[][] inputs, int length) {
+            return mValues;
+        }
+    }
+
+    private static final class UnaryOperation extends Operation {
+        private final int mOperator;
+        private final Operation mOperand;
+        private final double[] mOut;
+
+        UnaryOperation(int width, int operator, Operation operand) {
+            mOperator = operator;
+            mOperand = operand;
+            mOut = new double[width];
+        }
+
+        @Override
+        double[] evaluate(double[][] inputs, int length) {
+            RowMath.get().unary(mOperator, mOperand.evaluate(inputs, length), mOut, length);
+            return mOut;
+        }
+    }
+
+    private static final class BinaryOperation extends Operation {
+        private final int mOperator;
+        private final Operation mLeft;
+        private final Operation mRight;
+        private final double[] mOut;
+
+        BinaryOperation(int width, int operator, Operation left, Operation right) {
+            mOperator = operator;
+            mLeft = left;
+            mRight = right;
+            mOut = new double[width];
+        }
+
+        @Override
+        double[] evaluate(double[][] inputs, int length) {
+            RowMath.get().binary(mOperator, mLeft.evaluate(inputs, length),
+                    mRight.evaluate(inputs, length), mOut, length);
+            return mOut;
+        }
+    }
+
+    private static final class ConditionalOperation extends Operation {
+        private final Operation mCondition;
+        private final Operation mThen;
+        private final Operation mElse;
+        private final double[] mOut;
+
+        ConditionalOperation(int width, Operation condition, Operation then, Operation otherwise) {
+            mCondition = condition;
+            mThen = then;
+            mElse = otherwise;
+            mOut = new double[width];
+        }
+
+        @Override
+        double[] evaluate(double[][] inputs, int length) {
+            RowMath.get().select(mCondition.evaluate(inputs, length),
+                    mThen.evaluate(inputs, length), mElse.evaluate(inputs, length), mOut, length);
+            return mOut;
+        }
+    }
+
+    /**
+     * A recursive descent parser, folding operations on constants as it goes.
+     */
+    private static final class Parser {
+        private final String mSource;
+        private int mPosition = 0;
+        final TreeSet<Integer> mBands = new TreeSet<Integer>();
+
+        Parser(String source) {
+            mSource = source;
+        }
+
+        Node parseExpression() {
+            Node node = parseAnd();
+            while (accept("||")) {
+                node = binary(OR, node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseComparison();
+            while (accept("&&")) {
+                node = binary(AND, node, parseComparison());
+            }
+            return node;
+        }
+
+        private Node parseComparison() {
+            final Node node = parseAdditive();
+            if (accept("<=")) {
+                return binary(LESS_EQUAL, node, parseAdditive());
+            } else if (accept(">=")) {
+                return binary(GREATER_EQUAL, node, parseAdditive());
+            } else if (accept("==")) {
+                return binary(EQUAL, node, parseAdditive());
+            } else if (accept("!=")) {
+                return binary(NOT_EQUAL, node, parseAdditive());
+            } else if (accept("<")) {
+                return binary(LESS, node, parseAdditive());
+            } else if (accept(">")) {
+                return binary(GREATER, node, parseAdditive());
+            }
+            return node;
+        }
+
+        private Node parseAdditive() {
+            Node node = parseTerm();
+            while (true) {
+                if (accept("+")) {
+                    node = binary(ADD, node, parseTerm());
+                } else if (accept("-")) {
+                    node = binary(SUBTRACT, node, parseTerm());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseTerm() {
+            Node node = parseUnary();
+            while (true) {
+                if (accept("*")) {
+                    node = binary(MULTIPLY, node, parseUnary());
+                } else if (accept("/")) {
+                    node = binary(DIVIDE, node, parseUnary());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private Node parseUnary() {
+            if (accept("-")) {
+                return unary(NEGATE, parseUnary());
+            } else if (peek("!") && !peek("!=")) {
+                accept("!");
+                return unary(NOT, parseUnary());
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            skipSpaces();
+            if (accept("(")) {
+                final Node node = parseExpression();
+                expect(")");
+                return node;
+            }
+
+            final int start = mPosition;
+            if (mPosition < mSource.length() && (Character.isDigit(mSource.charAt(mPosition))
+                    || mSource.charAt(mPosition) == '.')) {
+                return new Constant(parseNumber());
+            }
+
+            final String name = parseName();
+            if (name == null) {
+                throw error("Expected a number, band, parameter or function", start);
+            }
+
+            if (accept("(")) {
+                return parseFunction(name, start);
+            } else if (name.matches("b[0-9]+")) {
+                final int band = Integer.parseInt(name.substring(1));
+                if (band < 1) {
+                    throw error("Bands are numbered from 1", start);
+                }
+                mBands.add(band - 1);
+                return new Band(band - 1);
+            } else if (name.equals("where")) {
+                throw error("Unexpected where", start);
+            }
+            return new Parameter(name);
+        }
+
+        private Node parseFunction(String name, int start) {
+            if (name.equals("abs") || name.equals("sqrt")) {
+                final Node operand = parseExpression();
+                expect(")");
+                return unary(name.equals("abs") ? ABS : SQRT, operand);
+            } else if (name.equals("min") || name.equals("max")) {
+                final Node left = parseExpression();
+                expect(",");
+                final Node right = parseExpression();
+                expect(")");
+                return binary(name.equals("min") ? MIN : MAX, left, right);
+            } else if (name.equals("if")) {
+                final Node condition = parseExpression();
+                expect(",");
+                final Node then = parseExpression();
+                expect(",");
+                final Node otherwise = parseExpression();
+                expect(")");
+                if (condition instanceof Constant) {
+                    return ((Constant) condition).mValue != 0 ? then : otherwise;
+                }
+                return new Conditional(condition, then, otherwise);
+            }
+            throw error("Unknown function " + name, start);
+        }
+
+        private double parseNumber() {
+            final int start = mPosition;
+            while (mPosition < mSource.length() && (Character.isDigit(mSource.charAt(mPosition))
+                    || mSource.charAt(mPosition) == '.')) {
+                mPosition++;
+            }
+            if (mPosition < mSource.length() && Character.toLowerCase(mSource.charAt(mPosition)) == 'e') {
+                mPosition++;
+                if (mPosition < mSource.length() && (mSource.charAt(mPosition) == '+'
+                        || mSource.charAt(mPosition) == '-')) {
+                    mPosition++;
+                }
+                while (mPosition < mSource.length() && Character.isDigit(mSource.charAt(mPosition))) {
+                    mPosition++;
+                }
+            }
+
+            try {
+                return Double.parseDouble(mSource.substring(start, mPosition));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number", start);
+            }
+        }
+
+        private String parseName() {
+            skipSpaces();
+            final int start = mPosition;
+            if (mPosition < mSource.length() && (Character.isLetter(mSource.charAt(mPosition))
+                    || mSource.charAt(mPosition) == '_')) {
+                mPosition++;
+                while (mPosition < mSource.length()
+                        && (Character.isLetterOrDigit(mSource.charAt(mPosition))
+                                || mSource.charAt(mPosition) == '_')) {
+                    mPosition++;
+                }
+                return mSource.substring(start, mPosition);
+            }
+            return null;
+        }
+
+        boolean acceptKeyword(String keyword) {
+            final int start = mPosition;
+            if (keyword.equals(parseName())) {
+                return true;
+            }
+            mPosition = start;
+            return false;
+        }
+
+        void expectEnd() {
+            skipSpaces();
+            if (mPosition != mSource.length()) {
+                throw error("Unexpected input", mPosition);
+            }
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw error("Expected " + token, mPosition);
+            }
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                mPosition += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(String token) {
+            skipSpaces();
+            return mSource.startsWith(token, mPosition);
+        }
+
+        private void skipSpaces() {
+            while (mPosition < mSource.length() && Character.isWhitespace(mSource.charAt(mPosition))) {
+                mPosition++;
+            }
+        }
+
+        private IllegalArgumentException error(String message, int position) {
+            return new IllegalArgumentException(String.format("%s at %d in \"%s\"",
+                    message, position, mSource));
+        }
+
+        private static Node unary(int operator, Node operand) {
+            if (operand instanceof Constant) {
+                return new Constant(apply(operator, ((Constant) operand).mValue, 0));
+            }
+            return new Unary(operator, operand);
+        }
+
+        private static Node binary(int operator, Node left, Node right) {
+            if (left instanceof Constant && right instanceof Constant) {
+                return new Constant(apply(operator, ((Constant) left).mValue,
+                        ((Constant) right).mValue));
+            }
+            return new Binary(operator, left, right);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+import org.gdal.ogr.Layer;
+
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
+import edu.sdstate.eastweb.prototype.util.Signature;
+
+/**
+ * Caches the rasterized feature masks used by GdalClipper. A mask only depends
+ * on the feature file and the clip grid, so it is rasterized once and reused
+ * for every band, product and date clipped to that grid. Masks are kept in
+ * memory and, when a cache directory is given, as memory-mapped bit sets on
+ * disk.
+ */
+public final class ClipMask {
+    private static final String[] SHAPEFILE_EXTENSIONS = { ".shp", ".shx", ".dbf", ".prj" };
+
+    private static final Map<Long, MappedBitSet> sMasks = new HashMap<Long, MappedBitSet>();
+
+    private ClipMask() {
+    }
+
+    /**
+     * Returns the mask of the layer on the grid of the given dataset; a set
+     * bit means the pixel is inside a feature.
+     *
+     * @param featureFile file the layer was opened from
+     * @param layer the feature layer
+     * @param grid dataset defining the clip grid; only its georeferencing and
+     * size are used
+     * @param cacheDirectory directory of the cache files, or null
+     */
+    public static MappedBitSet get(File featureFile, Layer layer, Dataset grid,
+            File cacheDirectory) throws IOException {
+        return get(featureFile, layer, grid, cacheDirectory, false);
+    }
+
+    /**
+     * Returns the mask of the layer on the grid of the given dataset.
+     *
+     * @param allTouched whether every pixel touched by a feature is set,
+     * rather than only those whose center is inside; used for coarse grids
+     * where partly covered pixels still count
+     */
+    public static MappedBitSet get(File featureFile, Layer layer, Dataset grid,
+            File cacheDirectory, boolean allTouched) throws IOException {
+        final double[] transform;
+        final int width;
+        final int height;
+        final String projection;
+        synchronized (GdalUtils.lockObject) {
+            transform = grid.GetGeoTransform();
+            width = grid.GetRasterXSize();
+            height = grid.GetRasterYSize();
+            projection = grid.GetProjection();
+        }
+
+        final long gridSignature = new Signature()
+        .add(transform)
+        .add(width)
+        .add(height)
+        .add(projection)
+        .get();
+
+        final Signature signature = new Signature().add(gridSignature).add(allTouched ? 1 : 0);
+        final String baseName = featureFile.getName().replaceFirst("\\.[^.]*$", "");
+        for (String extension : SHAPEFILE_EXTENSIONS) {
+            final File file = new File(featureFile.getParentFile(), baseName + extension);
+            if (file.exists()) {
+                signature.add(file);
+            }
+        }
+
+        synchronized (sMasks) {
+            MappedBitSet mask = sMasks.get(signature.get());
+            if (mask != null) {
+                return mask;
+            }
+
+            final File cacheFile = cacheDirectory == null ? null : new File(cacheDirectory,
+                    String.format("%s.%016x%s.bits", baseName, gridSignature,
+                            allTouched ? ".touched" : ""));
+            if (cacheFile != null) {
+                mask = MappedBitSet.open(cacheFile, signature.get());
+            }
+            if (mask == null) {
+                final MappedBitSet.Builder builder = rasterize(layer, transform, width, height,
+                        projection, allTouched);
+                mask = cacheFile == null
+                        ? MappedBitSet.wrap(builder)
+                        : MappedBitSet.write(cacheFile, signature.get(), builder);
+            }
+
+            sMasks.put(signature.get(), mask);
+            return mask;
+        }
+    }
+
+    private static MappedBitSet.Builder rasterize(Layer layer, double[] transform,
+            int width, int height, String projection, boolean allTouched) {
+        final MappedBitSet.Builder builder = new MappedBitSet.Builder(width, height);
+
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final Dataset maskDS = gdal.GetDriverByName("MEM").Create("", width, height, 1,
+                    gdalconst.GDT_Byte);
+            try {
+                maskDS.SetProjection(projection);
+                maskDS.SetGeoTransform(transform);
+                maskDS.GetRasterBand(1).Fill(0);
+
+                final Vector<String> options = new Vector<String>();
+                if (allTouched) {
+                    options.add("ALL_TOUCHED=TRUE");
+                }
+                gdal.RasterizeLayer(maskDS, new int[] {1}, layer, new double[] {1}, options);
+
+                final byte[] row = new byte[width];
+                for (int y = 0; y < height; y++) {
+                    maskDS.GetRasterBand(1).ReadRaster(0, y, width, 1, row);
+                    for (int x = 0; x < width; x++) {
+                        if (row[x] != 0) {
+                            builder.set(x, y);
+                        }
+                    }
+                }
+            } finally {
+                maskDS.delete();
+            }
+        }
+
+        return builder;
+    }
+}
@@ -0,0 +1,53 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DataDate;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+
+/**
+ * Calculates an index defined by a band expression, a row at a time. The
+ * expression can use the parameters minLst and maxLst, the project's LST
+ * bounds in Kelvin.
+ */
+public class ExpressionCalculator extends IndicesFramework {
+    private final BandExpression mExpression;
+    private final Map<String, Double> mParameters = new HashMap<String, Double>();
+    private RowKernel mKernel;
+    private int mKernelWidth;
+
+    /**
+     * @param inputs the rasters named b1, b2, ... by the expression
+     * @param allTouched whether pixels partly inside the feature are kept
+     */
+    public ExpressionCalculator(ProjectInfo project, DataDate date, String feature,
+            EnvironmentalIndex index, BandExpression expression, File[] inputs,
+            boolean allTouched) throws ConfigReadException {
+        if (expression.getBandCount() > inputs.length) {
+            throw new IllegalArgumentException(String.format(
+                    "%s refers to %d bands but %s has %d inputs",
+                    expression, expression.getBandCount(), index, inputs.length));
+        }
+
+        mExpression = expression;
+        mParameters.put("minLst", project.getMinLst() + 273.15);
+        mParameters.put("maxLst", project.getMaxLst() + 273.15);
+
+        setInputFiles(inputs);
+        setOutputFile(DirectoryLayout.getIndex(project, index, date, feature));
+        setFeature(project, feature, allTouched);
+    }
+
+    @Override
+    protected void calculateRow(double[][] inputs, double[] output, int length) {
+        if (mKernel == null || mKernelWidth < length) {
+            mKernel = mExpression.newKernel(length, mParameters, CLIP_NODATA, OUTPUT_NODATA);
+            mKernelWidth = length;
+        }
+        mKernel.apply(inputs, output, length);
+    }
+}
@@ -0,0 +1,144 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+import org.gdal.ogr.DataSource;
+import org.gdal.ogr.Layer;
+import org.gdal.ogr.ogr;
+
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
+
+/**
+ * The window of a raster covering a feature layer's extent, together with the
+ * cached mask of the layer on that window. Reading a raster through the window
+ * gives the same pixels a clip of the raster would contain, without writing
+ * the clip; the window is aligned with the raster's own pixels.
+ */
+public final class FeatureWindow {
+    private final int mXOffset;
+    private final int mYOffset;
+    private final int mWidth;
+    private final int mHeight;
+    private final double[] mTransform;
+    private final String mProjection;
+    private final MappedBitSet mMask;
+
+    private FeatureWindow(int xOffset, int yOffset, int width, int height,
+            double[] transform, String projection, MappedBitSet mask) {
+        mXOffset = xOffset;
+        mYOffset = yOffset;
+        mWidth = width;
+        mHeight = height;
+        mTransform = transform;
+        mProjection = projection;
+        mMask = mask;
+    }
+
+    /**
+     * Returns the window of the raster covering the layer of the feature file.
+     * The raster must be north up and in the layer's projection.
+     *
+     * @param featureFile file of the feature layer
+     * @param raster dataset defining the grid; only its georeferencing and
+     * size are used
+     * @param maskCache directory where the masks are cached, or null
+     * @param allTouched whether every pixel touched by a feature is inside
+     */
+    public static FeatureWindow get(File featureFile, Dataset raster, File maskCache,
+            boolean allTouched) throws IOException {
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final DataSource featureDS = ogr.Open(featureFile.getPath()); GdalUtils.errorCheck();
+            try {
+                final Layer layer = featureDS.GetLayer(0);
+                final double[] extent = layer.GetExtent(); // Ordered: left, right, bottom, top
+
+                final double[] transform = raster.GetGeoTransform();
+                assert(transform[2] == 0 && transform[4] == 0);
+
+                // Pixels overlapping the extent, within the raster
+                final int left = Math.max(0,
+                        (int) Math.floor((extent[0] - transform[0]) / transform[1]));
+                final int right = Math.min(raster.GetRasterXSize(),
+                        (int) Math.ceil((extent[1] - transform[0]) / transform[1]));
+                final int top = Math.max(0,
+                        (int) Math.floor((extent[3] - transform[3]) / transform[5]));
+                final int bottom = Math.min(raster.GetRasterYSize(),
+                        (int) Math.ceil((extent[2] - transform[3]) / transform[5]));
+                final int width = Math.max(1, right - left);
+                final int height = Math.max(1, bottom - top);
+
+                final double[] windowTransform = new double[] {
+                        transform[0] + left * transform[1], transform[1], 0,
+                        transform[3] + top * transform[5], 0, transform[5]
+                };
+                final String projection = raster.GetProjection();
+
+                // The mask only depends on the window's grid
+                final Dataset gridDS = gdal.GetDriverByName("MEM").Create("", width, height, 1,
+                        gdalconst.GDT_Byte);
+                final MappedBitSet mask;
+                try {
+                    gridDS.SetGeoTransform(windowTransform);
+                    gridDS.SetProjection(projection);
+                    mask = ClipMask.get(featureFile, layer, gridDS, maskCache, allTouched);
+                } finally {
+                    gridDS.delete();
+                }
+
+                return new FeatureWindow(left, top, width, height, windowTransform,
+                        projection, mask);
+            } finally {
+                featureDS.delete();
+            }
+        }
+    }
+
+    public int getXOffset() {
+        return mXOffset;
+    }
+
+    public int getYOffset() {
+        return mYOffset;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the geotransform of the window, for rasters written on it.
+     */
+    public double[] getGeoTransform() {
+        return mTransform.clone();
+    }
+
+    public String getProjection() {
+        return mProjection;
+    }
+
+    /**
+     * Returns the mask of the window, one bit per pixel row by row, set for
+     * pixels inside a feature.
+     */
+    public MappedBitSet getMask() {
+        return mMask;
+    }
+
+    /**
+     * Returns whether the pixel (x, y) of the window is inside a feature.
+     */
+    public boolean contains(int x, int y) {
+        return mMask.get(x, y);
+    }
+}
@@ -4,23 +4,24 @@ import java.io.File;
 import java.util.Arrays;
 import org.gdal.gdal.Band;
 import org.gdal.gdal.Dataset;
-import org.gdal.gdal.Transformer;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
-import org.gdal.ogr.DataSource;
-import org.gdal.ogr.Layer;
-import org.gdal.ogr.ogr;
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
 
 public class GdalClipper implements Clipper {
 
     private final File mRaster;
     private final File mFeature;
     private final File mOutput;
+    private final File mMaskCache;
+    private final boolean mAllTouched;
     //private final String mFormat;
 
     /**
-     * The feature extent must be a subset of the raster extent.
+     * The raster must be north up and in the feature's projection; parts of
+     * the feature outside the raster are left out.
      * 
      * @param raster Filename of GDAL supported raster with one band.
      * @param feature Filename of GDAL supported feature.
@@ -28,9 +29,41 @@ public class GdalClipper implements Clipper {
      * @param format GDAL format string with copy creation support. @see [GDAL format str html]
      */
     public GdalClipper(File raster, File feature, File output, String format) {
+        this(raster, feature, output, format, null);
+    }
+
+    /**
+     * The raster must be north up and in the feature's projection; parts of
+     * the feature outside the raster are left out.
+     * 
+     * @param raster Filename of GDAL supported raster with one band.
+     * @param feature Filename of GDAL supported feature.
+     * @param output Filename for GeoTiff output raster.
+     * @param format GDAL format string with copy creation support. @see [GDAL format str html]
+     * @param maskCache Directory where rasterized feature masks are cached, or null.
+     */
+    public GdalClipper(File raster, File feature, File output, String format, File maskCache) {
+        this(raster, feature, output, format, maskCache, false);
+    }
+
+    /**
+     * The raster must be north up and in the feature's projection; parts of
+     * the feature outside the raster are left out.
+     * 
+     * @param raster Filename of GDAL supported raster with one band.
+     * @param feature Filename of GDAL supported feature.
+     * @param output Filename for GeoTiff output raster.
+     * @param format GDAL format string with copy creation support. @see [GDAL format str html]
+     * @param maskCache Directory where rasterized feature masks are cached, or null.
+     * @param allTouched Whether to keep every pixel the feature touches, for coarse rasters.
+     */
+    public GdalClipper(File raster, File feature, File output, String format, File maskCache,
+            boolean allTouched) {
         mRaster = raster;
         mFeature = feature;
         mOutput = output;
+        mMaskCache = maskCache;
+        mAllTouched = allTouched;
         //mFormat = format;
     }
 
@@ -39,89 +72,57 @@ public class GdalClipper implements Clipper {
         GdalUtils.register();
 
         synchronized (GdalUtils.lockObject) {
-            Dataset rasterDS = gdal.Open(mRaster.getPath());
-            DataSource featureDS = ogr.Open(mFeature.getPath());
-            Layer featureLyr = featureDS.GetLayer(0);
-
-            final int pixelSize = (int) Math.abs(rasterDS.GetGeoTransform()[1]); // FIXME: getting pixel size won't work for some datasets
-            System.out.println("PIXEL SIZE: " + pixelSize);
+            Dataset rasterDS = gdal.Open(mRaster.getPath()); GdalUtils.errorCheck();
 
-            double[] featureExtent = featureLyr.GetExtent();
-            System.out.println(Arrays.toString(featureExtent));
+            // The window of the raster's own pixels covering the feature, with
+            // its cached mask; rasters on the project grid stay aligned with it
+            FeatureWindow window = FeatureWindow.get(mFeature, rasterDS, mMaskCache, mAllTouched);
+            final int width = window.getWidth();
+            final int height = window.getHeight();
 
             Dataset outputDS = gdal.GetDriverByName("GTiff").Create(
                     mOutput.getPath(),
-                    (int) Math.ceil((featureExtent[1]-featureExtent[0])/pixelSize),
-                    (int) Math.ceil((featureExtent[3]-featureExtent[2])/pixelSize),
+                    width,
+                    height,
                     1,
                     gdalconst.GDT_Int16
-                    );
-
-            outputDS.SetProjection(featureLyr.GetSpatialRef().ExportToWkt());
-            outputDS.SetGeoTransform(new double[] {
-                    featureExtent[0], pixelSize, 0,
-                    featureExtent[2] + outputDS.GetRasterYSize()*pixelSize, 0, -pixelSize
-            });
-
-            System.out.println(Arrays.toString(outputDS.GetGeoTransform()));
-
-            // Get pixel coordinate in output raster of corner of zone raster
-            Transformer transformer = new Transformer(outputDS, rasterDS, null);
-
-            double[] point = new double[] {-0.5, -0.5, 0}; // Location of corner of first zone raster pixel
-
-            transformer.TransformPoint(0, point);
-            //int xOffset = (int) Math.round(point[0]);
-            //int yOffset = (int) Math.round(point[1]);
-
-            Dataset maskDS = gdal.GetDriverByName("MEM").Create(
-                    "",
-                    (int) Math.ceil((featureExtent[1]-featureExtent[0])/pixelSize),
-                    (int) Math.ceil((featureExtent[3]-featureExtent[2])/pixelSize),
-                    1,
-                    gdalconst.GDT_Int16);
-
-            maskDS.SetProjection(featureLyr.GetSpatialRef().ExportToWkt());
-            //zoneDS.SetProjection(rasterDS.GetProjection());
-            maskDS.SetGeoTransform(new double[] {
-                    featureExtent[0], pixelSize, 0,
-                    featureExtent[2] + outputDS.GetRasterYSize()*pixelSize, 0, -pixelSize
-            });
-
-            maskDS.GetRasterBand(1).Fill(0); // FIXME: necessary?
-
-            gdal.RasterizeLayer(maskDS, new int[] {1}, featureLyr);
-
-            int[] maskArray = new int[maskDS.GetRasterXSize()];
-            int[] rasterArray = new int[maskDS.GetRasterXSize()];
-            for (int y=0; y<maskDS.GetRasterYSize(); y++) {
-                maskDS.GetRasterBand(1).ReadRaster(0, y, maskDS.GetRasterXSize(), 1, maskArray);
-                /* removed offsets from the parameters in the following statement
-                 *  rasterDS.GetRasterBand(1).ReadRaster(xOffset, yOffset + y, maskDS.GetRasterXSize(), 1, rasterArray);
-                 *  8/28/13 by J. Hu
-                 */
-
-                rasterDS.GetRasterBand(1).ReadRaster(0, y, maskDS.GetRasterXSize(), 1, rasterArray);
-                for (int i=0; i<maskArray.length; i++) {
-                    if (maskArray[i] == 0) { // FIXME
-                        rasterArray[i] = 32767; // FIXME
+                    ); GdalUtils.errorCheck();
+
+            outputDS.SetProjection(window.getProjection());
+            outputDS.SetGeoTransform(window.getGeoTransform());
+
+            // Copy the runs of pixels inside the feature
+            MappedBitSet mask = window.getMask();
+            short[] rasterArray = new short[width];
+            short[] outputArray = new short[width];
+            BandStatistics statistics = new BandStatistics();
+            for (int y=0; y<height; y++) {
+                rasterDS.GetRasterBand(1).ReadRaster(window.getXOffset(), window.getYOffset() + y,
+                        width, 1, rasterArray);
+                Arrays.fill(outputArray, (short) 32767); // FIXME
+
+                final int rowStart = y * width;
+                final int rowEnd = rowStart + width;
+                int start = mask.nextSetBit(rowStart);
+                while (start != -1 && start < rowEnd) {
+                    final int end = Math.min(mask.nextClearBit(start), rowEnd);
+                    System.arraycopy(rasterArray, start - rowStart, outputArray, start - rowStart, end - start);
+                    for (int x = start - rowStart; x < end - rowStart; x++) {
+                        if (outputArray[x] != 32767) {
+                            statistics.add(outputArray[x]);
+                        }
                     }
+                    start = mask.nextSetBit(end);
                 }
 
-                outputDS.GetRasterBand(1).WriteRaster(0, y, maskDS.GetRasterXSize(), 1, rasterArray);
-            }
-
-            // Calculate statistics
-            for (int i=1; i<=outputDS.GetRasterCount(); i++) {
-                Band band = outputDS.GetRasterBand(i);
-
-                band.SetNoDataValue(32767); // FIXME
-                band.ComputeStatistics(false);
+                outputDS.GetRasterBand(1).WriteRaster(0, y, width, 1, outputArray);
             }
 
-            maskDS.GetRasterBand(1).ComputeStatistics(false);
+            // Store the statistics gathered while copying
+            Band band = outputDS.GetRasterBand(1);
+            band.SetNoDataValue(32767); // FIXME
+            statistics.apply(band);
 
-            maskDS.delete();
             rasterDS.delete();
             outputDS.delete();
         }
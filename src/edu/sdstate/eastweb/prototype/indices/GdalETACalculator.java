@@ -1,6 +1,9 @@
 package edu.sdstate.eastweb.prototype.indices;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.Transformer;
@@ -12,9 +15,12 @@ import edu.sdstate.eastweb.prototype.DataDate;
 import edu.sdstate.eastweb.prototype.DirectoryLayout;
 import edu.sdstate.eastweb.prototype.ProjectInfo;
 import edu.sdstate.eastweb.prototype.download.ModisProduct;
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
 
-public class GdalETACalculator extends IndicesFramework {
+public class GdalETACalculator extends PixelCalculator {
+    // Larger extents keep the corrected LST off the heap
+    private static final long IN_HEAP_PIXELS = 1L << 24;
 
     final File mLst; // Daytime LST
     final File mElevation;
@@ -22,9 +28,11 @@ public class GdalETACalculator extends IndicesFramework {
     final File mEta;
     final double mMinLst;
     final double mMaxLst;
+    final File mFeature; // Null unless the LST is read through a feature window
+    final File mMaskCache;
 
     public GdalETACalculator(ProjectInfo mProject, DataDate mDate, String feature, EnvironmentalIndex mIndex ) throws ConfigReadException {
-        mLst = DirectoryLayout.getModisClip(mProject, mDate,
+        mLst = getModisInput(mProject, mDate,
                 ModisProduct.LST, feature, "LST_Day_1km");
         mElevation = new File(DirectoryLayout.getSettingsDirectory(mProject),
                 mProject.getElevation());
@@ -32,35 +40,39 @@ public class GdalETACalculator extends IndicesFramework {
         mEta = DirectoryLayout.getIndex(mProject, mIndex, mDate, feature);
         mMinLst = mProject.getMinLst() + 273.15;
         mMaxLst = mProject.getMaxLst() + 273.15;
+        mFeature = mProject.shouldSkipClip() ? getFeatureFile(mProject, feature) : null;
+        mMaskCache = DirectoryLayout.getClipMaskCacheDirectory(mProject);
     }
 
+    /**
+     * Calculates ETa in two passes over the rows: the first corrects the LST
+     * for elevation and finds the hot and cold pixels, the second scales ETo
+     * by the resulting ETf. The corrected LST is kept in memory between the
+     * passes, off the heap for large extents, so no intermediate rasters are
+     * written.
+     */
     @Override
     public void calculate() throws Exception {
         GdalUtils.register();
 
         synchronized (GdalUtils.lockObject) {
-
-            // Calculate corrected LST
             Dataset lstDS = gdal.Open(mLst.getPath());
 
-            final int WIDTH = lstDS.GetRasterXSize();
-            final int HEIGHT = lstDS.GetRasterYSize();
+            // The LST and ETo are on the project grid, read through the window
+            final FeatureWindow window = mFeature == null ? null
+                    : FeatureWindow.get(mFeature, lstDS, mMaskCache, false);
+            final int WIDTH = window == null ? lstDS.GetRasterXSize() : window.getWidth();
+            final int HEIGHT = window == null ? lstDS.GetRasterYSize() : window.getHeight();
+            final int X_OFFSET = window == null ? 0 : window.getXOffset();
+            final int Y_OFFSET = window == null ? 0 : window.getYOffset();
 
             Dataset elevationDS = gdal.Open(mElevation.getPath());
-            Dataset correctedLstDS =
-                    gdal.GetDriverByName("GTiff").Create(
-                            new File(mEta.getParent(), "clst.tif").getPath(), // FIXME
-                            WIDTH, HEIGHT, 1, gdalconst.GDT_Float32);
-            Dataset etfDS =
-                    gdal.GetDriverByName("GTiff").Create(
-                            new File(mEta.getParent(), "etf.tif").getPath(), // FIXME
-                            WIDTH, HEIGHT, 1, gdalconst.GDT_Float32);
             Dataset etoDS = gdal.Open(mEto.getPath());
             Dataset etaDS =
                     gdal.GetDriverByName("GTiff").Create(mEta.getPath(), WIDTH,
                             HEIGHT, 1, gdalconst.GDT_Float32);
             etaDS.SetProjection(lstDS.GetProjection());
-            etaDS.SetGeoTransform(lstDS.GetGeoTransform());
+            etaDS.SetGeoTransform(window == null ? lstDS.GetGeoTransform() : window.getGeoTransform());
 
             assert (lstDS.GetRasterXSize() == elevationDS.GetRasterXSize());
             assert (lstDS.GetRasterYSize() == elevationDS.GetRasterYSize());
@@ -71,85 +83,82 @@ public class GdalETACalculator extends IndicesFramework {
             Transformer transformer = new Transformer(lstDS, elevationDS, null);
 
             // Location of corner of first zone raster pixel
-            double[] point = new double[] { -0.5, -0.5, 0 };
+            double[] point = new double[] { X_OFFSET - 0.5, Y_OFFSET - 0.5, 0 };
 
             transformer.TransformPoint(0, point);
             int xOffset = (int) Math.round(point[0]);
             int yOffset = (int) Math.round(point[1]);
 
+            // Pass 1: corrected LST, 0 where there is none
+            final long pixels = (long) WIDTH * HEIGHT;
+            final FloatBuffer corrected = pixels <= IN_HEAP_PIXELS
+                    ? FloatBuffer.allocate((int) pixels)
+                    : ByteBuffer.allocateDirect((int) (pixels * 4)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            Double[] lstNoData = new Double[1];
+            lstDS.GetRasterBand(1).GetNoDataValue(lstNoData);
             double[] lstArray = new double[WIDTH];
             double[] elevationArray = new double[WIDTH];
-            double[] correctedArray = new double[WIDTH];
+            float[] correctedArray = new float[WIDTH];
+            float hot = Float.NEGATIVE_INFINITY;
+            float cold = Float.POSITIVE_INFINITY;
             for (int y = 0; y < HEIGHT; y++) {
-                lstDS.GetRasterBand(1).ReadRaster(0, y, WIDTH, 1, lstArray);
+                lstDS.GetRasterBand(1).ReadRaster(X_OFFSET, Y_OFFSET + y, WIDTH, 1, lstArray);
+                if (window != null) {
+                    // As the LST clip would hold it
+                    toClipValues(lstArray, WIDTH, lstNoData[0]);
+                }
                 elevationDS.GetRasterBand(1).ReadRaster(xOffset, yOffset + y,
                         WIDTH, 1, elevationArray);
                 for (int x = 0; x < WIDTH; x++) {
-                    if (lstArray[x] != 32767 && lstArray[x] > mMinLst
+                    if ((window == null || window.contains(x, y))
+                            && lstArray[x] != 32767 && lstArray[x] > mMinLst
                             && lstArray[x] < mMaxLst
                             && elevationArray[x] != -3.4028234663852886E38) {
                         // FIXME: assumes elevation hasn't been corrected yet
+                        // Rounded to float, as the hot and cold pixels come from it
                         correctedArray[x] =
-                                lstArray[x] + (elevationArray[x] * 0.0065);
+                                (float) (lstArray[x] + (elevationArray[x] * 0.0065));
                     } else {
                         correctedArray[x] = 0;
                     }
-                }
-                correctedLstDS.GetRasterBand(1).WriteRaster(0, y, WIDTH, 1,
-                        correctedArray);
-            }
 
-            // Calculate ETf
-            final double[] min = new double[1];
-            final double[] max = new double[1];
-            correctedLstDS.GetRasterBand(1).SetNoDataValue(0);
-            correctedLstDS.GetRasterBand(1).ComputeStatistics(false, min, max);
-            final double hot = max[0];
-            final double cold = min[0];
-
-            double[] etfArray = new double[WIDTH];
-            for (int y = 0; y < HEIGHT; y++) {
-                correctedLstDS.GetRasterBand(1).ReadRaster(0, y, WIDTH, 1,
-                        correctedArray);
-                for (int x = 0; x < WIDTH; x++) {
                     if (correctedArray[x] != 0) {
-                        etfArray[x] = (hot - correctedArray[x]) / (hot - cold);
-                    } else {
-                        etfArray[x] = 0;
+                        hot = Math.max(hot, correctedArray[x]);
+                        cold = Math.min(cold, correctedArray[x]);
                     }
                 }
-                etfDS.GetRasterBand(1).WriteRaster(0, y, WIDTH, 1, etfArray);
+                corrected.put(correctedArray, 0, WIDTH);
             }
 
-            // Calculate ETa
+            // Pass 2: ETa from ETf, 0 where there is none
             double[] etoArray = new double[WIDTH];
             double[] etaArray = new double[WIDTH];
+            BandStatistics etaStatistics = new BandStatistics();
+            corrected.rewind();
             for (int y = 0; y < HEIGHT; y++) {
-                etfDS.GetRasterBand(1).ReadRaster(0, y, WIDTH, 1, etfArray);
-                etoDS.GetRasterBand(1).ReadRaster(0, y, WIDTH, 1, etoArray);
+                corrected.get(correctedArray, 0, WIDTH);
+                etoDS.GetRasterBand(1).ReadRaster(X_OFFSET, Y_OFFSET + y, WIDTH, 1, etoArray);
                 for (int x = 0; x < WIDTH; x++) {
-                    if (etfArray[x] != 0) {
-                        etaArray[x] = etfArray[x] * etoArray[x];
+                    // Rounded to float, as ETf used to be stored as Float32
+                    final double etf = correctedArray[x] != 0
+                            ? (float) (((double) hot - correctedArray[x]) / ((double) hot - cold)) : 0;
+                    if (etf != 0) {
+                        etaArray[x] = etf * etoArray[x];
                     } else {
                         etaArray[x] = 0;
                     }
                 }
                 etaDS.GetRasterBand(1).WriteRaster(0, y, WIDTH, 1, etaArray);
+                etaStatistics.addAll(etaArray, 0, WIDTH, 0);
             }
 
             // Save and cleanup
-            correctedLstDS.SetProjection(lstDS.GetProjection());
-            correctedLstDS.GetRasterBand(1).SetNoDataValue(0);
-            correctedLstDS.GetRasterBand(1).ComputeStatistics(false);
-            etfDS.SetProjection(lstDS.GetProjection());
-            etfDS.GetRasterBand(1).SetNoDataValue(0);
-            etfDS.GetRasterBand(1).ComputeStatistics(false);
             etaDS.GetRasterBand(1).SetNoDataValue(0);
-            etaDS.GetRasterBand(1).ComputeStatistics(false);
+            etaStatistics.apply(etaDS.GetRasterBand(1));
 
+            transformer.delete();
+            lstDS.delete();
             elevationDS.delete();
-            correctedLstDS.delete();
-            etfDS.delete();
             etoDS.delete();
             etaDS.delete();
         }
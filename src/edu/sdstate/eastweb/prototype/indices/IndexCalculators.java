@@ -0,0 +1,138 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DataDate;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.download.ModisProduct;
+import edu.sdstate.eastweb.prototype.download.TrmmProduct;
+
+/**
+ * The calculators of the environmental indices, by index. Indices that are
+ * band math are defined by a band expression over their inputs, compiled
+ * once when this class is loaded; others have a calculator class of their
+ * own.
+ */
+public final class IndexCalculators {
+    /**
+     * Makes the calculator of an index for a date and feature.
+     */
+    public interface Factory {
+        IndexCalculator create(ProjectInfo project, DataDate date, String feature,
+                EnvironmentalIndex index) throws ConfigReadException;
+    }
+
+    private static final Map<EnvironmentalIndex, Factory> sFactories =
+        new EnumMap<EnvironmentalIndex, Factory>(EnvironmentalIndex.class);
+
+    static {
+        registerModis(EnvironmentalIndex.NDVI, ModisProduct.NBAR,
+                "(b2 - b1) / (b1 + b2)",
+                "Nadir_Reflectance_Band1", "Nadir_Reflectance_Band2");
+        registerModis(EnvironmentalIndex.EVI, ModisProduct.NBAR,
+                "2.5 * (b2 - b1) / (b2 + 6 * b1 - 7.5 * b3 + 1)",
+                "Nadir_Reflectance_Band1", "Nadir_Reflectance_Band2", "Nadir_Reflectance_Band3");
+        registerModis(EnvironmentalIndex.NDWI5, ModisProduct.NBAR,
+                "(b1 - b2) / (b2 + b1)",
+                "Nadir_Reflectance_Band2", "Nadir_Reflectance_Band5");
+        registerModis(EnvironmentalIndex.NDWI6, ModisProduct.NBAR,
+                "(b1 - b2) / (b2 + b1)",
+                "Nadir_Reflectance_Band2", "Nadir_Reflectance_Band6");
+        registerModis(EnvironmentalIndex.SAVI, ModisProduct.NBAR,
+                "(b2 - b1 * 1.5) / (b2 + b1 + 0.5)",
+                "Nadir_Reflectance_Band1", "Nadir_Reflectance_Band2");
+
+        registerModis(EnvironmentalIndex.LST_DAY, ModisProduct.LST,
+                "b1 where b1 >= minLst && b1 <= maxLst",
+                "LST_Day_1km");
+        registerModis(EnvironmentalIndex.LST_NIGHT, ModisProduct.LST,
+                "b1 where b1 >= minLst && b1 <= maxLst",
+                "LST_Night_1km");
+        registerModis(EnvironmentalIndex.LST_MEAN, ModisProduct.LST,
+                "(b1 + b2) / 2 where b1 >= minLst && b1 <= maxLst && b2 >= minLst && b2 <= maxLst",
+                "LST_Day_1km", "LST_Night_1km");
+
+        registerTrmm(EnvironmentalIndex.TRMM, TrmmProduct.TRMM_3B42);
+        registerTrmm(EnvironmentalIndex.TRMM_RT, TrmmProduct.TRMM_3B42RT);
+
+        register(EnvironmentalIndex.ETA, new Factory() {
+            @Override
+            public IndexCalculator create(ProjectInfo project, DataDate date, String feature,
+                    EnvironmentalIndex index) throws ConfigReadException {
+                return new GdalETACalculator(project, date, feature, index);
+            }
+        });
+    }
+
+    private IndexCalculators() {
+    }
+
+    /**
+     * Sets the calculator of an index, replacing any it had.
+     */
+    public static void register(EnvironmentalIndex index, Factory factory) {
+        synchronized (sFactories) {
+            sFactories.put(index, factory);
+        }
+    }
+
+    /**
+     * Makes the calculator of an index.
+     *
+     * @param feature base name of the feature's shapefile
+     * @throws IllegalArgumentException if the index has no calculator
+     */
+    public static IndexCalculator create(ProjectInfo project, DataDate date, String feature,
+            EnvironmentalIndex index) throws ConfigReadException {
+        final Factory factory;
+        synchronized (sFactories) {
+            factory = sFactories.get(index);
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("No calculator for index " + index);
+        }
+        return factory.create(project, date, feature, index);
+    }
+
+    /**
+     * Registers an index calculated from bands of a MODIS product, named b1,
+     * b2, ... in the expression.
+     */
+    private static void registerModis(EnvironmentalIndex index, final ModisProduct product,
+            String expression, final String... bands) {
+        final BandExpression compiled = BandExpression.compile(expression);
+        register(index, new Factory() {
+            @Override
+            public IndexCalculator create(ProjectInfo project, DataDate date, String feature,
+                    EnvironmentalIndex index) throws ConfigReadException {
+                final File[] inputs = new File[bands.length];
+                for (int i = 0; i < bands.length; i++) {
+                    inputs[i] = IndicesFramework.getModisInput(project, date, product,
+                            feature, bands[i]);
+                }
+                return new ExpressionCalculator(project, date, feature, index, compiled,
+                        inputs, false);
+            }
+        });
+    }
+
+    /**
+     * Registers an index that is a TRMM product as is, converted to 32 bits.
+     */
+    private static void registerTrmm(EnvironmentalIndex index, final TrmmProduct product) {
+        final BandExpression compiled = BandExpression.compile("b1");
+        register(index, new Factory() {
+            @Override
+            public IndexCalculator create(ProjectInfo project, DataDate date, String feature,
+                    EnvironmentalIndex index) throws ConfigReadException {
+                final File[] inputs = new File[] {
+                        IndicesFramework.getTrmmInput(project, product, date, feature) };
+                return new ExpressionCalculator(project, date, feature, index, compiled,
+                        inputs, true);
+            }
+        });
+    }
+}
@@ -5,14 +5,25 @@ import org.gdal.gdal.Band;
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DataDate;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.download.ModisProduct;
+import edu.sdstate.eastweb.prototype.download.TrmmProduct;
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
 
 public abstract class IndicesFramework implements IndexCalculator {
 
-    private static final float OUTPUT_NODATA = Float.intBitsToFloat(0xff7fffff);
+    protected static final float OUTPUT_NODATA = Float.intBitsToFloat(0xff7fffff);
+    protected static final double CLIP_NODATA = 32767;
 
     private File[] mInputFiles;
     private File mOutputFile;
+    private File mFeatureFile;
+    private File mMaskCache;
+    private boolean mAllTouched;
 
     protected void setInputFiles(File[] inputFiles) {
         assert (inputFiles.length > 0);
@@ -23,13 +34,66 @@ public abstract class IndicesFramework implements IndexCalculator {
         mOutputFile = outputFile;
     }
 
-    private Dataset createOutput(Dataset[] inputs) {
+    /**
+     * If the project skips the clip stage, the inputs are the project-wide
+     * rasters and are read through the window of the feature instead.
+     *
+     * @param allTouched whether pixels partly inside the feature are kept
+     */
+    protected void setFeature(ProjectInfo project, String feature, boolean allTouched)
+    throws ConfigReadException {
+        if (project.shouldSkipClip()) {
+            mFeatureFile = getFeatureFile(project, feature);
+            mMaskCache = DirectoryLayout.getClipMaskCacheDirectory(project);
+            mAllTouched = allTouched;
+        }
+    }
+
+    /**
+     * Returns the input file of a MODIS band: its clip, or the reprojected
+     * band if the project skips the clip stage.
+     */
+    protected static File getModisInput(ProjectInfo project, DataDate date,
+            ModisProduct product, String feature, String band) throws ConfigReadException {
+        if (project.shouldSkipClip()) {
+            return DirectoryLayout.getModisReprojectedBand(project, product, date, band);
+        }
+        return DirectoryLayout.getModisClip(project, date, product, feature, band);
+    }
+
+    /**
+     * Returns the input file of a TRMM product: its clip, or the reprojected
+     * product if the project skips the clip stage.
+     */
+    protected static File getTrmmInput(ProjectInfo project, TrmmProduct product,
+            DataDate date, String feature) throws ConfigReadException {
+        if (project.shouldSkipClip()) {
+            return DirectoryLayout.getTrmmReprojected(project, product, date);
+        }
+        return DirectoryLayout.getTrmmClip(project, product, date, feature);
+    }
+
+    /**
+     * Returns the shapefile of the project with the given base name.
+     */
+    protected static File getFeatureFile(ProjectInfo project, String feature)
+    throws ConfigReadException {
+        for (String shapeFile : project.getShapeFiles()) {
+            if (new File(shapeFile).getName().split("\\.")[0].equals(feature)) {
+                return new File(DirectoryLayout.getSettingsDirectory(project), shapeFile);
+            }
+        }
+        throw new IllegalArgumentException("No shapefile named " + feature);
+    }
+
+    private Dataset createOutput(Dataset[] inputs, FeatureWindow window) {
         Dataset outputDS =
                 gdal.GetDriverByName("GTiff").Create(mOutputFile.getPath(),
-                        inputs[0].GetRasterXSize(), inputs[0].GetRasterYSize(),
+                        window == null ? inputs[0].GetRasterXSize() : window.getWidth(),
+                        window == null ? inputs[0].GetRasterYSize() : window.getHeight(),
                         1, gdalconst.GDT_Float32);
 
-        outputDS.SetGeoTransform(inputs[0].GetGeoTransform());
+        outputDS.SetGeoTransform(window == null ? inputs[0].GetGeoTransform() : window.getGeoTransform());
         outputDS.SetProjection(inputs[0].GetProjection());
         outputDS.SetMetadata(inputs[0].GetMetadata_Dict());
 
@@ -46,18 +110,17 @@ public abstract class IndicesFramework implements IndexCalculator {
             for (int i = 0; i < mInputFiles.length; i++) {
                 inputs[i] = gdal.Open(mInputFiles[i].getPath());
             }
-            Dataset outputDS = createOutput(inputs);
+            FeatureWindow window = mFeatureFile == null ? null
+                    : FeatureWindow.get(mFeatureFile, inputs[0], mMaskCache, mAllTouched);
+            Dataset outputDS = createOutput(inputs, window);
 
             // Process the output and inputs
-            process(inputs, outputDS);
-
-            // Calculate statistics
-            for (int i = 1; i <= outputDS.GetRasterCount(); i++) {
-                Band band = outputDS.GetRasterBand(i);
+            BandStatistics statistics = process(inputs, outputDS, window);
 
-                band.SetNoDataValue(OUTPUT_NODATA);
-                band.ComputeStatistics(false);
-            }
+            // Store the statistics gathered while writing
+            Band band = outputDS.GetRasterBand(1);
+            band.SetNoDataValue(OUTPUT_NODATA);
+            statistics.apply(band);
 
             // Close and flush output and inputs
             for (Dataset input : inputs) {
@@ -68,42 +131,101 @@ public abstract class IndicesFramework implements IndexCalculator {
     }
 
     /**
+     * Without a window, the inputs are clips and are processed whole. With a
+     * window, pixels outside the feature are no-data, and the inputs are
+     * passed to calculateRow as a clip would have them (see toClipValues).
+     *
      * @param inputs
      * @param output
+     * @param window the feature window, or null
+     * @return the statistics of the values written
      * @throws Exception
      */
-    private void process(Dataset[] inputs, Dataset output) throws Exception {
-        int xSize = inputs[0].GetRasterXSize();
-        int ySize = inputs[0].GetRasterYSize();
+    private BandStatistics process(Dataset[] inputs, Dataset output, FeatureWindow window)
+    throws Exception {
+        int xSize = output.GetRasterXSize();
+        int ySize = output.GetRasterYSize();
+        int xOffset = window == null ? 0 : window.getXOffset();
+        int yOffset = window == null ? 0 : window.getYOffset();
+
+        Double[][] noData = new Double[inputs.length][1];
+        if (window != null) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i].GetRasterBand(1).GetNoDataValue(noData[i]);
+            }
+        }
 
         double[][] inputsArray = new double[inputs.length][xSize];
         double[] outputArray = new double[xSize];
+        BandStatistics statistics = new BandStatistics();
 
         for (int y = 0; y < ySize; y++) {
             for (int i = 0; i < inputs.length; i++) {
-                inputs[i].GetRasterBand(1).ReadRaster(0, y, xSize, 1,
+                inputs[i].GetRasterBand(1).ReadRaster(xOffset, yOffset + y, xSize, 1,
                         inputsArray[i]);
+                if (window != null) {
+                    toClipValues(inputsArray[i], xSize, noData[i][0]);
+                }
             }
 
+            calculateRow(inputsArray, outputArray, xSize);
+
             for (int x = 0; x < xSize; x++) {
-                double[] values = new double[inputs.length];
-                for (int i = 0; i < inputs.length; i++) {
-                    values[i] = inputsArray[i][x];
+                if (window != null && !window.contains(x, y)) {
+                    outputArray[x] = OUTPUT_NODATA;
+                    continue;
                 }
 
-                outputArray[x] = calculatePixelValue(values);
+                // The output is Float32, so compare as written
+                float written = (float) outputArray[x];
+                if (written != OUTPUT_NODATA) {
+                    statistics.add(written);
+                }
             }
 
             output.GetRasterBand(1).WriteRaster(0, y, xSize, 1, outputArray);
         }
 
+        return statistics;
+    }
+
+    /**
+     * Turns a row of a band read through a feature window into the values its
+     * clip would hold. Clips are Int16, so each value is rounded and clamped
+     * as GDAL does when writing them (see toClipValue). The band's no-data
+     * value becomes CLIP_NODATA; it is 32767 for the MODIS bands, as in their
+     * clips, while a clip would hold other no-data values clamped.
+     *
+     * @param noData the band's no-data value, or null
+     */
+    public static void toClipValues(double[] values, int length, Double noData) {
+        for (int x = 0; x < length; x++) {
+            if (noData != null && values[x] == noData) {
+                values[x] = CLIP_NODATA;
+            } else {
+                values[x] = toClipValue(values[x]);
+            }
+        }
+    }
+
+    /**
+     * Converts a value to Int16 as GDAL does: rounded half away from zero,
+     * and clamped to the Int16 range.
+     */
+    public static double toClipValue(double value) {
+        final double rounded = value >= 0 ? value + 0.5 : value - 0.5;
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, rounded));
     }
 
     /**
-     * @param values
-     * @return
+     * Calculates a row of the index. Calculators that work a pixel at a time
+     * extend PixelCalculator instead.
+     *
+     * @param inputs one row per input, no-data being CLIP_NODATA
+     * @param output receives the values of the row
+     * @param length number of pixels in the row
      */
-    protected abstract double calculatePixelValue(double[] values)
+    protected abstract void calculateRow(double[][] inputs, double[] output, int length)
             throws Exception;
 
 }
@@ -0,0 +1,30 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+/**
+ * An index calculated a pixel at a time: each row is passed to
+ * calculatePixelValue one pixel at a time, through one reused array.
+ */
+public abstract class PixelCalculator extends IndicesFramework {
+    private double[] mPixel; // Reused by calculateRow
+
+    @Override
+    protected final void calculateRow(double[][] inputs, double[] output, int length)
+            throws Exception {
+        if (mPixel == null || mPixel.length != inputs.length) {
+            mPixel = new double[inputs.length];
+        }
+
+        for (int x = 0; x < length; x++) {
+            for (int i = 0; i < inputs.length; i++) {
+                mPixel[i] = inputs[i][x];
+            }
+            output[x] = calculatePixelValue(mPixel);
+        }
+    }
+
+    /**
+     * @param values the pixel of each input, no-data being CLIP_NODATA
+     * @return the value of the index at the pixel
+     */
+    protected abstract double calculatePixelValue(double[] values) throws Exception;
+}
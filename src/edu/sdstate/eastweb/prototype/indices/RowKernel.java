@@ -0,0 +1,15 @@
+package edu.sdstate.eastweb.prototype.indices;
+
+/**
+ * Calculates a row of index values from rows of the input rasters. Kernels
+ * own any scratch buffers they need, so applying one doesn't allocate; a
+ * kernel is used by one thread at a time.
+ */
+public interface RowKernel {
+    /**
+     * @param inputs one row of values per input raster
+     * @param output receives the index values
+     * @param length number of pixels in the row
+     */
+    void apply(double[][] inputs, double[] output, int length);
+}
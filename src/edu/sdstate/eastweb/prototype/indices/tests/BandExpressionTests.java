@@ -0,0 +1,133 @@
+package edu.sdstate.eastweb.prototype.indices.tests;
+
+import java.util.*;
+import org.junit.Test;
+import edu.sdstate.eastweb.prototype.indices.BandExpression;
+import edu.sdstate.eastweb.prototype.indices.RowKernel;
+import static org.junit.Assert.*;
+
+public final class BandExpressionTests {
+    private static final double IN = 32767;
+    private static final double OUT = -Float.MAX_VALUE;
+
+    private static double[] apply(String expression, Map<String, Double> parameters,
+            double[]... inputs) {
+        final int length = inputs.length == 0 ? 1 : inputs[0].length;
+        final RowKernel kernel = BandExpression.compile(expression)
+                .newKernel(length, parameters, IN, OUT);
+        final double[] output = new double[length];
+        kernel.apply(inputs, output, length);
+        return output;
+    }
+
+    private static double evaluate(String expression, double... pixel) {
+        final double[][] inputs = new double[pixel.length][];
+        for (int i = 0; i < pixel.length; i++) {
+            inputs[i] = new double[] { pixel[i] };
+        }
+        return apply(expression, null, inputs)[0];
+    }
+
+    @Test
+    public void testPrecedence() {
+        assertEquals(7, evaluate("1 + 2 * 3"), 0);
+        assertEquals(9, evaluate("(1 + 2) * 3"), 0);
+        assertEquals(-1, evaluate("1 - 4 / 2"), 0);
+        assertEquals(2, evaluate("8 / 2 / 2"), 0);
+        assertEquals(1, evaluate("1 + 1 > 1 && 2 <= 2"), 0);
+        assertEquals(1, evaluate("0 || 1 && 1"), 0);
+        assertEquals(0, evaluate("!1"), 0);
+        assertEquals(1, evaluate("!0 != 0"), 0);
+        assertEquals(-6, evaluate("-b1 * 2", 3), 0);
+        assertEquals(1e-3, evaluate("1e-3"), 0);
+    }
+
+    @Test
+    public void testFunctions() {
+        assertEquals(2, evaluate("min(b1, b2)", 2, 5), 0);
+        assertEquals(5, evaluate("max(b1, b2)", 2, 5), 0);
+        assertEquals(3, evaluate("abs(b1)", -3), 0);
+        assertEquals(4, evaluate("sqrt(b1)", 16), 0);
+        assertEquals(10, evaluate("if(b1 > 0, b1 * 10, -b1)", 1), 0);
+        assertEquals(1, evaluate("if(b1 > 0, b1 * 10, -b1)", -1), 0);
+    }
+
+    @Test
+    public void testBands() {
+        final BandExpression expression = BandExpression.compile("b3 - b1 + b3");
+        assertArrayEquals(new int[] { 0, 2 }, expression.getBands());
+        assertEquals(3, expression.getBandCount());
+        assertEquals(0, BandExpression.compile("1 + 2").getBandCount());
+    }
+
+    @Test
+    public void testNoData() {
+        final double[] output = apply("(b2 - b1) / (b1 + b2)", null,
+                new double[] { 1, IN, 2, 3 },
+                new double[] { 3, 4, IN, 3 });
+        assertArrayEquals(new double[] { 0.5, OUT, OUT, 0 }, output, 0);
+
+        // Bands that aren't referenced don't matter
+        assertEquals(1, evaluate("b2", IN, 1), 0);
+    }
+
+    @Test
+    public void testWhere() {
+        final Map<String, Double> parameters = new HashMap<String, Double>();
+        parameters.put("minLst", 250.0);
+        parameters.put("maxLst", 320.0);
+
+        final double[] output = apply("b1 where b1 >= minLst && b1 <= maxLst", parameters,
+                new double[] { 249, 250, 300, 320, 321, IN });
+        assertArrayEquals(new double[] { OUT, 250, 300, 320, OUT, OUT }, output, 0);
+    }
+
+    @Test
+    public void testMatchesFormulas() {
+        final Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            final double red = random.nextInt(10000);
+            final double nir = random.nextInt(10000);
+            final double blue = random.nextInt(10000);
+
+            assertEquals((nir - red) / (red + nir),
+                    evaluate("(b2 - b1) / (b1 + b2)", red, nir), 0);
+            assertEquals(2.5 * (nir - red) / (nir + 6 * red - 7.5 * blue + 1),
+                    evaluate("2.5 * (b2 - b1) / (b2 + 6 * b1 - 7.5 * b3 + 1)", red, nir, blue), 0);
+            assertEquals((nir - red * (1 + 0.5)) / (nir + red + 0.5),
+                    evaluate("(b2 - b1 * 1.5) / (b2 + b1 + 0.5)", red, nir), 0);
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        final RowKernel kernel = BandExpression.compile("b1 * 2 + 1")
+                .newKernel(4, null, IN, OUT);
+        final double[] output = new double[4];
+        kernel.apply(new double[][] { { 1, 2, 3, 4 } }, output, 4);
+        assertArrayEquals(new double[] { 3, 5, 7, 9 }, output, 0);
+        kernel.apply(new double[][] { { 5, 6 } }, output, 2);
+        assertArrayEquals(new double[] { 11, 13, 7, 9 }, output, 0);
+    }
+
+    @Test
+    public void testErrors() {
+        final String[] invalid = { "", "b1 +", "(b1", "b0", "foo(b1)", "min(b1)", "b1 b2",
+                "1 where", "where", "b1 $ b2" };
+        for (String expression : invalid) {
+            try {
+                BandExpression.compile(expression);
+                fail(expression);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        try {
+            BandExpression.compile("b1 * gain").newKernel(1, new HashMap<String, Double>(), IN, OUT);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.sdstate.eastweb.prototype.indices.tests;
+
+import java.util.*;
+import org.junit.Test;
+import edu.sdstate.eastweb.prototype.indices.BandExpression;
+import edu.sdstate.eastweb.prototype.indices.IndicesFramework;
+import edu.sdstate.eastweb.prototype.indices.RowKernel;
+import static org.junit.Assert.*;
+
+public final class IndicesFrameworkTests {
+    private static final double CLIP_NODATA = 32767;
+    private static final double OUT = -Float.MAX_VALUE;
+
+    /**
+     * GDAL's conversion of a Float32 value to Int16, as done when a band is
+     * read into the short[] row of a clip.
+     */
+    private static short gdalInt16(float value) {
+        final float rounded = value >= 0 ? value + 0.5f : value - 0.5f;
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, rounded));
+    }
+
+    @Test
+    public void testToClipValue() {
+        assertEquals(300, IndicesFramework.toClipValue(300.46), 0);
+        assertEquals(301, IndicesFramework.toClipValue(300.5), 0);
+        assertEquals(0, IndicesFramework.toClipValue(0.49), 0);
+        assertEquals(-1, IndicesFramework.toClipValue(-0.5), 0);
+        assertEquals(-2, IndicesFramework.toClipValue(-1.6), 0);
+        assertEquals(32767, IndicesFramework.toClipValue(40000), 0);
+        assertEquals(-32768, IndicesFramework.toClipValue(-1e30), 0);
+    }
+
+    /**
+     * Reads the same Float32 row as the clip path does (Int16, no-data of the
+     * band copied as is) and as the window path does, and checks that the
+     * indices calculated from them are the same.
+     */
+    @Test
+    public void testWindowMatchesClip() {
+        final Random random = new Random(39);
+        final int length = 1000;
+        final String[] expressions = {
+            "(b2 - b1) / (b1 + b2)",
+            "2.5 * (b2 - b1) / (b2 + 6 * b1 - 7.5 * b3 + 1)",
+            "b1 where b1 >= minLst && b1 <= maxLst",
+            "(b1 + b2) / 2 where b1 >= minLst && b1 <= maxLst && b2 >= minLst && b2 <= maxLst",
+        };
+        final Map<String, Double> parameters = new HashMap<String, Double>();
+        parameters.put("minLst", 250.0);
+        parameters.put("maxLst", 330.0);
+
+        final double[][] clip = new double[3][length];
+        final double[][] window = new double[3][length];
+        for (int i = 0; i < 3; i++) {
+            for (int x = 0; x < length; x++) {
+                final float value;
+                switch (random.nextInt(4)) {
+                case 0:
+                    value = (float) CLIP_NODATA;
+                    break;
+                case 1:
+                    value = 240 + random.nextInt(100) + 0.5f;
+                    break;
+                default:
+                    value = 240 + random.nextFloat() * 100;
+                    break;
+                }
+                clip[i][x] = gdalInt16(value);
+                window[i][x] = value;
+            }
+            IndicesFramework.toClipValues(window[i], length, CLIP_NODATA);
+        }
+
+        for (String expression : expressions) {
+            final RowKernel kernel = BandExpression.compile(expression)
+                    .newKernel(length, parameters, CLIP_NODATA, OUT);
+            final double[] expected = new double[length];
+            final double[] actual = new double[length];
+            kernel.apply(clip, expected, length);
+            kernel.apply(window, actual, length);
+            for (int x = 0; x < length; x++) {
+                assertEquals(expression, expected[x], actual[x], 0);
+            }
+        }
+    }
+
+    /**
+     * A no-data value other than the clip's is passed on as the clip's, where
+     * the clip would hold it clamped to the Int16 range.
+     */
+    @Test
+    public void testOtherNoData() {
+        final double[] values = { -99999, 12.4 };
+        IndicesFramework.toClipValues(values, values.length, -99999.0);
+        assertEquals(CLIP_NODATA, values[0], 0);
+        assertEquals(12, values[1], 0);
+        assertEquals(-32768, gdalInt16(-99999), 0);
+    }
+}
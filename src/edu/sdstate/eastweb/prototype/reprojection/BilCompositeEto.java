@@ -0,0 +1,157 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.sdstate.eastweb.prototype.util.Signature;
+
+/**
+ * Composites ESRI BIL grids, such as the FEWS NET daily ETo, into their mean
+ * without GDAL. The inputs are memory-mapped and read a row at a time. The
+ * output is a 32-bit float BIL grid. A pixel that is no-data in any input is
+ * no-data in the output.
+ *
+ * An instance keeps a rolling sum of the days of the last window it
+ * composited. When the next window overlaps it, e.g. the window starting a
+ * day later, only the days that leave and enter the window are read, and a
+ * window that was just composited costs no reads at all. Otherwise the sum is
+ * rebuilt from all the inputs.
+ */
+public class BilCompositeEto implements CompositeEto {
+    private final List<File> mFiles = new ArrayList<File>(); // Days in the sum, in order
+    private final List<Long> mDays = new ArrayList<Long>(); // Their signatures
+    private int mWidth;
+    private int mHeight;
+    private double[] mTransform;
+    private double mNoData;
+    private double[] mSum;
+    private int[] mMissing; // Number of days without data, by pixel
+
+    /**
+     * Returns whether all the inputs can be read without GDAL.
+     */
+    public static boolean canComposite(List<File> inputs) {
+        for (File input : inputs) {
+            if (!BilReader.canRead(input)) {
+                return false;
+            }
+        }
+        return !inputs.isEmpty();
+    }
+
+    @Override
+    public synchronized void composite(List<File> inputs, File output) throws Exception {
+        final List<Long> days = new ArrayList<Long>();
+        for (File input : inputs) {
+            days.add(new Signature().add(input).get());
+        }
+
+        try {
+            int shift = getShift(days);
+            if (shift < 0) {
+                reset(inputs.get(0));
+                shift = 0;
+            }
+
+            // Roll the window forward
+            for (int i = 0; i < shift; i++) {
+                accumulate(mFiles.get(i), -1);
+            }
+            mFiles.subList(0, shift).clear();
+            mDays.subList(0, shift).clear();
+            for (int i = mFiles.size(); i < inputs.size(); i++) {
+                accumulate(inputs.get(i), 1);
+                mFiles.add(inputs.get(i));
+                mDays.add(days.get(i));
+            }
+        } catch (Exception e) {
+            // The sum can't be trusted after a partial update
+            mFiles.clear();
+            mDays.clear();
+            throw e;
+        }
+
+        write(output);
+    }
+
+    /**
+     * Returns how many days the current window must be rolled forward to
+     * become the given one, or -1 if they don't overlap or a day that would
+     * leave the window changed since it was added.
+     */
+    private int getShift(List<Long> days) {
+        final int count = mDays.size();
+        if (count != days.size()) {
+            return -1;
+        }
+
+        for (int shift = 0; shift < count; shift++) {
+            if (mDays.subList(shift, count).equals(days.subList(0, count - shift))) {
+                for (int i = 0; i < shift; i++) {
+                    if (new Signature().add(mFiles.get(i)).get() != mDays.get(i)) {
+                        return -1;
+                    }
+                }
+                return shift;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Empties the sum, taking its grid from the given input.
+     */
+    private void reset(File input) throws IOException {
+        final BilReader reader = BilReader.open(input);
+        mWidth = reader.getWidth();
+        mHeight = reader.getHeight();
+        mTransform = reader.getGeoTransform();
+        mNoData = reader.getNoData();
+        mSum = new double[mWidth * mHeight];
+        mMissing = new int[mWidth * mHeight];
+        mFiles.clear();
+        mDays.clear();
+    }
+
+    /**
+     * Adds a day to the sum with a sign of 1, or removes it with -1.
+     */
+    private void accumulate(File input, int sign) throws IOException {
+        final BilReader reader = BilReader.open(input);
+        if (reader.getWidth() != mWidth || reader.getHeight() != mHeight) {
+            throw new IllegalArgumentException("The inputs are on different grids");
+        }
+
+        final double noData = reader.getNoData();
+        final float[] row = new float[mWidth];
+        for (int y = 0; y < mHeight; y++) {
+            reader.readRow(y, row);
+            for (int x = 0, i = y * mWidth; x < mWidth; x++, i++) {
+                if (row[x] == noData || Float.isNaN(row[x])) {
+                    mMissing[i] += sign;
+                } else {
+                    mSum[i] += sign * row[x];
+                }
+            }
+        }
+    }
+
+    private void write(File output) throws IOException {
+        final float noData = Double.isNaN(mNoData) ? Float.NaN : (float) mNoData;
+        final BilWriter writer = new BilWriter(output, mWidth, mHeight, mTransform, noData);
+        try {
+            final float[] row = new float[mWidth];
+            for (int y = 0; y < mHeight; y++) {
+                for (int x = 0, i = y * mWidth; x < mWidth; x++, i++) {
+                    row[x] = mMissing[i] > 0 ? noData : (float) (mSum[i] / mDays.size());
+                }
+                writer.writeRow(row);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+}
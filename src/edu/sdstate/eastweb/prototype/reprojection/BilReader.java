@@ -0,0 +1,187 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads single-band ESRI BIL grids, such as the FEWS NET daily ETo, in pure
+ * Java. The grid is described by the .hdr file next to the .bil file and the
+ * pixels are memory-mapped, so rows are read on demand without GDAL and
+ * without buffering the whole raster.
+ */
+public final class BilReader {
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBits;
+    private final boolean mSigned;
+    private final boolean mFloat;
+    private final long mRowBytes;
+    private final double[] mTransform;
+    private final double mNoData;
+    private final ByteBuffer mData;
+
+    private BilReader(File file) throws IOException {
+        final Map<String, String> header = readHeader(getHeaderFile(file));
+
+        mWidth = getInt(header, "NCOLS", -1);
+        mHeight = getInt(header, "NROWS", -1);
+        mBits = getInt(header, "NBITS", 8);
+        final String pixelType = get(header, "PIXELTYPE", mBits == 8 ? "UNSIGNEDINT" : "SIGNEDINT");
+        mFloat = pixelType.equals("FLOAT");
+        mSigned = pixelType.equals("SIGNEDINT");
+        if (mWidth <= 0 || mHeight <= 0) {
+            throw new IOException("Missing grid size in the header of " + file);
+        } else if (getInt(header, "NBANDS", 1) != 1) {
+            throw new IOException("Only single-band grids are supported: " + file);
+        } else if (mFloat ? mBits != 32 : (mBits != 8 && mBits != 16 && mBits != 32)) {
+            throw new IOException("Unsupported pixel type in " + file);
+        }
+
+        final long skipBytes = getInt(header, "SKIPBYTES", 0);
+        mRowBytes = Math.max((long) mWidth * mBits / 8,
+                getInt(header, "TOTALROWBYTES", getInt(header, "BANDROWBYTES", 0)));
+
+        // ULXMAP and ULYMAP are the center of the upper left pixel
+        final double xDim = getDouble(header, "XDIM", 1);
+        final double yDim = getDouble(header, "YDIM", 1);
+        mTransform = new double[] {
+                getDouble(header, "ULXMAP", 0.5 * xDim) - 0.5 * xDim, xDim, 0,
+                getDouble(header, "ULYMAP", mHeight - 0.5 * yDim) + 0.5 * yDim, 0, -yDim
+        };
+        mNoData = getDouble(header, "NODATA", Double.NaN);
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = skipBytes + mRowBytes * mHeight;
+            if (channel.size() < size) {
+                throw new IOException("Truncated grid " + file);
+            }
+            mData = channel.map(FileChannel.MapMode.READ_ONLY, skipBytes, size - skipBytes);
+            mData.order(get(header, "BYTEORDER", "I").startsWith("M")
+                    ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close(); // The mapping stays valid after the file is closed
+        }
+    }
+
+    /**
+     * Opens the grid; its header must be next to it.
+     */
+    public static BilReader open(File file) throws IOException {
+        return new BilReader(file);
+    }
+
+    /**
+     * Returns whether the file has a header this reader can use.
+     */
+    public static boolean canRead(File file) {
+        return getHeaderFile(file).isFile();
+    }
+
+    public static File getHeaderFile(File file) {
+        return new File(file.getParentFile(), file.getName().replaceFirst("\\.[^.]*$", "") + ".hdr");
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public double[] getGeoTransform() {
+        return mTransform.clone();
+    }
+
+    /**
+     * Returns the no-data value, or NaN if there is none.
+     */
+    public double getNoData() {
+        return mNoData;
+    }
+
+    /**
+     * Reads a row of pixels into values, which must be at least as long as
+     * the width.
+     */
+    public void readRow(int row, float[] values) {
+        if (row < 0 || row >= mHeight) {
+            throw new IndexOutOfBoundsException("Row " + row);
+        }
+
+        final int offset = (int) (row * mRowBytes);
+        final ByteBuffer data = mData.duplicate().order(mData.order());
+        data.position(offset);
+        if (mFloat) {
+            data.asFloatBuffer().get(values, 0, mWidth);
+        } else if (mBits == 8) {
+            for (int x = 0; x < mWidth; x++) {
+                final byte value = data.get();
+                values[x] = mSigned ? value : value & 0xff;
+            }
+        } else if (mBits == 16) {
+            for (int x = 0; x < mWidth; x++) {
+                final short value = data.getShort();
+                values[x] = mSigned ? value : value & 0xffff;
+            }
+        } else {
+            for (int x = 0; x < mWidth; x++) {
+                final int value = data.getInt();
+                values[x] = mSigned ? value : (float) (value & 0xffffffffL);
+            }
+        }
+    }
+
+    private static Map<String, String> readHeader(File file) throws IOException {
+        final Map<String, String> header = new HashMap<String, String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.trim().split("\\s+", 2);
+                if (parts.length == 2) {
+                    header.put(parts[0].toUpperCase(Locale.US), parts[1].trim().toUpperCase(Locale.US));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return header;
+    }
+
+    private static String get(Map<String, String> header, String key, String defaultValue) {
+        final String value = header.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int getInt(Map<String, String> header, String key, int defaultValue)
+            throws IOException {
+        try {
+            final String value = header.get(key);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid header value for " + key, e);
+        }
+    }
+
+    private static double getDouble(Map<String, String> header, String key, double defaultValue)
+            throws IOException {
+        try {
+            final String value = header.get(key);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid header value for " + key, e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes a single-band 32-bit float ESRI BIL grid row by row, with its .hdr
+ * file, in pure Java. GDAL reads the result with its EHdr driver.
+ */
+public final class BilWriter {
+    private final int mWidth;
+    private final int mHeight;
+    private final DataOutputStream mStream;
+    private int mRow = 0;
+
+    /**
+     * Creates the grid and writes its header.
+     *
+     * @param transform geotransform of the grid; must be north up
+     * @param noData no-data value, or NaN if there is none
+     */
+    public BilWriter(File file, int width, int height, double[] transform, double noData)
+            throws IOException {
+        mWidth = width;
+        mHeight = height;
+
+        final PrintWriter header = new PrintWriter(new FileWriter(BilReader.getHeaderFile(file)));
+        try {
+            header.println("BYTEORDER M");
+            header.println("LAYOUT BIL");
+            header.println("NROWS " + height);
+            header.println("NCOLS " + width);
+            header.println("NBANDS 1");
+            header.println("NBITS 32");
+            header.println("PIXELTYPE FLOAT");
+            header.println("ULXMAP " + (transform[0] + 0.5 * transform[1]));
+            header.println("ULYMAP " + (transform[3] + 0.5 * transform[5]));
+            header.println("XDIM " + transform[1]);
+            header.println("YDIM " + -transform[5]);
+            if (!Double.isNaN(noData)) {
+                header.println("NODATA " + (float) noData);
+            }
+        } finally {
+            header.close();
+        }
+        if (header.checkError()) {
+            throw new IOException("Could not write the header of " + file);
+        }
+
+        mStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    /**
+     * Writes the next row from the first width values.
+     */
+    public void writeRow(float[] values) throws IOException {
+        if (mRow == mHeight) {
+            throw new IllegalStateException("All rows were written");
+        }
+        for (int x = 0; x < mWidth; x++) {
+            mStream.writeFloat(values[x]);
+        }
+        mRow++;
+    }
+
+    public void close() throws IOException {
+        mStream.close();
+        if (mRow != mHeight) {
+            throw new IOException(String.format("Only %d of %d rows were written", mRow, mHeight));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DataDate;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.download.EtoDownloadMetadata;
+import edu.sdstate.eastweb.prototype.util.ProjectGrids;
+
+/**
+ * Builds the global ETo composite of a date once for all projects, and its
+ * projection once for all projects on the same grid. Both are kept next to
+ * the daily downloads, each with a metadata file written last, so a file
+ * that was only partly written is rebuilt. A file is rebuilt as well when
+ * any of the files it was made from is newer than its metadata.
+ */
+public final class EtoCompositeCache {
+    /**
+     * The composite period is the day specified and the seven days following
+     * it.
+     */
+    public static final int DAYS = 8;
+
+    private static final Map<File, Object> sLocks = new HashMap<File, Object>();
+
+    // Shared, so that overlapping windows reuse its sum
+    private static final BilCompositeEto sBilComposite = new BilCompositeEto();
+
+    private final DataDate mDate;
+
+    public EtoCompositeCache(DataDate date) {
+        mDate = date;
+    }
+
+    /**
+     * Returns the global composite of the date, building it if needed.
+     */
+    public File getComposite() throws Exception {
+        final List<File> inputs = new ArrayList<File>();
+        for (int i = 0; i < DAYS; ++i) {
+            inputs.add(DirectoryLayout.getEtoDownloadMainFile(mDate.next(i)));
+        }
+
+        // Composite without GDAL when the inputs have BIL headers
+        final boolean bil = BilCompositeEto.canComposite(inputs);
+        final File composite = DirectoryLayout.getEtoComposite(mDate, bil ? "bil" : "tif");
+        final File metadataFile = DirectoryLayout.getEtoCompositeMetadata(mDate);
+
+        synchronized (getLock(composite)) {
+            if (!isUsable(metadataFile, composite, inputs)) {
+                FileUtils.deleteQuietly(metadataFile);
+                FileUtils.forceMkdir(composite.getParentFile());
+                FileUtils.deleteQuietly(composite);
+
+                if (bil) {
+                    sBilComposite.composite(inputs, composite);
+                } else {
+                    new GdalCompositeEto().composite(inputs, composite);
+                }
+
+                makeMetadata().toFile(metadataFile);
+            }
+        }
+
+        return composite;
+    }
+
+    /**
+     * Returns the composite of the date projected onto the project's grid,
+     * projecting it if no project on the same grid did already.
+     */
+    public File getProjected(ProjectInfo project) throws Exception {
+        final String key = String.format("%016x", ProjectGrids.get(project).getSignature());
+        final File projected = DirectoryLayout.getEtoProjected(mDate, key);
+        final File metadataFile = DirectoryLayout.getEtoProjectedMetadata(mDate, key);
+
+        synchronized (getLock(projected)) {
+            final File composite = getComposite();
+            final List<File> inputs = new ArrayList<File>();
+            inputs.add(composite);
+            if (!isUsable(metadataFile, projected, inputs)) {
+                FileUtils.deleteQuietly(metadataFile);
+                FileUtils.deleteQuietly(projected);
+
+                new GdalProjectEto().project(composite, project, projected);
+
+                makeMetadata().toFile(metadataFile);
+            }
+        }
+
+        return projected;
+    }
+
+    private static Object getLock(File file) {
+        synchronized (sLocks) {
+            Object lock = sLocks.get(file);
+            if (lock == null) {
+                sLocks.put(file, lock = new Object());
+            }
+            return lock;
+        }
+    }
+
+    private EtoReprojectedMetadata makeMetadata() throws IOException {
+        final EtoDownloadMetadata download = EtoDownloadMetadata.fromFile(
+                DirectoryLayout.getEtoDownloadMetadata(mDate));
+
+        return new EtoReprojectedMetadata(download, new Date().getTime());
+    }
+
+    /**
+     * The output is usable if it was completely written after all of its
+     * inputs were.
+     */
+    private static boolean isUsable(File metadataFile, File output, List<File> inputs)
+            throws ConfigReadException {
+        final EtoReprojectedMetadata metadata;
+        try {
+            metadata = EtoReprojectedMetadata.fromFile(metadataFile);
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (!output.exists()) {
+            return false;
+        }
+
+        for (File input : inputs) {
+            if (!input.exists() || input.lastModified() > metadata.getTimestamp()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -1,7 +0,0 @@
-package edu.sdstate.eastweb.prototype.reprojection;
-
-public interface FilterWithWatermask {
-
-    void filter() throws Exception;
-
-}
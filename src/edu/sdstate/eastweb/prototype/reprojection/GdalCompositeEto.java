@@ -2,6 +2,7 @@ package edu.sdstate.eastweb.prototype.reprojection;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.gdal.gdal.Dataset;
@@ -10,46 +11,74 @@ import org.gdal.gdalconst.gdalconst;
 
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
 
+/**
+ * Composites rasters into their mean a strip of rows at a time, accumulating
+ * a running sum in float, so that neither the inputs nor the output are ever
+ * held whole in memory. The GDAL lock is only held while a strip is read or
+ * written.
+ */
 public class GdalCompositeEto implements CompositeEto {
+    private static final int STRIP_ROWS = 64;
 
     @Override
     public void composite(List<File> inputs, File output) throws Exception {
         GdalUtils.register();
+
+        final List<Dataset> inputDSs = new ArrayList<Dataset>();
+        final Dataset outputDS;
+        final int width;
+        final int height;
         synchronized (GdalUtils.lockObject) {
-            List<Dataset> inputDSs = new ArrayList<Dataset>();
             for (File input : inputs) {
-                inputDSs.add(gdal.Open(input.getPath()));
+                inputDSs.add(gdal.Open(input.getPath())); GdalUtils.errorCheck();
             }
 
-            Dataset outputDS = gdal.GetDriverByName("GTiff").Create(
+            width = inputDSs.get(0).GetRasterXSize();
+            height = inputDSs.get(0).GetRasterYSize();
+            outputDS = gdal.GetDriverByName("GTiff").Create(
                     output.getPath(),
-                    inputDSs.get(0).GetRasterXSize(), inputDSs.get(0).GetRasterYSize(),
+                    width, height,
                     1,
                     gdalconst.GDT_Float32
             );
             outputDS.SetGeoTransform(inputDSs.get(0).GetGeoTransform());
             outputDS.SetProjection(inputDSs.get(0).GetProjection());
+        }
 
-            // FIXME: make use less ram?
-            double[] inputArray = new double[inputDSs.get(0).GetRasterXSize() * inputDSs.get(0).GetRasterYSize()];
-            double[] outputArray = new double[inputDSs.get(0).GetRasterXSize() * inputDSs.get(0).GetRasterYSize()];
-            for (Dataset inputDS : inputDSs) {
-                inputDS.GetRasterBand(1).ReadRaster(0, 0, inputDS.GetRasterXSize(), inputDS.GetRasterYSize(), inputArray);
-                for (int i=0; i<inputArray.length; i++) {
-                    outputArray[i] += inputArray[i];
-                }
-            }
+        try {
+            final float[] inputArray = new float[width * STRIP_ROWS];
+            final float[] outputArray = new float[width * STRIP_ROWS];
+            for (int y=0; y<height; y+=STRIP_ROWS) {
+                final int rows = Math.min(STRIP_ROWS, height - y);
+                final int length = width * rows;
 
-            for (int i=0; i<inputArray.length; i++) {
-                outputArray[i] /= inputDSs.size();
-            }
+                Arrays.fill(outputArray, 0, length, 0);
+                for (Dataset inputDS : inputDSs) {
+                    synchronized (GdalUtils.lockObject) {
+                        inputDS.GetRasterBand(1).ReadRaster(0, y, width, rows, inputArray);
+                        GdalUtils.errorCheck();
+                    }
+                    for (int i=0; i<length; i++) {
+                        outputArray[i] += inputArray[i];
+                    }
+                }
 
-            outputDS.GetRasterBand(1).WriteRaster(0, 0, inputDSs.get(0).GetRasterXSize(), inputDSs.get(0).GetRasterYSize(), outputArray);
+                for (int i=0; i<length; i++) {
+                    outputArray[i] /= inputDSs.size();
+                }
 
-            for (Dataset inputDS : inputDSs) {
-                inputDS.delete();
+                synchronized (GdalUtils.lockObject) {
+                    outputDS.GetRasterBand(1).WriteRaster(0, y, width, rows, outputArray);
+                    GdalUtils.errorCheck();
+                }
+            }
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                for (Dataset inputDS : inputDSs) {
+                    inputDS.delete();
+                }
+                outputDS.delete();
             }
-            outputDS.delete();
         }
     }
 
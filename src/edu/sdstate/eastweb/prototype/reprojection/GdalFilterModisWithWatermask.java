@@ -0,0 +1,132 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.download.ModisProduct;
+import edu.sdstate.eastweb.prototype.setup.ProjectWatermask;
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
+import edu.sdstate.eastweb.prototype.util.RowMath;
+
+/**
+ * Applies the product's value filter and the project watermask to a projected
+ * MODIS band in a single pass: every row is read once, filtered, masked and
+ * written once, and the band statistics are accumulated on the way. The
+ * filter runs over whole strips through RowMath, then the runs of pixels
+ * outside the watermask are filled with no-data.
+ *
+ * The watermask comes from the project's precomputed bitmap (see
+ * ProjectWatermask). Only reading and writing hold the GDAL lock, so several
+ * bands can be filtered concurrently.
+ */
+public class GdalFilterModisWithWatermask implements FilterModis {
+    private static final double NO_DATA = 32767;
+    private static final int STRIP_ROWS = 64;
+
+    private final ModisProduct mProduct;
+    private final ProjectInfo mProject;
+    private final File mInput;
+    private final File mOutput;
+
+    public GdalFilterModisWithWatermask(ModisProduct product, ProjectInfo project,
+            File input, File output) {
+        assert(!input.equals(output));
+
+        mProduct = product;
+        mProject = project;
+        mInput = input;
+        mOutput = output;
+    }
+
+    @Override
+    public void filter() throws Exception {
+        GdalUtils.register();
+
+        final Dataset inputDS;
+        final Dataset outputDS;
+        final int width;
+        final int height;
+        synchronized (GdalUtils.lockObject) {
+            inputDS = gdal.Open(mInput.getPath());
+            if (inputDS == null) {
+                throw new IOException("Could not open " + mInput);
+            }
+
+            assert(inputDS.GetRasterCount() == 1);
+
+            width = inputDS.GetRasterXSize();
+            height = inputDS.GetRasterYSize();
+            outputDS = gdal.GetDriverByName("GTiff").Create(mOutput.getPath(),
+                    width, height, 1, inputDS.GetRasterBand(1).getDataType());
+            if (outputDS == null) {
+                inputDS.delete();
+                throw new IOException("Could not create " + mOutput);
+            }
+            outputDS.SetGeoTransform(inputDS.GetGeoTransform());
+            outputDS.SetProjection(inputDS.GetProjection());
+            outputDS.GetRasterBand(1).SetNoDataValue(NO_DATA);
+        }
+
+        try {
+            final MappedBitSet watermask = ProjectWatermask.get(mProject, inputDS);
+
+            final BandStatistics statistics = new BandStatistics();
+            final double[] values = new double[width * STRIP_ROWS];
+            for (int y = 0; y < height; y += STRIP_ROWS) {
+                final int rows = Math.min(STRIP_ROWS, height - y);
+
+                synchronized (GdalUtils.lockObject) {
+                    inputDS.GetRasterBand(1).ReadRaster(0, y, width, rows, values);
+                }
+
+                final int offset = y * width;
+                final int end = offset + width * rows;
+                filterValues(values, width * rows);
+                int clear = watermask.nextClearBit(offset);
+                while (clear < end) {
+                    final int set = watermask.nextSetBit(clear);
+                    final int runEnd = set == -1 ? end : Math.min(set, end);
+                    Arrays.fill(values, clear - offset, runEnd - offset, NO_DATA);
+                    clear = watermask.nextClearBit(runEnd);
+                }
+                statistics.addAll(values, 0, width * rows, NO_DATA);
+
+                synchronized (GdalUtils.lockObject) {
+                    outputDS.GetRasterBand(1).WriteRaster(0, y, width, rows, values);
+                }
+            }
+
+            synchronized (GdalUtils.lockObject) {
+                statistics.apply(outputDS.GetRasterBand(1));
+            }
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                inputDS.delete();
+                outputDS.delete();
+            }
+        }
+    }
+
+    private void filterValues(double[] values, int length) {
+        switch (mProduct) {
+        case NBAR:
+            // Reflectances outside 0..32766 are no-data
+            RowMath.get().filterRange(values, 0, length, 0, 32766, 1, NO_DATA);
+            break;
+        case LST:
+            // Temperatures below 7500 are no-data, the rest are scaled to Kelvin
+            RowMath.get().filterRange(values, 0, length, 7500, Double.POSITIVE_INFINITY,
+                    0.02, NO_DATA);
+            break;
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+}
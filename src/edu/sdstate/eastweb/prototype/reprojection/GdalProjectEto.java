@@ -1,19 +1,17 @@
 package edu.sdstate.eastweb.prototype.reprojection;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
-import org.gdal.ogr.DataSource;
-import org.gdal.ogr.ogr;
 import org.gdal.osr.SpatialReference;
 import edu.sdstate.eastweb.prototype.Config;
-import edu.sdstate.eastweb.prototype.DirectoryLayout;
 import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.Projection.ResamplingType;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.GdalWarper;
+import edu.sdstate.eastweb.prototype.util.ProjectGrids;
+import edu.sdstate.eastweb.prototype.util.RasterGrid;
 
 public class GdalProjectEto implements ProjectEto {
 
@@ -35,80 +33,36 @@ public class GdalProjectEto implements ProjectEto {
     public void project(File eto, ProjectInfo project, File out)
             throws Exception {
 
-        assert (project.getShapeFiles().size() > 0);
-
         GdalUtils.register();
 
+        final Dataset inputDS;
         synchronized (GdalUtils.lockObject) {
-            // Load ETo and features
-            Dataset inputDS = gdal.Open(eto.getPath());
+            // Load ETo
+            inputDS = gdal.Open(eto.getPath());
+            GdalUtils.errorCheck();
 
             SpatialReference inputRef = new SpatialReference();
             inputRef.ImportFromWkt("GEOGCS[\"GCS_North_American_1983\",DATUM[\"D_North_American_1983\",SPHEROID[\"GRS_1980\",6378137,298.257222101]],PRIMEM[\"Greenwich\",0],UNIT[\"Degree\",0.017453292519943295]]");
             inputDS.SetProjection(inputRef.ExportToWkt());
+        }
 
-            List<DataSource> features = new ArrayList<DataSource>();
-            for (String filename : project.getShapeFiles()) {
-                features.add(ogr.Open(new File(DirectoryLayout
-                        .getSettingsDirectory(project), filename).getPath()));
-            }
-
-            // Find union of extents
-            double[] extent = features.get(0).GetLayer(0).GetExtent(); // Ordered:
-            // left,
-            // right,
-            // bottom,
-            // top
-
-            System.out.println(Arrays.toString(extent));
-
-            double left = extent[0];
-            double right = extent[1];
-            double bottom = extent[2];
-            double top = extent[3];
-            for (int i = 1; i < features.size(); i++) {
-                extent = features.get(i).GetLayer(0).GetExtent();
-                if (extent[0] < left) {
-                    left = extent[0];
-                } else if (extent[1] > right) {
-                    right = extent[1];
-                } else if (extent[2] < bottom) {
-                    bottom = extent[2];
-                } else if (extent[3] > top) {
-                    top = extent[3];
+        try {
+            // Project to the union of the extents of the project's features
+            RasterGrid grid = ProjectGrids.get(project);
+            Dataset outputDS = grid.create(out, gdalconst.GDT_Float32);
+            try {
+                GdalWarper.warp(inputDS, outputDS, ResamplingType.CUBIC_CONVOLUTION,
+                        Config.getInstance().getWarpMemory());
+            } finally {
+                synchronized (GdalUtils.lockObject) {
+                    outputDS.delete();
                 }
             }
-
-            // Project to union of extents
-            Dataset outputDS =
-                    gdal.GetDriverByName("GTiff").Create(
-                            out.getPath(),
-                            (int) Math.ceil((right - left)
-                                    / project.getProjection().getPixelSize()),
-                                    (int) Math.ceil((top - bottom)
-                                            / project.getProjection().getPixelSize()),
-                                            1, gdalconst.GDT_Float32);
-
-            // FIXME: hack --should get projection from project info somehow
-            String outputProjection =
-                    features.get(0).GetLayer(0).GetSpatialRef().ExportToWkt();
-            System.out.println(outputProjection);
-            System.out.println(inputRef.ExportToWkt());
-
-            outputDS.SetProjection(outputProjection);
-            outputDS.SetGeoTransform(new double[] { left,
-                    project.getProjection().getPixelSize(), 0, top, 0,
-                    -project.getProjection().getPixelSize() });
-
-            gdal.ReprojectImage(inputDS, outputDS, null, null,
-                    gdalconst.GRA_Cubic);
-
-            outputDS.GetRasterBand(1).ComputeStatistics(false);
-
-            outputDS.delete();
-            inputDS.delete();
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                inputDS.delete();
+            }
         }
-
     }
 
 }
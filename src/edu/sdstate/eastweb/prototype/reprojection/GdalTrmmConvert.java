@@ -1,24 +1,60 @@
 package edu.sdstate.eastweb.prototype.reprojection;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
 
 import edu.sdstate.eastweb.prototype.download.TrmmProduct;
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.Signature;
 
 
 /**
  * FIXME: read metadata file provided for .bin file?
  * 
+ * Converted grids are cached by product and input file, so every project
+ * needing the grid of a date reuses one conversion and only warps it.
+ * 
  * @author Isaiah Snell-Feikema
  *
  */
 public class GdalTrmmConvert implements TrmmConverter {
+    private static final int X_SIZE = 1440;
+    private static final double NO_DATA = -99999.0;
+    private static final int CACHE_SIZE = 8;
+
+    /**
+     * A converted grid with its statistics.
+     */
+    private static final class Grid {
+        final float[] mValues;
+        final BandStatistics mStatistics;
+
+        Grid(float[] values, BandStatistics statistics) {
+            mValues = values;
+            mStatistics = statistics;
+        }
+    }
+
+    private static final Map<Long, Grid> sGrids = new LinkedHashMap<Long, Grid>(
+            CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Grid> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     final TrmmProduct mProduct;
     final File mInput;
@@ -28,6 +64,13 @@ public class GdalTrmmConvert implements TrmmConverter {
         new GdalTrmmConvert(TrmmProduct.TRMM_3B42RT, new File(args[0]), new File(args[1])).convert();
     }
 
+    /**
+     * For converting to an in-memory raster with toDataset() only.
+     */
+    public GdalTrmmConvert(TrmmProduct product, File input) {
+        this(product, input, null);
+    }
+
     public GdalTrmmConvert(TrmmProduct product, File input, File output) {
         mProduct = product;
         mInput = input;
@@ -37,53 +80,120 @@ public class GdalTrmmConvert implements TrmmConverter {
     @Override
     public void convert() throws Exception {
         GdalUtils.register();
-        synchronized (GdalUtils.lockObject) {
-            // FIXME: not a very OO way to do things
-            int ySize;
-            int xSize = 1440;
-            if (mProduct == TrmmProduct.TRMM_3B42) {
-                ySize = 400;
-            } else {
-                ySize = 480;
-            }
 
+        final Grid grid = getGrid();
+        synchronized (GdalUtils.lockObject) {
             Dataset outputDS = gdal.GetDriverByName("GTiff").Create(
                     mOutput.getPath(),
-                    xSize, ySize,
+                    X_SIZE, getYSize(),
                     1,
                     gdalconst.GDT_Float32
-            );
+            ); GdalUtils.errorCheck();
+            try {
+                write(outputDS, grid);
+            } finally {
+                outputDS.delete();
+            }
+        }
+    }
 
-            DataInputStream dis = new DataInputStream(new FileInputStream(mInput));
+    /**
+     * Returns the grid as an in-memory raster, so that it can be projected
+     * without writing a GeoTIFF first. The caller must delete the returned
+     * dataset.
+     */
+    public Dataset toDataset() throws Exception {
+        GdalUtils.register();
 
-            double[] array = new double[1440];
-            for (int row=0; row<ySize; row++) {
-                for (int col=0; col<xSize; col++) {
-                    array[col] = dis.readFloat();
-                }
+        final Grid grid = getGrid();
+        synchronized (GdalUtils.lockObject) {
+            Dataset dataset = gdal.GetDriverByName("MEM").Create("",
+                    X_SIZE, getYSize(), 1, gdalconst.GDT_Float32); GdalUtils.errorCheck();
+            write(dataset, grid);
+            return dataset;
+        }
+    }
+
+    private int getYSize() {
+        // FIXME: not a very OO way to do things
+        return mProduct == TrmmProduct.TRMM_3B42 ? 400 : 480;
+    }
 
-                outputDS.GetRasterBand(1).WriteRaster(0, row, xSize, 1, array);
+    /**
+     * Returns the converted grid of the input, converting it unless it is
+     * cached. The key includes the input's size and modification time, so a
+     * downloaded again file is converted again.
+     */
+    private Grid getGrid() throws IOException {
+        final Long key = new Signature().add(mProduct.name()).add(mInput).get();
+        synchronized (sGrids) {
+            final Grid grid = sGrids.get(key);
+            if (grid != null) {
+                return grid;
             }
-            dis.close();
-
-            outputDS.GetRasterBand(1).SetNoDataValue(-99999.0);
-            if (mProduct == TrmmProduct.TRMM_3B42) {
-                outputDS.SetGeoTransform(new double[] {
-                        0.125, 0.25, 0,
-                        -49.8750000, 0, 0.25
-                });
-            } else {
-                outputDS.SetGeoTransform(new double[] {
-                        0.125, 0.25, 0,
-                        -59.8750000, 0, 0.25
-                });
+        }
+
+        // Converted outside of the lock, as it only takes a copy
+        final float[] values = read();
+        final BandStatistics statistics = new BandStatistics();
+        for (float value : values) {
+            if (value != NO_DATA) {
+                statistics.add(value);
             }
+        }
+
+        final Grid grid = new Grid(values, statistics);
+        synchronized (sGrids) {
+            sGrids.put(key, grid);
+        }
+        return grid;
+    }
 
-            outputDS.SetProjection("GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]],PRIMEM[\"Greenwich\",0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.01745329251994328,AUTHORITY[\"EPSG\",\"9122\"]],AUTHORITY[\"EPSG\",\"4326\"]]");
+    /**
+     * Reads the whole grid in one read, through a big-endian view of the
+     * bytes. The input isn't memory-mapped, so that the download stage can
+     * replace it as soon as it is read.
+     */
+    private float[] read() throws IOException {
+        final float[] grid = new float[X_SIZE * getYSize()];
+        final ByteBuffer bytes = ByteBuffer.allocate(grid.length * 4);
+        final RandomAccessFile raf = new RandomAccessFile(mInput, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IOException("Truncated TRMM grid " + mInput);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        bytes.flip();
+        bytes.order(ByteOrder.BIG_ENDIAN).asFloatBuffer().get(grid);
+        return grid;
+    }
 
-            outputDS.GetRasterBand(1).ComputeStatistics(false);
-            outputDS.delete();
+    /**
+     * Writes the grid with its georeferencing and statistics in one call.
+     */
+    private void write(Dataset dataset, Grid grid) {
+        dataset.GetRasterBand(1).WriteRaster(0, 0, X_SIZE, getYSize(), grid.mValues);
+        dataset.GetRasterBand(1).SetNoDataValue(NO_DATA);
+        if (mProduct == TrmmProduct.TRMM_3B42) {
+            dataset.SetGeoTransform(new double[] {
+                    0.125, 0.25, 0,
+                    -49.8750000, 0, 0.25
+            });
+        } else {
+            dataset.SetGeoTransform(new double[] {
+                    0.125, 0.25, 0,
+                    -59.8750000, 0, 0.25
+            });
         }
+
+        dataset.SetProjection("GEOGCS[\"WGS 84\",DATUM[\"WGS_1984\",SPHEROID[\"WGS 84\",6378137,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]],PRIMEM[\"Greenwich\",0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.01745329251994328,AUTHORITY[\"EPSG\",\"9122\"]],AUTHORITY[\"EPSG\",\"4326\"]]");
+
+        grid.mStatistics.apply(dataset.GetRasterBand(1));
     }
 
 }
@@ -0,0 +1,246 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DataDate;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ModisTile;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.download.ModisDownloadMetadata;
+import edu.sdstate.eastweb.prototype.download.ModisProduct;
+
+/**
+ * Builds the sinusoidal mosaic of a (product, date) once for all projects
+ * sharing its tiles. The mosaic covers the connected group of shared tiles
+ * containing the project's tiles, so every project whose tiles fall in the
+ * same group warps from the same file and only reads the window it needs.
+ *
+ * The mosaic is kept next to the downloads of the date until every project
+ * sharing it is up to date for that date, then removed by {@link #release}.
+ * A project that later needs it again, e.g. after a tile is downloaded again,
+ * rebuilds it.
+ */
+public final class ModisMosaicCache {
+    private static final Map<File, Object> sLocks = new HashMap<File, Object>();
+
+    private final ModisProduct mProduct;
+    private final DataDate mDate;
+    private final List<ProjectInfo> mSharingProjects;
+    private final Set<ModisTile> mProjectTiles;
+    private final Set<ModisTile> mSharedTiles;
+
+    /**
+     * @param product MODIS product
+     * @param date data date
+     * @param project the project needing the mosaic
+     * @param sharingProjects every project sharing tiles with this one, or an
+     * empty list if no other project needs these tiles
+     */
+    public ModisMosaicCache(ModisProduct product, DataDate date, ProjectInfo project,
+            List<ProjectInfo> sharingProjects) {
+        mProduct = product;
+        mDate = date;
+        mSharingProjects = new ArrayList<ProjectInfo>(sharingProjects);
+        mProjectTiles = getTiles(project);
+        mSharedTiles = new HashSet<ModisTile>();
+        for (ProjectInfo other : sharingProjects) {
+            mSharedTiles.addAll(getTiles(other));
+        }
+    }
+
+    private static Set<ModisTile> getTiles(ProjectInfo project) {
+        return new HashSet<ModisTile>(Arrays.asList(project.getModisTiles()));
+    }
+
+    /**
+     * Returns the shared mosaic of each band, building it if needed, or null
+     * if the project's tiles cannot be served by a single shared mosaic.
+     */
+    public File[] getMosaics(int[] bands) throws Exception {
+        final Set<ModisTile> group = findGroup(mProjectTiles, mSharedTiles);
+        if (group == null) {
+            return null;
+        }
+
+        final String key = getKey(group);
+        final File folder = DirectoryLayout.getModisMosaicFolder(mProduct, mDate, key);
+        final File[] mosaics = new File[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            mosaics[i] = DirectoryLayout.getModisMosaic(mProduct, mDate, key, bands[i]);
+        }
+
+        synchronized (getLock(folder)) {
+            if (!isUsable(key, mosaics)) {
+                build(key, group, bands, mosaics);
+            }
+        }
+
+        return mosaics;
+    }
+
+    /**
+     * Called once the project is done with the mosaic: removes it if every
+     * sharing project that processes the date is up to date with it, i.e. its
+     * reprojected bands were made from downloads the mosaic includes.
+     */
+    public void release() throws ConfigReadException {
+        final Set<ModisTile> group = findGroup(mProjectTiles, mSharedTiles);
+        if (group == null) {
+            return;
+        }
+
+        final String key = getKey(group);
+        final File folder = DirectoryLayout.getModisMosaicFolder(mProduct, mDate, key);
+        synchronized (getLock(folder)) {
+            final ModisMosaicMetadata mosaic;
+            try {
+                mosaic = ModisMosaicMetadata.fromFile(
+                        DirectoryLayout.getModisMosaicMetadata(mProduct, mDate, key));
+            } catch (IOException e) {
+                return;
+            }
+
+            for (ProjectInfo project : mSharingProjects) {
+                if (project.getStartDate().compareTo(mDate) > 0
+                        || !group.equals(findGroup(getTiles(project), mSharedTiles))) {
+                    continue;
+                }
+
+                try {
+                    final ModisReprojectedMetadata reprojected = ModisReprojectedMetadata.fromFile(
+                            DirectoryLayout.getModisReprojectedMetadata(project, mProduct, mDate));
+                    if (!mosaic.getDownloads().containsAll(reprojected.getDownloads())) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    return;
+                }
+            }
+
+            FileUtils.deleteQuietly(folder);
+        }
+    }
+
+    private static Object getLock(File folder) {
+        synchronized (sLocks) {
+            Object lock = sLocks.get(folder);
+            if (lock == null) {
+                sLocks.put(folder, lock = new Object());
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * Finds the tiles of the shared set connected (including diagonally) to
+     * the project's tiles. Returns null if sharing doesn't apply: no other
+     * project shares the tiles, or the project's tiles are not connected.
+     */
+    static Set<ModisTile> findGroup(Set<ModisTile> projectTiles, Set<ModisTile> sharedTiles) {
+        if (projectTiles.isEmpty() || !sharedTiles.containsAll(projectTiles)) {
+            return null;
+        }
+
+        final Set<ModisTile> group = new TreeSet<ModisTile>();
+        final LinkedList<ModisTile> pending = new LinkedList<ModisTile>();
+        pending.add(projectTiles.iterator().next());
+        while (!pending.isEmpty()) {
+            final ModisTile tile = pending.removeFirst();
+            if (!group.add(tile)) {
+                continue;
+            }
+
+            for (ModisTile other : sharedTiles) {
+                if (Math.abs(other.getHTile() - tile.getHTile()) <= 1
+                        && Math.abs(other.getVTile() - tile.getVTile()) <= 1
+                        && !group.contains(other)) {
+                    pending.add(other);
+                }
+            }
+        }
+
+        return group.containsAll(projectTiles) ? group : null;
+    }
+
+    private static String getKey(Set<ModisTile> group) {
+        final ModisTile first = new TreeSet<ModisTile>(group).first();
+        return String.format("h%02dv%02d", first.getHTile(), first.getVTile());
+    }
+
+    /**
+     * The mosaic is usable if it was built from the project's current
+     * downloads and all of its band files exist.
+     */
+    private boolean isUsable(String key, File[] mosaics) throws ConfigReadException {
+        final ModisMosaicMetadata metadata;
+        try {
+            metadata = ModisMosaicMetadata.fromFile(
+                    DirectoryLayout.getModisMosaicMetadata(mProduct, mDate, key));
+        } catch (IOException e) {
+            return false;
+        }
+
+        for (ModisTile tile : mProjectTiles) {
+            try {
+                final ModisDownloadMetadata download = ModisDownloadMetadata.fromFile(
+                        DirectoryLayout.getModisDownloadMetadata(mProduct, mDate, tile));
+                if (!metadata.getDownloads().contains(download)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        for (File mosaic : mosaics) {
+            if (!mosaic.exists()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void build(String key, Set<ModisTile> group, int[] bands, File[] mosaics)
+            throws Exception {
+        final File metadataFile = DirectoryLayout.getModisMosaicMetadata(mProduct, mDate, key);
+        FileUtils.deleteQuietly(metadataFile);
+        FileUtils.forceMkdir(metadataFile.getParentFile());
+
+        // Include every tile of the group that has finished downloading
+        final List<File> inputs = new ArrayList<File>();
+        final List<ModisDownloadMetadata> downloads = new ArrayList<ModisDownloadMetadata>();
+        for (ModisTile tile : group) {
+            try {
+                downloads.add(ModisDownloadMetadata.fromFile(
+                        DirectoryLayout.getModisDownloadMetadata(mProduct, mDate, tile)));
+                inputs.add(DirectoryLayout.getModisDownload(mProduct, mDate, tile));
+            } catch (IOException e) {
+                if (mProjectTiles.contains(tile)) {
+                    throw e;
+                }
+            }
+        }
+
+        for (File mosaic : mosaics) {
+            FileUtils.deleteQuietly(mosaic);
+        }
+        new ModisTileMosaic(inputs.toArray(new File[0])).writeBands(bands, mosaics);
+
+        new ModisMosaicMetadata(downloads, new Date().getTime()).toFile(metadataFile);
+    }
+}
@@ -1,33 +1,55 @@
 package edu.sdstate.eastweb.prototype.reprojection;
 
 import java.io.File;
-import java.util.ArrayList;
-import edu.sdstate.eastweb.prototype.ConfigReadException;
+
+import org.gdal.gdal.Dataset;
+
 import edu.sdstate.eastweb.prototype.ProjectInfo;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
 
 public class ModisReprojection {
-    private ArrayList<File> mozaicOutput;
 
     public ModisReprojection() throws Exception {
 
     }
 
+    /**
+     * Warps the selected subdatasets of all input tiles straight into the
+     * project grid. Tiles are combined through a virtual mosaic, so no
+     * full-resolution sinusoidal mosaic is ever held in memory or on disk.
+     */
     public void project(File[] input, ProjectInfo project, File[] outputFiles,
             int[] band) throws Exception {
-        Mozaic myMozaic=new Mozaic(input, band);
-        mozaicOutput=myMozaic.run();
-        reproject(project,band,outputFiles);
+        ModisTileMosaic mosaic = new ModisTileMosaic(input);
+
+        GdalUtils.register();
+        for (int index = 0; index < band.length; index++) {
+            final Dataset mosaicDS;
+            synchronized (GdalUtils.lockObject) {
+                mosaicDS = mosaic.openBand(band[index]);
+            }
+
+            // Outside of the lock, so that the warp can run on several threads
+            try {
+                GdalUtils.project(mosaicDS, project, outputFiles[index]);
+            } finally {
+                synchronized (GdalUtils.lockObject) {
+                    mosaicDS.delete();
+                }
+            }
+        }
     }
 
-    private void reproject(ProjectInfo project, int[] band, File[] outputFiles) throws ConfigReadException {
-        for(int index=0; index<band.length; index++){
-            File nonProjectFile=mozaicOutput.get(index);
-            File output=new File(outputFiles[index].getPath());
+    /**
+     * Warps already mosaicked bands, one input file per output file, into the
+     * project grid.
+     */
+    public void project(File[] mosaics, ProjectInfo project, File[] outputFiles)
+            throws Exception {
+        for (int index = 0; index < mosaics.length; index++) {
             //TODO: GdalUtils.project() doesn't use wtk right now, may change later
-            String wtk="  ";
-            GdalUtils.project(wtk,nonProjectFile, project,output);
-
+            String wtk = "  ";
+            GdalUtils.project(wtk, mosaics[index], project, outputFiles[index]);
         }
     }
 
@@ -1,9 +1,11 @@
 package edu.sdstate.eastweb.prototype.reprojection;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.gdal;
@@ -15,13 +17,18 @@ import edu.sdstate.eastweb.prototype.util.GdalUtils;
  * file. Programmer: Jiameng Hu Date: 17/03/2013
  */
 public class ModisTileData {
+    /**
+     * Matches the size prefix of a subdataset description, e.g.
+     * "[2400x2400] Nadir_Reflectance_Band1 ... (16-bit integer)".
+     */
+    private static final Pattern SIZE_PATTERN = Pattern.compile("^\\[(\\d+)x(\\d+)\\]");
+
     int horizon;
     int vertical;
     int bandNumber;
     int xSize;
     int ySize;
     String[] sdsName;
-    ArrayList<ImageArray> imageSet;
 
     ModisTileData(int bandNumber, int x, int y) {
         this.bandNumber = bandNumber;
@@ -30,55 +37,59 @@ public class ModisTileData {
 
     }
 
+    /**
+     * Reads the tile numbers and subdataset names of the given HDF file. The
+     * file is opened only once: the subdataset size is parsed from its
+     * description instead of opening the subdataset itself.
+     */
     @SuppressWarnings("unchecked")
-    ModisTileData(File file) throws InterruptedException {
+    ModisTileData(File file) throws IOException {
         GdalUtils.register();
         synchronized (GdalUtils.lockObject) {
-            imageSet=new  ArrayList<ImageArray>();
-            Dataset hdf = null;
-            hdf = gdal.Open(file.toString());
-            Hashtable<String, String> sdsdict=null;
-            //check if hdf is null or not  for testing
-            if(hdf!=null){
-                try{sdsdict = hdf.GetMetadata_Dict("SUBDATASETS");
-
-                }
-                catch (NullPointerException e){
-                    System.out.println("hdf open error, null pointer" +file.toString());
-                }
-            }else{
-                System.out.println("hdf is null:"+ file.toString());
+            Dataset hdf = gdal.Open(file.toString());
+            if (hdf == null) {
+                throw new IOException("Could not open " + file.toString());
             }
-            bandNumber=sdsdict.size()/2;
-            horizon =
-                    Integer.parseInt(hdf
-                            .GetMetadataItem("HORIZONTALTILENUMBER"));
-            vertical =
-                    Integer.parseInt(hdf.GetMetadataItem("VERTICALTILENUMBER"));
-            sdsName = new String[bandNumber];
 
-            // save all the band names into sdsName[] array in the order of band number
-            Enumeration<String> keys = sdsdict.keys();
-            while (keys.hasMoreElements()) {
-                Object aKey = keys.nextElement();
-                Object aValue = sdsdict.get(aKey);
-                // System.out.println("Key: \""+aKey.toString()+"\" has value of: \""
-                //         +aValue.toString()+"\"");
-                if (aKey.toString().contains("NAME")) {
-                    String bandName[] = aKey.toString().split("_");
-                    //System.out.println(bandName.length);
-                    int i = Integer.parseInt(bandName[1]);
-                    //System.out.println(i);
-                    sdsName[i - 1] = aValue.toString();
-                    // System.out.println(i+"  "+sdsName[i-1]);
+            final String[] sdsDesc;
+            try {
+                Hashtable<String, String> sdsdict = hdf.GetMetadata_Dict("SUBDATASETS");
+                bandNumber = sdsdict.size() / 2;
+                horizon = Integer.parseInt(hdf.GetMetadataItem("HORIZONTALTILENUMBER"));
+                vertical = Integer.parseInt(hdf.GetMetadataItem("VERTICALTILENUMBER"));
+                sdsName = new String[bandNumber];
+                sdsDesc = new String[bandNumber];
 
+                // save all the band names into sdsName[] array in the order of
+                // band number; keys are SUBDATASET_<n>_NAME and _DESC
+                Enumeration<String> keys = sdsdict.keys();
+                while (keys.hasMoreElements()) {
+                    String key = keys.nextElement();
+                    int i = Integer.parseInt(key.split("_")[1]);
+                    if (key.endsWith("_NAME")) {
+                        sdsName[i - 1] = sdsdict.get(key);
+                    } else if (key.endsWith("_DESC")) {
+                        sdsDesc[i - 1] = sdsdict.get(key);
+                    }
                 }
+            } finally {
                 hdf.delete();
             }
-            Dataset temp=gdal.Open(sdsName[0]);
-            xSize = temp.getRasterXSize();
-            ySize = temp.getRasterYSize();
-            temp.delete();
+
+            // The description is "[rows x columns]" followed by the name
+            Matcher matcher = SIZE_PATTERN.matcher(sdsDesc[0] == null ? "" : sdsDesc[0]);
+            if (matcher.find()) {
+                ySize = Integer.parseInt(matcher.group(1));
+                xSize = Integer.parseInt(matcher.group(2));
+            } else {
+                Dataset temp = gdal.Open(sdsName[0]);
+                if (temp == null) {
+                    throw new IOException("Could not open " + sdsName[0]);
+                }
+                xSize = temp.getRasterXSize();
+                ySize = temp.getRasterYSize();
+                temp.delete();
+            }
         }
     }
 
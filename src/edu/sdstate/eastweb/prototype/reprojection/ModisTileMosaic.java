@@ -0,0 +1,183 @@
+package edu.sdstate.eastweb.prototype.reprojection;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+
+/**
+ * Describes a set of MODIS tiles as a virtual (VRT) mosaic in the sinusoidal
+ * grid. The mosaic is never materialized: each tile's subdataset is referenced
+ * as a source at its offset, so a warp reading from the mosaic only decodes
+ * the source windows it actually needs.
+ */
+public class ModisTileMosaic {
+    /**
+     * Value of mosaic pixels not covered by any tile.
+     */
+    public static final double NO_DATA = -3.40282346639e+038;
+
+    /**
+     * Number of rows copied at a time by {@link #writeBands}.
+     */
+    private static final int STRIP_ROWS = 256;
+
+    private final ModisTileData[] mTiles;
+    private final int mMinH;
+    private final int mMinV;
+    private final int mXSize;
+    private final int mYSize;
+    private final int mOutputXSize;
+    private final int mOutputYSize;
+
+    public ModisTileMosaic(File[] input) throws IOException {
+        assert (input.length > 0);
+
+        mTiles = new ModisTileData[input.length];
+        for (int i = 0; i < input.length; i++) {
+            mTiles[i] = new ModisTileData(input[i]);
+        }
+
+        int minH = mTiles[0].horizon;
+        int maxH = mTiles[0].horizon;
+        int minV = mTiles[0].vertical;
+        int maxV = mTiles[0].vertical;
+        for (ModisTileData tile : mTiles) {
+            minH = Math.min(minH, tile.horizon);
+            maxH = Math.max(maxH, tile.horizon);
+            minV = Math.min(minV, tile.vertical);
+            maxV = Math.max(maxV, tile.vertical);
+        }
+
+        mMinH = minH;
+        mMinV = minV;
+        mXSize = mTiles[0].xSize;
+        mYSize = mTiles[0].ySize;
+        mOutputXSize = mXSize * (maxH - minH + 1);
+        mOutputYSize = mYSize * (maxV - minV + 1);
+    }
+
+    /**
+     * Opens the mosaic of the specified band (1-based subdataset number) as a
+     * single-band VRT dataset. The caller must delete the returned dataset.
+     */
+    public Dataset openBand(int band) throws IOException {
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final double[] transform = new double[6];
+            final String projection = getReference(band, transform);
+            final Dataset mosaic = gdal.Open(makeVrt(band, transform, projection));
+            if (mosaic == null) {
+                throw new IOException("Could not build the mosaic of band " + band);
+            }
+            return mosaic;
+        }
+    }
+
+    /**
+     * Writes the mosaic of each band (1-based subdataset numbers) to a tiled
+     * GeoTIFF, visiting the tiles one at a time: all requested subdatasets of
+     * a tile are copied before moving on to the next HDF file.
+     *
+     * GDAL's HDF4 driver exposes each subdataset as its own dataset, and the
+     * HDF container has no bands of its own, so every band of a tile is still
+     * a separate open of its subdataset.
+     */
+    public void writeBands(int[] bands, File[] outputs) throws IOException {
+        assert (bands.length == outputs.length);
+
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final double[] transform = new double[6];
+            final String projection = getReference(bands[0], transform);
+
+            final Dataset[] outputDS = new Dataset[bands.length];
+            try {
+                for (int i = 0; i < bands.length; i++) {
+                    outputDS[i] = gdal.GetDriverByName("GTiff").Create(
+                            outputs[i].getPath(), mOutputXSize, mOutputYSize, 1,
+                            gdalconst.GDT_Float32, new String[] { "TILED=YES" });
+                    if (outputDS[i] == null) {
+                        throw new IOException("Could not create " + outputs[i]);
+                    }
+                    outputDS[i].SetGeoTransform(transform);
+                    outputDS[i].SetProjection(projection);
+                    outputDS[i].GetRasterBand(1).SetNoDataValue(NO_DATA);
+                    if (mTiles.length < (mOutputXSize / mXSize) * (mOutputYSize / mYSize)) {
+                        outputDS[i].GetRasterBand(1).Fill(NO_DATA);
+                    }
+                }
+
+                final float[] strip = new float[mXSize * STRIP_ROWS];
+                for (ModisTileData tile : mTiles) {
+                    final int xOffset = (tile.horizon - mMinH) * mXSize;
+                    final int yOffset = (tile.vertical - mMinV) * mYSize;
+                    for (int i = 0; i < bands.length; i++) {
+                        final Dataset tileDS = gdal.Open(tile.sdsName[bands[i] - 1]);
+                        if (tileDS == null) {
+                            throw new IOException("Could not open " + tile.sdsName[bands[i] - 1]);
+                        }
+                        try {
+                            final Band tileBand = tileDS.GetRasterBand(1);
+                            final Band outputBand = outputDS[i].GetRasterBand(1);
+                            for (int y = 0; y < mYSize; y += STRIP_ROWS) {
+                                final int rows = Math.min(STRIP_ROWS, mYSize - y);
+                                tileBand.ReadRaster(0, y, mXSize, rows, strip);
+                                outputBand.WriteRaster(xOffset, yOffset + y, mXSize, rows, strip);
+                            }
+                        } finally {
+                            tileDS.delete();
+                        }
+                    }
+                }
+            } finally {
+                for (Dataset ds : outputDS) {
+                    if (ds != null) {
+                        ds.delete();
+                    }
+                }
+            }
+
+            GdalUtils.errorCheck();
+        }
+    }
+
+    /**
+     * Returns the projection of the mosaic and stores its geotransform. The
+     * sinusoidal grid is regular, so the mosaic's origin is an integer number
+     * of tiles away from any tile's origin.
+     */
+    private String getReference(int band, double[] transform) throws IOException {
+        final ModisTileData reference = mTiles[0];
+        final Dataset referenceDS = gdal.Open(reference.sdsName[band - 1]);
+        if (referenceDS == null) {
+            throw new IOException("Could not open " + reference.sdsName[band - 1]);
+        }
+        referenceDS.GetGeoTransform(transform);
+        final String projection = referenceDS.GetProjection();
+        referenceDS.delete();
+
+        transform[0] -= (reference.horizon - mMinH) * mXSize * transform[1];
+        transform[3] -= (reference.vertical - mMinV) * mYSize * transform[5];
+        return projection;
+    }
+
+    private String makeVrt(int band, double[] transform, String projection) {
+        final String[] sources = new String[mTiles.length];
+        final int[][] windows = new int[mTiles.length][];
+        for (int i = 0; i < mTiles.length; i++) {
+            sources[i] = mTiles[i].sdsName[band - 1];
+            windows[i] = new int[] { (mTiles[i].horizon - mMinH) * mXSize,
+                    (mTiles[i].vertical - mMinV) * mYSize, mXSize, mYSize };
+        }
+        return GdalUtils.makeVrt(mOutputXSize, mOutputYSize, projection, transform, NO_DATA,
+                sources, windows);
+    }
+}
@@ -1,9 +1,21 @@
 package edu.sdstate.eastweb.prototype.reprojection;
 
 import java.io.File;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
 import edu.sdstate.eastweb.prototype.ProjectInfo;
 import edu.sdstate.eastweb.prototype.util.GdalUtils;
-
+import edu.sdstate.eastweb.prototype.util.ProjectGrids;
+
+/**
+ * Projects TRMM at about its native resolution instead of the project's.
+ * TRMM pixels are much larger than MODIS pixels, so upsampling them only
+ * multiplies the work; the zonal statistics weight the coarse pixels by
+ * their coverage instead.
+ */
 public class TrmmProjection implements ProjectEto {
 
 
@@ -11,9 +23,48 @@ public class TrmmProjection implements ProjectEto {
     public void project(File input, ProjectInfo project, File out)
     throws Exception {
 
-        //TODO:get wkt from user setting
-        String wkt="  ";
-        GdalUtils.project(wkt,input, project,out);
+        GdalUtils.register();
+
+        final Dataset inputDS;
+        synchronized (GdalUtils.lockObject) {
+            inputDS = gdal.Open(input.getPath()); GdalUtils.errorCheck();
+        }
+        try {
+            project(inputDS, project, out);
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                inputDS.delete();
+            }
+        }
+    }
+
+    /**
+     * Projects an already opened input, e.g. an in-memory converted grid.
+     * The input dataset is left open.
+     */
+    public void project(Dataset inputDS, ProjectInfo project, File out)
+    throws Exception {
+        GdalUtils.project(inputDS, project, out, getNativePixelSize(inputDS, project));
+    }
+
+    /**
+     * Returns the pixel size GDAL suggests for the input in the output
+     * projection, or the project's if it is finer.
+     */
+    private static double getNativePixelSize(Dataset inputDS, ProjectInfo project)
+    throws Exception {
+        String outputProjection = ProjectGrids.get(project).getProjection();
+
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            Dataset warped = gdal.AutoCreateWarpedVRT(inputDS, inputDS.GetProjectionRef(),
+                    outputProjection, gdalconst.GRA_NearestNeighbour); GdalUtils.errorCheck();
+            double pixelSize = warped.GetGeoTransform()[1];
+            warped.delete();
+
+            return Math.max(pixelSize, project.getProjection().getPixelSize());
+        }
     }
 
 }
@@ -0,0 +1,158 @@
+package edu.sdstate.eastweb.prototype.reprojection.tests;
+
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import edu.sdstate.eastweb.prototype.reprojection.BilCompositeEto;
+import edu.sdstate.eastweb.prototype.reprojection.BilReader;
+import static org.junit.Assert.*;
+
+public final class BilCompositeEtoTests {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    /**
+     * Writes a big-endian 16-bit grid like the FEWS NET daily ETo.
+     */
+    private static File writeGrid(File directory, String name, short[] values) throws IOException {
+        final File file = new File(directory, name + ".bil");
+        final PrintWriter header = new PrintWriter(new FileWriter(new File(directory, name + ".hdr")));
+        header.println("BYTEORDER      M");
+        header.println("LAYOUT         BIL");
+        header.println("NROWS          " + HEIGHT);
+        header.println("NCOLS          " + WIDTH);
+        header.println("NBANDS         1");
+        header.println("NBITS          16");
+        header.println("ULXMAP         -179.5");
+        header.println("ULYMAP         89.5");
+        header.println("XDIM           1.0");
+        header.println("YDIM           1.0");
+        header.println("NODATA         -9999");
+        header.close();
+
+        final DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
+        for (short value : values) {
+            stream.writeShort(value);
+        }
+        stream.close();
+        return file;
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        final File directory = File.createTempFile("bil", null);
+        FileUtils.forceDelete(directory);
+        FileUtils.forceMkdir(directory);
+        try {
+            final short[] values = new short[WIDTH * HEIGHT];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (short) (i * 100 - 1000);
+            }
+            final BilReader reader = BilReader.open(writeGrid(directory, "et010101", values));
+
+            assertEquals(WIDTH, reader.getWidth());
+            assertEquals(HEIGHT, reader.getHeight());
+            assertEquals(-9999, reader.getNoData(), 0);
+            assertArrayEquals(new double[] { -180, 1, 0, 90, 0, -1 }, reader.getGeoTransform(), 0);
+
+            final float[] row = new float[WIDTH];
+            for (int y = 0; y < HEIGHT; y++) {
+                reader.readRow(y, row);
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(values[y * WIDTH + x], row[x], 0);
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    @Test
+    public void testComposite() throws Exception {
+        final File directory = File.createTempFile("bil", null);
+        FileUtils.forceDelete(directory);
+        FileUtils.forceMkdir(directory);
+        try {
+            final Random random = new Random(4);
+            final List<File> inputs = new ArrayList<File>();
+            final short[][] days = new short[8][WIDTH * HEIGHT];
+            for (int day = 0; day < days.length; day++) {
+                for (int i = 0; i < WIDTH * HEIGHT; i++) {
+                    days[day][i] = (short) random.nextInt(1500);
+                }
+                inputs.add(writeGrid(directory, "et01010" + day, days[day]));
+            }
+            days[3][WIDTH + 2] = -9999;
+            inputs.set(3, writeGrid(directory, "et010103", days[3]));
+
+            assertTrue(BilCompositeEto.canComposite(inputs));
+            final File output = new File(directory, "composite.bil");
+            new BilCompositeEto().composite(inputs, output);
+
+            final BilReader reader = BilReader.open(output);
+            assertEquals(-9999, reader.getNoData(), 0);
+            assertArrayEquals(new double[] { -180, 1, 0, 90, 0, -1 }, reader.getGeoTransform(), 0);
+            final float[] row = new float[WIDTH];
+            for (int y = 0; y < HEIGHT; y++) {
+                reader.readRow(y, row);
+                for (int x = 0; x < WIDTH; x++) {
+                    if (y == 1 && x == 2) {
+                        assertEquals(-9999, row[x], 0);
+                        continue;
+                    }
+                    double sum = 0;
+                    for (short[] day : days) {
+                        sum += day[y * WIDTH + x];
+                    }
+                    assertEquals(sum / days.length, row[x], 1e-3);
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    @Test
+    public void testRolling() throws Exception {
+        final File directory = File.createTempFile("bil", null);
+        FileUtils.forceDelete(directory);
+        FileUtils.forceMkdir(directory);
+        try {
+            final Random random = new Random(7);
+            final List<File> days = new ArrayList<File>();
+            for (int day = 0; day < 20; day++) {
+                final short[] values = new short[WIDTH * HEIGHT];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = random.nextInt(10) == 0 ? -9999 : (short) random.nextInt(1500);
+                }
+                days.add(writeGrid(directory, String.format("et0101%02d", day), values));
+            }
+
+            // Overlapping, repeated and disjoint windows
+            final int[] starts = new int[] { 0, 1, 2, 2, 5, 12, 11, 12 };
+            final BilCompositeEto rolling = new BilCompositeEto();
+            final File rollingOutput = new File(directory, "rolling.bil");
+            final File freshOutput = new File(directory, "fresh.bil");
+            final float[] rollingRow = new float[WIDTH];
+            final float[] freshRow = new float[WIDTH];
+            for (int start : starts) {
+                final List<File> window = days.subList(start, start + 8);
+                rolling.composite(window, rollingOutput);
+                new BilCompositeEto().composite(window, freshOutput);
+
+                final BilReader rollingReader = BilReader.open(rollingOutput);
+                final BilReader freshReader = BilReader.open(freshOutput);
+                for (int y = 0; y < HEIGHT; y++) {
+                    rollingReader.readRow(y, rollingRow);
+                    freshReader.readRow(y, freshRow);
+                    for (int x = 0; x < WIDTH; x++) {
+                        assertEquals(freshRow[x], rollingRow[x], 1e-3);
+                    }
+                }
+            }
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.sdstate.eastweb.prototype.reprojection.tests;
+
+import java.io.*;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import edu.sdstate.eastweb.prototype.download.*;
+import edu.sdstate.eastweb.prototype.download.tests.ModisDownloadMetadataTests;
+import edu.sdstate.eastweb.prototype.reprojection.ModisMosaicMetadata;
+import edu.sdstate.eastweb.prototype.tests.*;
+import edu.sdstate.eastweb.prototype.util.XmlUtils;
+import static org.junit.Assert.*;
+
+public class ModisMosaicMetadataTests extends MetadataTests {
+    @Test
+    public void testFile() throws IOException {
+        for (int i = 0; i < 100; ++i) {
+            final File tempFile = File.createTempFile("test", null);
+            try {
+                final ModisMosaicMetadata ref = random();
+                ref.toFile(tempFile);
+                assertEquals(ref, ModisMosaicMetadata.fromFile(tempFile));
+            } finally {
+                FileUtils.deleteQuietly(tempFile);
+            }
+        }
+    }
+
+    @Test
+    public void testXml() throws IOException {
+        final Document doc = XmlUtils.newDocument("test");
+        for (int i = 0; i < 1000; ++i) {
+            final ModisMosaicMetadata ref = random();
+            assertEquals(ref, ModisMosaicMetadata.fromXml(ref.toXml(doc)));
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        for (int i = 0; i < 10000; ++i) {
+            random();
+        }
+    }
+
+    public static ModisMosaicMetadata random() {
+        final List<ModisDownloadMetadata> downloads = ModisDownloadMetadataTests.randomList();
+        final long timestamp = sRandom.nextLong();
+        final ModisMosaicMetadata obj = new ModisMosaicMetadata(downloads, timestamp);
+
+        Collections.sort(downloads);
+        assertEquals(downloads, obj.getDownloads());
+        assertEquals(timestamp, obj.getTimestamp());
+        return obj;
+    }
+}
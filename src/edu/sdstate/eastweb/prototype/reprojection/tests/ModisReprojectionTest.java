@@ -1,6 +1,7 @@
 package edu.sdstate.eastweb.prototype.reprojection.tests;
 
 import java.io.File;
+import java.util.Collections;
 
 import edu.sdstate.eastweb.prototype.Config;
 import edu.sdstate.eastweb.prototype.ConfigReadException;
@@ -163,8 +164,10 @@ public class ModisReprojectionTest {
         //ProjectInfo projection5 = Config.getInstance().loadProject("tw_test");
         //ProjectInfo projection6 = Config.getInstance().loadProject("tw_test");
 
-        PrepareModisTask p1 = new PrepareModisTask(projection1, lst, d1);
-        PrepareModisTask p2 = new PrepareModisTask(projection2, nbar, d1);
+        PrepareModisTask p1 = new PrepareModisTask(projection1, lst, d1,
+                Collections.<ProjectInfo>emptyList());
+        PrepareModisTask p2 = new PrepareModisTask(projection2, nbar, d1,
+                Collections.<ProjectInfo>emptyList());
         // PrepareModisTask p3=new PrepareModisTask(projection3, lst, d2);
         // PrepareModisTask p4=new PrepareModisTask(projection4, nbar, d2);
         // PrepareModisTask p5=new PrepareModisTask(projection5, lst, d3);
@@ -161,19 +161,31 @@ abstract class BaseTaskQueue {
     protected final class RunnableTaskQueueEntry extends QueueEntry {
         private final RunnableTask mRunnableTask;
         private final Runnable mContinuation;
+        private final Runnable mFailureContinuation;
         private final int mFailures;
 
         private RunnableTaskQueueEntry(EntryType entryType, int priority, RunnableTask runnableTask,
-                Runnable continuation, int failures) {
+                Runnable continuation, Runnable failureContinuation, int failures) {
             super(entryType, priority);
             mRunnableTask = runnableTask;
             mContinuation = continuation;
+            mFailureContinuation = failureContinuation;
             mFailures = failures;
         }
 
         public RunnableTaskQueueEntry(int priority, RunnableTask runnableTask,
                 Runnable continuation) {
-            this(EntryType.SKIP_CHECK, priority, runnableTask, continuation, 0);
+            this(EntryType.SKIP_CHECK, priority, runnableTask, continuation, null, 0);
+        }
+
+        /**
+         * The failure continuation is called instead of the continuation when
+         * the task is given up on, after its skip check or its last retry
+         * threw.
+         */
+        public RunnableTaskQueueEntry(int priority, RunnableTask runnableTask,
+                Runnable continuation, Runnable failureContinuation) {
+            this(EntryType.SKIP_CHECK, priority, runnableTask, continuation, failureContinuation, 0);
         }
 
         @Override
@@ -200,6 +212,7 @@ abstract class BaseTaskQueue {
                 canSkip = mRunnableTask.getCanSkip();
             } catch (Throwable e) {
                 ErrorLog.add("BaseTaskQueue: a skip check threw an exception", e);
+                runFailureContinuation();
                 return;
             }
 
@@ -220,8 +233,8 @@ abstract class BaseTaskQueue {
                 System.out.println("Re-enqueing actual task: " + mRunnableTask.getName());
 
                 // Task is not skippable -- re-enqueue to actually run
-                enqueue(new RunnableTaskQueueEntry(
-                        EntryType.ACTUAL_TASK, mPriority, mRunnableTask, mContinuation, 0));
+                enqueue(new RunnableTaskQueueEntry(EntryType.ACTUAL_TASK, mPriority,
+                        mRunnableTask, mContinuation, mFailureContinuation, 0));
             }
         }
 
@@ -238,8 +251,10 @@ abstract class BaseTaskQueue {
 
                 if (mFailures < MAX_FAILURES) {
                     // Retry once automatically
-                    enqueue(new RunnableTaskQueueEntry(
-                            EntryType.ACTUAL_TASK, mPriority, mRunnableTask, mContinuation, mFailures + 1));
+                    enqueue(new RunnableTaskQueueEntry(EntryType.ACTUAL_TASK, mPriority,
+                            mRunnableTask, mContinuation, mFailureContinuation, mFailures + 1));
+                } else {
+                    runFailureContinuation();
                 }
                 return;
             }
@@ -254,6 +269,16 @@ abstract class BaseTaskQueue {
                 }
             }
         }
+
+        private void runFailureContinuation() {
+            if (mFailureContinuation != null) {
+                try {
+                    mFailureContinuation.run();
+                } catch (Throwable e) {
+                    ErrorLog.add("BaseTaskQueue: a task failure continuation threw an exception", e);
+                }
+            }
+        }
     }
 
     private final class WorkerRunnable implements Runnable {
@@ -40,6 +40,7 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
     private final List<ProjectInfo> mProjects;
     private final DataDate mOldestStartDate;
     private final Set<ModisTile> mModisTileUnion;
+    private final Map<ProjectInfo, List<ProjectInfo>> mSharingProjects;
 
     private boolean mStarted = false;
 
@@ -69,10 +70,35 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
         }
         mOldestStartDate = oldestStartDate;
         mModisTileUnion = Collections.unmodifiableSet(modisTileUnion);
+        mSharingProjects = findSharingProjects();
 
         setupSubscriptions();
     }
 
+    /**
+     * Maps each project to all projects if another project needs any of its
+     * MODIS tiles, or to an empty list otherwise. Projects with shared tiles
+     * reuse a single mosaic per product and date.
+     */
+    private Map<ProjectInfo, List<ProjectInfo>> findSharingProjects() {
+        final Map<ProjectInfo, List<ProjectInfo>> shared = new HashMap<ProjectInfo, List<ProjectInfo>>();
+        for (ProjectInfo project : mProjects) {
+            final List<ModisTile> tiles = Arrays.asList(project.getModisTiles());
+
+            boolean sharing = false;
+            for (ProjectInfo other : mProjects) {
+                if (other != project
+                        && !Collections.disjoint(tiles, Arrays.asList(other.getModisTiles()))) {
+                    sharing = true;
+                    break;
+                }
+            }
+
+            shared.put(project, sharing ? mProjects : Collections.<ProjectInfo>emptyList());
+        }
+        return Collections.unmodifiableMap(shared);
+    }
+
     @Override
     public void start() {
         if (!mStarted) {
@@ -407,6 +433,7 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             incrementTaskGroup(REPROJECT_MODIS_GROUP_NAME, 0, 1);
 
             mProcessingQueue.enqueuePrepareModis(mProject, product, date,
+                    mSharingProjects.get(mProject),
                     new ModisReprojectContinuation(mProject, product, date));
         }
     }
@@ -451,10 +478,15 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             incrementTaskGroup(REPROJECT_MODIS_GROUP_NAME, 1, 0);
 
             for (String feature : mProject.getShapeFiles()) {
-                mProcessingQueue.enqueueModisClip(
-                        mProject, mProduct, mDate, feature,
-                        new ModisClipContinuation(mProject, mProduct, mDate, feature)
-                );
+                final ModisClipContinuation continuation =
+                    new ModisClipContinuation(mProject, mProduct, mDate, feature);
+                if (mProject.shouldSkipClip()) {
+                    // The indices read the reprojected bands through the feature window
+                    continuation.run();
+                } else {
+                    mProcessingQueue.enqueueModisClip(mProject, mProduct, mDate, feature,
+                            continuation);
+                }
             }
 
             mEtaDependencyTracker.setModisCompleted(mProject, mProduct, mDate);
@@ -481,25 +513,14 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             if (mProduct.equals(ModisProduct.NBAR)) {
                 incrementTaskGroup(CALCULATE_INDICES_GROUP_NAME, 0, 5);
 
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.NDVI, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.NDVI));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.NDWI5, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.NDWI5));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.NDWI6, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.NDWI6));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.EVI, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.EVI));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.SAVI, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.SAVI));
+                new CalculateIndexContinuation(mProject, mDate, mFeature, EnvironmentalIndex.NDVI,
+                        EnvironmentalIndex.NDWI5, EnvironmentalIndex.NDWI6, EnvironmentalIndex.EVI,
+                        EnvironmentalIndex.SAVI).enqueue();
             } else {
                 incrementTaskGroup(CALCULATE_INDICES_GROUP_NAME, 0, 3);
 
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.LST_DAY, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.LST_DAY));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.LST_NIGHT, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.LST_NIGHT));
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.LST_MEAN, mDate, mFeature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.LST_MEAN));
+                new CalculateIndexContinuation(mProject, mDate, mFeature, EnvironmentalIndex.LST_DAY,
+                        EnvironmentalIndex.LST_NIGHT, EnvironmentalIndex.LST_MEAN).enqueue();
             }
         }
 
@@ -585,8 +606,14 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             incrementTaskGroup(REPROJECT_TRMM_GROUP_NAME, 1, 0);
 
             for (String feature : mProject.getShapeFiles()) {
-                mProcessingQueue.enqueueTrmmClip(mProject, mProduct, mDate, feature,
-                        new TrmmClipContinuation(mProject, mProduct, mDate, feature));
+                final TrmmClipContinuation continuation =
+                    new TrmmClipContinuation(mProject, mProduct, mDate, feature);
+                if (mProject.shouldSkipClip()) {
+                    continuation.run();
+                } else {
+                    mProcessingQueue.enqueueTrmmClip(mProject, mProduct, mDate, feature,
+                            continuation);
+                }
             }
         }
     }
@@ -610,8 +637,7 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             incrementTaskGroup(CALCULATE_INDICES_GROUP_NAME, 0, 1);
 
             EnvironmentalIndex index = mProduct.equals(TrmmProduct.TRMM_3B42) ? EnvironmentalIndex.TRMM : EnvironmentalIndex.TRMM_RT;
-            mProcessingQueue.enqueueCalculateIndex(mProject, index, mDate, mFeature,
-                    new CalculateIndexContinuation(mProject, mDate, index));
+            new CalculateIndexContinuation(mProject, mDate, mFeature, index).enqueue();
         }
 
     }
@@ -634,37 +660,80 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
             incrementTaskGroup(CALCULATE_INDICES_GROUP_NAME, 0, 1);
 
             for (String feature : mProject.getShapeFiles()) {
-                mProcessingQueue.enqueueCalculateIndex(mProject, EnvironmentalIndex.ETA, mDate, feature,
-                        new CalculateIndexContinuation(mProject, mDate, EnvironmentalIndex.ETA));
+                new CalculateIndexContinuation(mProject, mDate, feature, EnvironmentalIndex.ETA)
+                .enqueue();
             }
         }
     }
 
     /**
-     * Continues index calculation with zonal statistics calculation.
+     * Continues index calculation with zonal statistics calculation once all
+     * of the indices calculated for a feature are done, so that the zonal
+     * statistics of the feature are calculated in a single batch. An index
+     * that fails counts as done, and is left out of the batch.
      */
-    private final class CalculateIndexContinuation implements Runnable {
+    private final class CalculateIndexContinuation {
         private final ProjectInfo mProject;
         private final List<EnvironmentalIndex> mIndices;
         private final DataDate mDate;
+        private final String mFeature;
+        private final List<EnvironmentalIndex> mCalculated = new ArrayList<EnvironmentalIndex>();
+        private int mRemaining;
 
-        public CalculateIndexContinuation(ProjectInfo project, DataDate date,
-                EnvironmentalIndex... indices) { // FIXME: no reason to have indices as a list!
+        public CalculateIndexContinuation(ProjectInfo project, DataDate date, String feature,
+                EnvironmentalIndex... indices) {
             mProject = project;
             mIndices = Collections.unmodifiableList(new ArrayList<EnvironmentalIndex>(
                     Arrays.asList(indices)));
             mDate = date;
+            mFeature = feature;
+            mRemaining = indices.length;
+        }
+
+        /**
+         * Enqueues the calculation of each index.
+         */
+        public void enqueue() {
+            for (final EnvironmentalIndex index : mIndices) {
+                mProcessingQueue.enqueueCalculateIndex(mProject, index, mDate, mFeature,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                finished(index, true);
+                            }
+                        },
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                finished(index, false);
+                            }
+                        });
+            }
         }
 
-        @Override
-        public void run() {
+        private void finished(EnvironmentalIndex index, boolean calculated) {
             incrementTaskGroup(CALCULATE_INDICES_GROUP_NAME, 1, 0);
-            incrementTaskGroup(CALCULATE_ZONAL_STATS_GROUP_NAME, 0, mIndices.size());
 
-            for (EnvironmentalIndex index : mIndices) {
-                mProcessingQueue.enqueueCalculateZonalStatistics(mProject, index, mDate,
-                        new CalculateZonalStatisticsContinuation(mProject, index, mDate));
+            final List<EnvironmentalIndex> indices;
+            synchronized (this) {
+                if (calculated) {
+                    mCalculated.add(index);
+                }
+                if (--mRemaining > 0) {
+                    return;
+                }
+                indices = Collections.unmodifiableList(
+                        new ArrayList<EnvironmentalIndex>(mCalculated));
+            }
+
+            if (indices.isEmpty()) {
+                return;
             }
+
+            incrementTaskGroup(CALCULATE_ZONAL_STATS_GROUP_NAME, 0, 1);
+
+            mProcessingQueue.enqueueCalculateZonalStatistics(mProject, mDate, mFeature, indices,
+                    new CalculateZonalStatisticsContinuation(mProject, mDate, mFeature, indices));
         }
     }
 
@@ -673,23 +742,27 @@ public final class LocalScheduler implements Scheduler, SchedulerFeedback {
      */
     private final class CalculateZonalStatisticsContinuation implements Runnable {
         private final ProjectInfo mProject;
-        private final EnvironmentalIndex mIndex;
         private final DataDate mDate;
+        private final String mFeature;
+        private final List<EnvironmentalIndex> mIndices;
 
-        public CalculateZonalStatisticsContinuation(ProjectInfo project, EnvironmentalIndex index,
-                DataDate date) {
+        public CalculateZonalStatisticsContinuation(ProjectInfo project, DataDate date,
+                String feature, List<EnvironmentalIndex> indices) {
             mProject = project;
-            mIndex = index;
             mDate = date;
+            mFeature = feature;
+            mIndices = indices;
         }
 
         @Override
         public void run() {
             incrementTaskGroup(CALCULATE_ZONAL_STATS_GROUP_NAME, 1, 0);
-            incrementTaskGroup(UPLOAD_RESULTS_GROUP_NAME, 0, 1);
+            incrementTaskGroup(UPLOAD_RESULTS_GROUP_NAME, 0, mIndices.size());
 
-            mProcessingQueue.enqueueUploadResults(mProject, mIndex, mDate,
-                    new UploadResultsContinuation());
+            for (EnvironmentalIndex index : mIndices) {
+                mProcessingQueue.enqueueUploadResults(mProject, index, mDate, mFeature,
+                        new UploadResultsContinuation());
+            }
         }
     }
 
@@ -1,6 +1,7 @@
 package edu.sdstate.eastweb.prototype.scheduler;
 
 import java.io.IOException;
+import java.util.List;
 
 import edu.sdstate.eastweb.prototype.*;
 import edu.sdstate.eastweb.prototype.download.ModisProduct;
@@ -32,10 +33,10 @@ public final class ProcessingQueue extends BaseTaskQueue {
      * Enqueues a MODIS preparation task.
      */
     public void enqueuePrepareModis(ProjectInfo project, ModisProduct product,
-            DataDate date, Runnable continuation) {
+            DataDate date, List<ProjectInfo> sharingProjects, Runnable continuation) {
         enqueue(new RunnableTaskQueueEntry(
                 Priority.Reprojection.ordinal(),
-                new PrepareModisTask(project, product, date),
+                new PrepareModisTask(project, product, date, sharingProjects),
                 continuation
                 ));
     }
@@ -84,26 +85,28 @@ public final class ProcessingQueue extends BaseTaskQueue {
     }
 
     /**
-     * Enqueues an index calculation task.
+     * Enqueues an index calculation task. The failure continuation is called
+     * if the index could not be calculated.
      */
     public void enqueueCalculateIndex(ProjectInfo project, EnvironmentalIndex index,
-            DataDate date, String feature, Runnable continuation)
+            DataDate date, String feature, Runnable continuation, Runnable failureContinuation)
     {
         enqueue(new RunnableTaskQueueEntry(
                 Priority.IndexCalculation.ordinal(),
                 new GdalCalculateIndexTask(project, index, date, feature),
-                continuation
+                continuation,
+                failureContinuation
                 ));
     }
 
     /**
-     * Enqueues a zonal summary task.
+     * Enqueues a zonal summary task for some indices of a shapefile.
      */
-    public void enqueueCalculateZonalStatistics(ProjectInfo project, EnvironmentalIndex index,
-            DataDate date, Runnable continuation) {
+    public void enqueueCalculateZonalStatistics(ProjectInfo project, DataDate date,
+            String shapeFile, List<EnvironmentalIndex> indices, Runnable continuation) {
         enqueue(new RunnableTaskQueueEntry(
                 Priority.ZonalSummary.ordinal(),
-                new CalculateZonalStatisticsTask(project, index, date),
+                new CalculateZonalStatisticsTask(project, date, shapeFile, indices),
                 continuation
                 ));
     }
@@ -112,10 +115,10 @@ public final class ProcessingQueue extends BaseTaskQueue {
      * Enqueues a database insert task.
      */
     public void enqueueUploadResults(ProjectInfo project, EnvironmentalIndex index,
-            DataDate date, Runnable continuation) {
+            DataDate date, String shapeFile, Runnable continuation) {
         enqueue(new RunnableTaskQueueEntry(
                 Priority.DatabaseInsert.ordinal(),
-                new UploadResultsTask(project, index, date),
+                new UploadResultsTask(project, index, date, shapeFile),
                 continuation
                 ));
     }
@@ -434,7 +434,7 @@ public class SchedulerForm {
                             }
 
 
-                            Config.getInstance().saveProject(new ProjectInfo(
+                            final ProjectInfo imported = new ProjectInfo(
                                     project.getName(),
                                     project.getStartDate(),
                                     watermask,
@@ -445,7 +445,10 @@ public class SchedulerForm {
                                     project.getModisTiles(),
                                     zonalSummaries,
                                     project.shouldCalculateETa()
-                            ));
+                            );
+                            imported.setShouldCalculateQuantiles(project.shouldCalculateQuantiles());
+                            imported.setShouldSkipClip(project.shouldSkipClip());
+                            Config.getInstance().saveProject(imported);
                         } catch (Exception e2) {
                             e2.printStackTrace();
                             final MessageBox mb = new MessageBox(shell);
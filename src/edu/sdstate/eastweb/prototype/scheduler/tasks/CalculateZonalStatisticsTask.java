@@ -10,43 +10,52 @@ import edu.sdstate.eastweb.prototype.indices.IndexMetadata;
 import edu.sdstate.eastweb.prototype.scheduler.framework.RunnableTask;
 import edu.sdstate.eastweb.prototype.zonalstatistics.*;
 
+/**
+ * Calculates the zonal summaries of one shapefile for a set of indices on a
+ * date. Each index raster is read once for all of the shapefile's zone
+ * fields.
+ */
 public class CalculateZonalStatisticsTask implements RunnableTask {
     private static final long serialVersionUID = 1L;
     private final ProjectInfo mProject;
-    private final EnvironmentalIndex mIndex;
     private final DataDate mDate;
+    private final String mShapeFile;
+    private final List<EnvironmentalIndex> mIndices;
 
-    public CalculateZonalStatisticsTask(ProjectInfo project, EnvironmentalIndex index, DataDate date) {
+    public CalculateZonalStatisticsTask(ProjectInfo project, DataDate date, String shapeFile,
+            List<EnvironmentalIndex> indices) {
         mProject = project;
-        mIndex = index;
         mDate = date;
+        mShapeFile = shapeFile;
+        mIndices = Collections.unmodifiableList(new ArrayList<EnvironmentalIndex>(indices));
     }
 
-    private ZonalStatisticsMetadata makeMetadata(ZonalSummary zone) throws IOException {
-        final IndexMetadata index = IndexMetadata.fromFile(
-                DirectoryLayout.getIndexMetadata(mProject, mIndex, mDate, zone.getShapeFile())); // FIXME
+    private ZonalStatisticsMetadata makeMetadata(EnvironmentalIndex index, ZonalSummary zone)
+    throws IOException {
+        final IndexMetadata indexMetadata = IndexMetadata.fromFile(
+                DirectoryLayout.getIndexMetadata(mProject, index, mDate, zone.getShapeFile())); // FIXME
 
         final long timestamp = new Date().getTime();
 
-        return new ZonalStatisticsMetadata(index, zone.getName(), timestamp);
+        return new ZonalStatisticsMetadata(indexMetadata, zone.getName(), timestamp);
     }
 
-    private boolean getCanSkipZone(ZonalSummary zone) {
+    private boolean getCanSkipZone(EnvironmentalIndex index, ZonalSummary zone) {
         try {
             final File file = DirectoryLayout.getZonalSummaryMetadata(
-                    mProject, mIndex, mDate, zone.getName());
+                    mProject, index, mDate, zone.getName());
             return ZonalStatisticsMetadata.fromFile(file)
-            .equalsIgnoreTimestamp(makeMetadata(zone));
+            .equalsIgnoreTimestamp(makeMetadata(index, zone));
         } catch (IOException e) {
             return false;
         }
     }
 
-    private List<ZonalSummary> getNeededZonalSummaries() {
+    private List<ZonalSummary> getZonalSummaries() {
         final List<ZonalSummary> list = new ArrayList<ZonalSummary>();
 
         for (ZonalSummary zone : mProject.getZonalSummaries()) {
-            if (!getCanSkipZone(zone)) {
+            if (zone.getShapeFile().equals(mShapeFile)) {
                 list.add(zone);
             }
         }
@@ -54,50 +63,97 @@ public class CalculateZonalStatisticsTask implements RunnableTask {
         return list;
     }
 
+    /**
+     * Returns the zonal summaries that need to be calculated for each of the
+     * task's indices. An index whose raster or metadata isn't there is left
+     * out, since it hasn't finished being calculated.
+     */
+    private Map<EnvironmentalIndex, List<ZonalSummary>> getNeededZonalSummaries()
+    throws ConfigReadException {
+        final Map<EnvironmentalIndex, List<ZonalSummary>> map =
+            new EnumMap<EnvironmentalIndex, List<ZonalSummary>>(EnvironmentalIndex.class);
+
+        for (EnvironmentalIndex index : mIndices) {
+            if (!DirectoryLayout.getIndex(mProject, index, mDate, mShapeFile).exists() ||
+                    !DirectoryLayout.getIndexMetadata(mProject, index, mDate, mShapeFile).exists()) {
+                continue;
+            }
+
+            final List<ZonalSummary> list = new ArrayList<ZonalSummary>();
+            for (ZonalSummary zone : getZonalSummaries()) {
+                if (!getCanSkipZone(index, zone)) {
+                    list.add(zone);
+                }
+            }
+
+            if (!list.isEmpty()) {
+                map.put(index, list);
+            }
+        }
+
+        return map;
+    }
+
     @Override
     public boolean getCanSkip() {
-        for (ZonalSummary zone : mProject.getZonalSummaries()) {
-            if (!getCanSkipZone(zone)) {
-                return false;
-            }
+        try {
+            return getNeededZonalSummaries().isEmpty();
+        } catch (ConfigReadException e) {
+            return false;
         }
+    }
 
-        return true;
+    /**
+     * TRMM pixels are large compared to the zones, so they're weighted by the
+     * fraction of each pixel the zone covers.
+     */
+    private static boolean isCoarse(EnvironmentalIndex index) {
+        return index == EnvironmentalIndex.TRMM || index == EnvironmentalIndex.TRMM_RT;
     }
 
     @Override
     public void run() throws Exception {
-        for (ZonalSummary zone : getNeededZonalSummaries()) {
-            final File inRaster = DirectoryLayout.getIndex(mProject, mIndex, mDate, zone.getShapeFile());
-            final File inShapefile = new File(DirectoryLayout.getSettingsDirectory(mProject),
-                    zone.getShapeFile());
-            final File outTable = DirectoryLayout.getZonalSummary(
-                    mProject, mIndex, mDate, zone.getName());
-
-            FileUtils.forceMkdir(outTable.getParentFile());
-
-            GdalZonalStatistics zonalStatistics = new GdalZonalStatistics(
-                    inRaster, inShapefile, zone.getField(), outTable);
-            zonalStatistics.calculate();
+        final Map<EnvironmentalIndex, List<ZonalSummary>> needed = getNeededZonalSummaries();
+
+        final File inShapefile = new File(DirectoryLayout.getSettingsDirectory(mProject),
+                mShapeFile);
+        final GdalZonalStatisticsBatch zonalStatistics = new GdalZonalStatisticsBatch(
+                inShapefile, DirectoryLayout.getZoneIndexCacheDirectory(mProject),
+                mProject.shouldCalculateQuantiles());
+
+        for (Map.Entry<EnvironmentalIndex, List<ZonalSummary>> entry : needed.entrySet()) {
+            final File inRaster = DirectoryLayout.getIndex(mProject, entry.getKey(), mDate, mShapeFile);
+            for (ZonalSummary zone : entry.getValue()) {
+                final File outTable = DirectoryLayout.getZonalSummary(
+                        mProject, entry.getKey(), mDate, zone.getName());
+                FileUtils.forceMkdir(outTable.getParentFile());
+
+                zonalStatistics.add(inRaster, zone.getField(), outTable,
+                        isCoarse(entry.getKey()));
+            }
         }
 
+        zonalStatistics.calculate();
+
         // Write metadata files
-        for (ZonalSummary zone : getNeededZonalSummaries()) {
-            final File file = DirectoryLayout.getZonalSummaryMetadata(
-                    mProject, mIndex, mDate, zone.getName());
-            FileUtils.forceMkdir(file.getParentFile());
-            makeMetadata(zone).toFile(file);
+        for (Map.Entry<EnvironmentalIndex, List<ZonalSummary>> entry : needed.entrySet()) {
+            for (ZonalSummary zone : entry.getValue()) {
+                final File file = DirectoryLayout.getZonalSummaryMetadata(
+                        mProject, entry.getKey(), mDate, zone.getName());
+                FileUtils.forceMkdir(file.getParentFile());
+                makeMetadata(entry.getKey(), zone).toFile(file);
+            }
         }
     }
 
     @Override
     public String getName() {
         return String.format(
-                "Calculate zonal statistics: project=\"%s\", index=%s, date=%s",
+                "Calculate zonal statistics: project=\"%s\", date=%s, shapefile=%s",
                 mProject.getName(),
-                mIndex,
-                mDate.toCompactString()
+                mDate.toCompactString(),
+                mShapeFile
         );
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,29 +1,23 @@
 package edu.sdstate.eastweb.prototype.scheduler.tasks;
 
 import java.io.File;
-import java.lang.reflect.*;
 import java.io.IOException;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
-import javax.xml.parsers.ParserConfigurationException;
-
 import org.apache.commons.io.FileUtils;
-import org.xml.sax.SAXException;
 
 import edu.sdstate.eastweb.prototype.ConfigReadException;
 import edu.sdstate.eastweb.prototype.DataDate;
 import edu.sdstate.eastweb.prototype.DirectoryLayout;
-import edu.sdstate.eastweb.prototype.MetaData;
 import edu.sdstate.eastweb.prototype.ProjectInfo;
 import edu.sdstate.eastweb.prototype.download.ModisProduct;
-import edu.sdstate.eastweb.prototype.indices.IndicesFramework;
 import edu.sdstate.eastweb.prototype.indices.EnvironmentalIndex;
 import edu.sdstate.eastweb.prototype.indices.IndexCalculator;
+import edu.sdstate.eastweb.prototype.indices.IndexCalculators;
 import edu.sdstate.eastweb.prototype.indices.IndexMetadata;
 import edu.sdstate.eastweb.prototype.reprojection.EtoReprojectedMetadata;
 import edu.sdstate.eastweb.prototype.reprojection.ModisReprojectedMetadata;
@@ -101,16 +95,9 @@ public class GdalCalculateIndexTask implements RunnableTask {
         }
     }
 
-    private IndexCalculator makeCalculator() throws IOException, SQLException,
-    NoSuchFieldException, SecurityException, IllegalArgumentException,
-    IllegalAccessException, ClassNotFoundException, ParserConfigurationException, SAXException, NoSuchMethodException, InstantiationException, InvocationTargetException {
-
-        // replace mIndex with MetaData.GetInstance().IndicesMetaData when ready with schedule
-        Class<?> clazz = Class.forName("edu.sdstate.eastweb.prototype.indices." + "Gdal" + mIndex.name()  + "Calculator");
-        Constructor<?> ctor = clazz.getConstructor(ProjectInfo.class, DataDate.class, String.class, EnvironmentalIndex.class);
-        Object object = ctor.newInstance(new Object[] { mProject, mDate, new File(mFeature).getName().split("\\.")[0], mIndex });
-
-        return (IndexCalculator) object;
+    private IndexCalculator makeCalculator() throws ConfigReadException {
+        return IndexCalculators.create(mProject, mDate,
+                new File(mFeature).getName().split("\\.")[0], mIndex);
     }
 
     @Override
@@ -4,11 +4,14 @@ import java.io.*;
 import java.util.*;
 
 import org.apache.commons.io.FileUtils;
+import org.gdal.gdal.Dataset;
+
 import edu.sdstate.eastweb.prototype.*;
 import edu.sdstate.eastweb.prototype.download.TrmmDownloadMetadata;
 import edu.sdstate.eastweb.prototype.download.TrmmProduct;
 import edu.sdstate.eastweb.prototype.reprojection.*;
 import edu.sdstate.eastweb.prototype.scheduler.framework.RunnableTask;
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
 
 public class GdalProjectTrmmTask implements RunnableTask {
     /**
@@ -57,17 +60,17 @@ public class GdalProjectTrmmTask implements RunnableTask {
 
     @Override
     public void run() throws Exception {
-        File tmpFile = null;
+        final File inFile = getInputFile();
+        final File outFile = getOutputFile();
+        FileUtils.forceMkdir(outFile.getParentFile());
+
+        // Project straight from the converted grid in memory
+        final Dataset inputDS = new GdalTrmmConvert(mProduct, inFile).toDataset();
         try {
-            final File inFile = getInputFile();
-            tmpFile = new File(getOutputFile().getPath() + ".tmp");
-            final File outFile = getOutputFile();
-            FileUtils.forceMkdir(outFile.getParentFile());
-            new GdalTrmmConvert(mProduct, inFile, tmpFile).convert();
-            new TrmmProjection().project(tmpFile, mProject, outFile);
+            new TrmmProjection().project(inputDS, mProject, outFile);
         } finally {
-            if (tmpFile != null && tmpFile.exists()) {
-                FileUtils.deleteQuietly(tmpFile);
+            synchronized (GdalUtils.lockObject) {
+                inputDS.delete();
             }
         }
 
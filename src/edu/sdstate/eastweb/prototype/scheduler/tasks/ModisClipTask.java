@@ -111,7 +111,8 @@ public class ModisClipTask implements RunnableTask {
                     inputs[i],
                     new File(DirectoryLayout.getSettingsDirectory(project), feature), // FIXME
                     outputs[i],
-                    "GTiff");
+                    "GTiff",
+                    DirectoryLayout.getClipMaskCacheDirectory(project));
 
             clipper.clip();
         }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.FileUtils;
 
@@ -15,23 +16,30 @@ import edu.sdstate.eastweb.prototype.ModisTile;
 import edu.sdstate.eastweb.prototype.ProjectInfo;
 import edu.sdstate.eastweb.prototype.download.ModisDownloadMetadata;
 import edu.sdstate.eastweb.prototype.download.ModisProduct;
-import edu.sdstate.eastweb.prototype.reprojection.GdalFilterModisLst;
-import edu.sdstate.eastweb.prototype.reprojection.GdalFilterModisNbar;
-import edu.sdstate.eastweb.prototype.reprojection.GdalFilterWithWatermask;
+import edu.sdstate.eastweb.prototype.reprojection.GdalFilterModisWithWatermask;
+import edu.sdstate.eastweb.prototype.reprojection.ModisMosaicCache;
 import edu.sdstate.eastweb.prototype.reprojection.ModisReprojectedMetadata;
 import edu.sdstate.eastweb.prototype.reprojection.ModisReprojection;
 import edu.sdstate.eastweb.prototype.scheduler.framework.RunnableTask;
+import edu.sdstate.eastweb.prototype.util.ParallelUtils;
 
 @SuppressWarnings("serial")
 public class PrepareModisTask implements RunnableTask {
     private final ProjectInfo mProject;
     private final ModisProduct mProduct;
     private final DataDate mDate;
+    private final List<ProjectInfo> mSharingProjects;
 
-    public PrepareModisTask(ProjectInfo project, ModisProduct product, DataDate date) {
+    /**
+     * @param sharingProjects all projects sharing MODIS tiles with this
+     * project, whose mosaic is built once and reused; empty if none
+     */
+    public PrepareModisTask(ProjectInfo project, ModisProduct product, DataDate date,
+            List<ProjectInfo> sharingProjects) {
         mProject = project;
         mProduct = product;
         mDate = date;
+        mSharingProjects = new ArrayList<ProjectInfo>(sharingProjects);
         System.out.println("construct of prepareModisTask" +mProject.toString()+mProduct.toString()+mDate.toString());
     }
 
@@ -108,96 +116,68 @@ public class PrepareModisTask implements RunnableTask {
             // Prepare output directory
             final File outputFile = getOutputFile();
             FileUtils.forceMkdir(outputFile.getParentFile());
-            switch (mProduct){
-            case NBAR:
-
-                ModisReprojection nbarProjection=new ModisReprojection();
-
-                nbarProjection.project(getInputFiles(),
-                        mProject,
-                        new File[]{
-                    new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band1.tif"),
-                    new File(outputFile.getParent(),"projected.Nadir_Reflectance_Band2.tif"),
-                    new File(outputFile.getParent(),"projected.Nadir_Reflectance_Band3.tif"),
-                    new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band4.tif"),
-                    new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band5.tif"),
-                    new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band6.tif"),
-                    new File(outputFile.getParent(),"projected.Nadir_Reflectance_Band7.tif"),
-                },
-                getBands());
-                nbarProjection=null;
-                break;
-            case LST:
-                ModisReprojection lstProjection=new ModisReprojection();
-                lstProjection.project(
-                        getInputFiles(),
-                        mProject,
-                        new File[]
-                                {
-                            new File(outputFile.getParent(), "projected.LST_Day_1km.tif"),
-                            new File(outputFile.getParent(), "projected.LST_Night_1km.tif"),
-                                },
-                                getBands()
-                        );
-                lstProjection=null;
-                break;
-            }
-
-            System.out.println("In prepareModis, finish project, going to filter");
-
-            // Filter
+            final File[] projected;
             switch (mProduct) {
             case NBAR:
-                for (int i=1; i<=7; i++) {
-                    new GdalFilterModisNbar(
-                            new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band" + i + ".tif"),
-                            new File(outputFile.getParent(), "filtered.Nadir_Reflectance_Band" + i + ".tif")
-                            ).filter();
-                    FileUtils.deleteQuietly(new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band" + i + ".tif"));
-
-                    new GdalFilterWithWatermask(
-                            new File(outputFile.getParent(), "filtered.Nadir_Reflectance_Band" + i + ".tif"),
-                            new File(DirectoryLayout.getSettingsDirectory(mProject), mProject.getWatermask()),
-                            new File(outputFile.getParent(), "Nadir_Reflectance_Band" + i + ".tif")
-                            ).filter();
-                    FileUtils.deleteQuietly(new File(outputFile.getParent(), "filtered.Nadir_Reflectance_Band" + i + ".tif"));
-                }
+                projected = new File[] {
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band1.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band2.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band3.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band4.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band5.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band6.tif"),
+                        new File(outputFile.getParent(), "projected.Nadir_Reflectance_Band7.tif"),
+                };
                 break;
             case LST:
-                new GdalFilterModisLst(
+                projected = new File[] {
                         new File(outputFile.getParent(), "projected.LST_Day_1km.tif"),
-                        new File(outputFile.getParent(), "filtered.LST_Day_1km.tif")
-                        ).filter();
-                FileUtils.deleteQuietly(new File(outputFile.getParent(), "projected.LST_Day_1km.tif"));
-
-                new GdalFilterModisLst(
                         new File(outputFile.getParent(), "projected.LST_Night_1km.tif"),
-                        new File(outputFile.getParent(), "filtered.LST_Night_1km.tif")
-                        ).filter();
-                FileUtils.deleteQuietly(new File(outputFile.getParent(), "projected.LST_Night_1km.tif"));
-
-                new GdalFilterWithWatermask(
-                        new File(outputFile.getParent(), "filtered.LST_Day_1km.tif"),
-                        new File(DirectoryLayout.getSettingsDirectory(mProject), mProject.getWatermask()),
-                        new File(outputFile.getParent(), "LST_Day_1km.tif")
-                        ).filter();
-                FileUtils.deleteQuietly(new File(outputFile.getParent(), "filtered.LST_Day_1km.tif"));
-
-                new GdalFilterWithWatermask(
-                        new File(outputFile.getParent(), "filtered.LST_Night_1km.tif"),
-                        new File(DirectoryLayout.getSettingsDirectory(mProject), mProject.getWatermask()),
-                        new File(outputFile.getParent(), "LST_Night_1km.tif")
-                        ).filter();
-                FileUtils.deleteQuietly(new File(outputFile.getParent(), "filtered.LST_Night_1km.tif"));
+                };
                 break;
             default:
                 throw new IllegalArgumentException();
             }
 
+            // Warp from the mosaic shared with other projects when there is one
+            final ModisMosaicCache mosaicCache =
+                    new ModisMosaicCache(mProduct, mDate, mProject, mSharingProjects);
+            final File[] mosaics = mosaicCache.getMosaics(getBands());
+
+            final ModisReprojection projection = new ModisReprojection();
+            if (mosaics != null) {
+                projection.project(mosaics, mProject, projected);
+            } else {
+                projection.project(getInputFiles(), mProject, projected, getBands());
+            }
+
+            System.out.println("In prepareModis, finish project, going to filter");
+
+            // Filter and apply the watermask, one band per worker
+            final List<Callable<Void>> filters = new ArrayList<Callable<Void>>();
+            for (final File input : projected) {
+                final File output =
+                        new File(input.getParent(), input.getName().substring("projected.".length()));
+                filters.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        new GdalFilterModisWithWatermask(mProduct, mProject, input, output).filter();
+                        FileUtils.deleteQuietly(input);
+                        return null;
+                    }
+                });
+            }
+            ParallelUtils.invokeAll(filters);
+
             // Write a metadata file
             final File metadataFile = getMetadataFile();
             FileUtils.forceMkdir(metadataFile.getParentFile());
             makeMetadata().toFile(metadataFile);
+
+            // Remove the shared mosaic once no project needs it any more
+            if (mosaics != null) {
+                mosaicCache.release();
+            }
         } catch (Exception e) {
             FileUtils.deleteDirectory(getOutputFile().getParentFile());
             throw e;
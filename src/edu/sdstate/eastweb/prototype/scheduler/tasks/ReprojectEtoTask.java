@@ -13,6 +13,7 @@ import edu.sdstate.eastweb.prototype.scheduler.framework.RunnableTask;
 /**
  * This class is a Task that composites and reprojects ETo data.
  * The composite period is the day specified and the seven days following it.
+ * The work is done once per date and grid by EtoCompositeCache.
  * 
  * @author Michael VanBemmel
  */
@@ -70,23 +71,14 @@ public class ReprojectEtoTask implements RunnableTask {
 
         final File workspace = makeWorkspace();
         try {
-            // The composite period is the day specified and the seven days following it
-            final List<File> inFiles = new ArrayList<File>();
-            //final File[] inFiles = new File[8];
-            for (int i = 0; i < 8; ++i) {
-                inFiles.add(DirectoryLayout.getEtoDownloadMainFile(mDate.next(i)));
-            }
-
             final File outFile = getOutputFile();
             FileUtils.forceMkdir(outFile.getParentFile());
             //new EtoReprojection().reprojectEto(workspace, inFiles, mProject.getProjection(), outFile);
 
-            final File compositeFile = new File(outFile.getParentFile(), "composite.tif");
-
-            new GdalCompositeEto().composite(inFiles, compositeFile);
-            new GdalProjectEto().project(compositeFile, mProject, outFile);
-
-            compositeFile.delete();
+            // The composite and its projection are shared with every project
+            // on the same grid
+            final File projectedFile = new EtoCompositeCache(mDate).getProjected(mProject);
+            FileUtils.copyFile(projectedFile, outFile);
         } finally {
             FileUtils.deleteQuietly(workspace);
         }
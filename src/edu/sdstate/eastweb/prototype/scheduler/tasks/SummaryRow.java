@@ -6,13 +6,23 @@ public class SummaryRow {
     private final double mSum;
     private final double mMean;
     private final double mStdev;
+    private final double[] mQuantiles;
 
     public SummaryRow(String fieldValue, double count, double sum, double mean, double stdev) {
+        this(fieldValue, count, sum, mean, stdev, null);
+    }
+
+    /**
+     * @param quantiles values at GdalZonalStatisticsBatch.QUANTILES, or null
+     */
+    public SummaryRow(String fieldValue, double count, double sum, double mean, double stdev,
+            double[] quantiles) {
         mFieldValue = fieldValue;
         mCount = count;
         mSum = sum;
         mMean = mean;
         mStdev = stdev;
+        mQuantiles = quantiles == null ? null : quantiles.clone();
     }
 
     public String getFieldValue() {
@@ -34,4 +44,11 @@ public class SummaryRow {
     public double getStdev() {
         return mStdev;
     }
+
+    /**
+     * Returns the quantiles, or null if the row has none.
+     */
+    public double[] getQuantiles() {
+        return mQuantiles == null ? null : mQuantiles.clone();
+    }
 }
@@ -51,7 +51,9 @@ public class TrmmClipTask implements RunnableTask {
                 input,
                 new File(DirectoryLayout.getSettingsDirectory(project), feature), // FIXME
                 output,
-                "GTiff"
+                "GTiff",
+                DirectoryLayout.getClipMaskCacheDirectory(project),
+                true // TRMM pixels partly inside the feature are weighted in the zonal statistics
         );
 
         clipper.clip();
@@ -17,11 +17,34 @@ public final class UploadResultsTask implements RunnableTask {
     private final ProjectInfo mProject;
     private final EnvironmentalIndex mIndex;
     private final DataDate mDate;
+    private final String mShapeFile;
 
     public UploadResultsTask(ProjectInfo project, EnvironmentalIndex index, DataDate date) {
+        this(project, index, date, null);
+    }
+
+    /**
+     * Uploads only the zonal summaries of the given shapefile, or all of them
+     * if it is null.
+     */
+    public UploadResultsTask(ProjectInfo project, EnvironmentalIndex index, DataDate date,
+            String shapeFile) {
         mProject = project;
         mIndex = index;
         mDate = date;
+        mShapeFile = shapeFile;
+    }
+
+    private List<ZonalSummary> getZonalSummaries() {
+        final List<ZonalSummary> list = new ArrayList<ZonalSummary>();
+
+        for (ZonalSummary zone : mProject.getZonalSummaries()) {
+            if (mShapeFile == null || zone.getShapeFile().equals(mShapeFile)) {
+                list.add(zone);
+            }
+        }
+
+        return list;
     }
 
     private ResultsUploadMetadata makeMetadata(ZonalSummary zonalSummary) throws IOException {
@@ -46,7 +69,7 @@ public final class UploadResultsTask implements RunnableTask {
 
     @Override
     public boolean getCanSkip() {
-        for (ZonalSummary zone : mProject.getZonalSummaries()) {
+        for (ZonalSummary zone : getZonalSummaries()) {
             if (!getCanSkipZone(zone)) {
                 return false;
             }
@@ -58,7 +81,7 @@ public final class UploadResultsTask implements RunnableTask {
     private List<ZonalSummary> getNeededZones() {
         final List<ZonalSummary> list = new ArrayList<ZonalSummary>();
 
-        for (ZonalSummary zone : mProject.getZonalSummaries()) {
+        for (ZonalSummary zone : getZonalSummaries()) {
             if (!getCanSkipZone(zone)) {
                 list.add(zone);
             }
@@ -99,24 +122,44 @@ public final class UploadResultsTask implements RunnableTask {
 
                 // FIXME: hacked in
                 List<SummaryRow> rows = new ArrayList<SummaryRow>();
+                boolean hasQuantiles = false;
                 BufferedReader reader = new BufferedReader(new FileReader(DirectoryLayout.getZonalSummary(mProject, mIndex, mDate, zone.getName())));
                 String line;
                 while ((line = reader.readLine()) != null) {
                     String[] values = line.split("[,]");
 
+                    // Quantiles, if any, follow zone, count, sum, mean, stdev, min and max
+                    double[] quantiles = null;
+                    if (values.length == 7 + GdalZonalStatisticsBatch.QUANTILES.length) {
+                        quantiles = new double[GdalZonalStatisticsBatch.QUANTILES.length];
+                        for (int i = 0; i < quantiles.length; i++) {
+                            quantiles[i] = Double.parseDouble(values[7 + i]);
+                        }
+                        hasQuantiles = true;
+                    } else if (values.length != 7) {
+                        throw new IOException("Unexpected number of fields in zonal summary row: " +
+                                values.length);
+                    }
+
                     rows.add(
                             new SummaryRow(
                                     values[0],
                                     Double.parseDouble(values[1]),
                                     Double.parseDouble(values[2]),
                                     Double.parseDouble(values[3]),
-                                    Double.parseDouble(values[4])
+                                    Double.parseDouble(values[4]),
+                                    quantiles
                                     )
                             );
                 }
 
+                final DatabaseManagerOld manager = new DatabaseManagerOld(conn, mProject);
+                if (hasQuantiles) {
+                    manager.addMissingQuantileColumns();
+                }
+
                 for (SummaryRow row : rows) {
-                    new DatabaseManagerOld(conn, mProject).testInsertRow(
+                    manager.testInsertRow(
                             zone.getShapeFile(),
                             zone.getField(),
                             row.getFieldValue(),
@@ -126,7 +169,8 @@ public final class UploadResultsTask implements RunnableTask {
                             row.getCount(),
                             row.getSum(),
                             row.getMean(),
-                            row.getStdev()
+                            row.getStdev(),
+                            row.getQuantiles()
                             );
                 }
             } finally {
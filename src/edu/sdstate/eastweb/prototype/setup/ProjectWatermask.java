@@ -1,5 +1,155 @@
 package edu.sdstate.eastweb.prototype.setup;
 
-public class ProjectWatermask {
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
+import edu.sdstate.eastweb.prototype.util.Signature;
+
+/**
+ * The project watermask resampled onto the project's output grid, stored as a
+ * bit per pixel. A set bit means the pixel is kept; a clear bit means the
+ * watermask value is zero there and the pixel is filtered out. Pixels outside
+ * the watermask extent are kept.
+ *
+ * The bits are computed once per project and grid and kept in a memory-mapped
+ * file under the project's cache directory, one file per grid, so filtering a
+ * band is a bit lookup per pixel instead of a watermask read.
+ */
+public final class ProjectWatermask {
+    private static final Map<File, MappedBitSet> sMasks = new HashMap<File, MappedBitSet>();
+    private static final Map<File, Long> sSignatures = new HashMap<File, Long>();
+
+    private ProjectWatermask() {
+    }
+
+    /**
+     * Returns the watermask of the project on the grid of the given dataset,
+     * computing and caching it if needed.
+     */
+    public static MappedBitSet get(ProjectInfo project, Dataset grid)
+            throws IOException, ConfigReadException {
+        final File watermask =
+                new File(DirectoryLayout.getSettingsDirectory(project), project.getWatermask());
+        final double[] transform;
+        final int width;
+        final int height;
+        final String projection;
+        synchronized (GdalUtils.lockObject) {
+            transform = grid.GetGeoTransform();
+            width = grid.GetRasterXSize();
+            height = grid.GetRasterYSize();
+            projection = grid.GetProjection();
+        }
+
+        // The file is named after the grid, so grids don't evict each other;
+        // its signature covers the watermask as well
+        final long gridSignature = new Signature()
+        .add(transform)
+        .add(width)
+        .add(height)
+        .add(projection)
+        .get();
+        final File cacheFile = DirectoryLayout.getProjectWatermaskCache(project,
+                String.format("%016x", gridSignature));
+        final long signature = new Signature()
+        .add(watermask)
+        .add(gridSignature)
+        .get();
+
+        synchronized (sMasks) {
+            final Long cachedSignature = sSignatures.get(cacheFile);
+            if (cachedSignature != null && cachedSignature == signature) {
+                return sMasks.get(cacheFile);
+            }
+
+            MappedBitSet mask = MappedBitSet.open(cacheFile, signature);
+            if (mask == null) {
+                mask = MappedBitSet.write(cacheFile, signature,
+                        resample(watermask, transform, width, height, projection));
+            }
+
+            sMasks.put(cacheFile, mask);
+            sSignatures.put(cacheFile, signature);
+            return mask;
+        }
+    }
+
+    /**
+     * Warps the watermask onto the grid with nearest neighbour resampling.
+     * The grid is first filled with 1 so pixels the watermask doesn't cover
+     * are kept. The watermask is read without its no-data value, if it has
+     * one, so that a no-data value of 0 still masks those pixels.
+     */
+    private static MappedBitSet.Builder resample(File watermask, double[] transform,
+            int width, int height, String projection) throws IOException {
+        final MappedBitSet.Builder builder = new MappedBitSet.Builder(width, height);
+
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final Dataset sourceDS = gdal.Open(watermask.getPath());
+            if (sourceDS == null) {
+                throw new IOException("Could not open " + watermask);
+            }
+            final Dataset watermaskDS;
+            try {
+                watermaskDS = gdal.Open(makeVrt(watermask, sourceDS));
+            } finally {
+                sourceDS.delete();
+            }
+            if (watermaskDS == null) {
+                throw new IOException("Could not open " + watermask);
+            }
+
+            final Dataset gridDS = gdal.GetDriverByName("MEM").Create("", width, height, 1,
+                    gdalconst.GDT_Float32);
+            try {
+                gridDS.SetGeoTransform(transform);
+                gridDS.SetProjection(projection);
+                gridDS.GetRasterBand(1).Fill(1);
+                gdal.ReprojectImage(watermaskDS, gridDS, null, null,
+                        gdalconst.GRA_NearestNeighbour);
+                GdalUtils.errorCheck();
+
+                final float[] row = new float[width];
+                for (int y = 0; y < height; y++) {
+                    gridDS.GetRasterBand(1).ReadRaster(0, y, width, 1, row);
+                    for (int x = 0; x < width; x++) {
+                        if (row[x] != 0) {
+                            builder.set(x, y);
+                        }
+                    }
+                }
+            } finally {
+                gridDS.delete();
+                watermaskDS.delete();
+            }
+        }
+
+        return builder;
+    }
+
+    /**
+     * Describes the watermask's first band as a virtual dataset with no
+     * no-data value.
+     */
+    private static String makeVrt(File watermask, Dataset watermaskDS) {
+        final int width = watermaskDS.GetRasterXSize();
+        final int height = watermaskDS.GetRasterYSize();
+        return GdalUtils.makeVrt(width, height, watermaskDS.GetProjection(),
+                watermaskDS.GetGeoTransform(), null,
+                new String[] { watermask.getAbsolutePath() },
+                new int[][] { { 0, 0, width, height } });
+    }
 }
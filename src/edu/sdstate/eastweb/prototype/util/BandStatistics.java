@@ -0,0 +1,103 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import org.gdal.gdal.Band;
+
+/**
+ * Accumulates the statistics GDAL stores for a band (minimum, maximum, mean
+ * and population standard deviation) while the band is being written, so the
+ * band doesn't have to be read again by ComputeStatistics. The mean and
+ * variance are updated with Welford's method.
+ */
+public final class BandStatistics {
+    private long mCount = 0;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+    private double mMean = 0;
+    private double mM2 = 0;
+
+    public BandStatistics() {
+    }
+
+    public void add(double value) {
+        mCount++;
+        if (value < mMin) {
+            mMin = value;
+        }
+        if (value > mMax) {
+            mMax = value;
+        }
+        final double delta = value - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (value - mMean);
+    }
+
+    /**
+     * Adds every value of the array except those equal to noData.
+     */
+    public void addAll(double[] values, int offset, int length, double noData) {
+        for (int i = offset; i < offset + length; i++) {
+            if (values[i] != noData) {
+                add(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds the values accumulated by another instance.
+     */
+    public void merge(BandStatistics other) {
+        if (other.mCount == 0) {
+            return;
+        }
+        if (mCount == 0) {
+            mCount = other.mCount;
+            mMin = other.mMin;
+            mMax = other.mMax;
+            mMean = other.mMean;
+            mM2 = other.mM2;
+            return;
+        }
+
+        final long count = mCount + other.mCount;
+        final double delta = other.mMean - mMean;
+        mMean += delta * other.mCount / count;
+        mM2 += other.mM2 + delta * delta * mCount * other.mCount / count;
+        mCount = count;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getMin() {
+        return mMin;
+    }
+
+    public double getMax() {
+        return mMax;
+    }
+
+    public double getMean() {
+        return mMean;
+    }
+
+    public double getStdDev() {
+        return mCount == 0 ? 0 : Math.sqrt(mM2 / mCount);
+    }
+
+    /**
+     * Stores the statistics in the band, as ComputeStatistics would. Nothing
+     * is stored if no value was accumulated.
+     */
+    public void apply(Band band) {
+        if (mCount == 0) {
+            return;
+        }
+
+        synchronized (GdalUtils.lockObject) {
+            band.SetStatistics(mMin, mMax, mMean, getStdDev());
+        }
+    }
+}
@@ -1,18 +1,14 @@
 package edu.sdstate.eastweb.prototype.util;
 
 import java.io.IOException;
+import java.util.Locale;
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
-import org.gdal.ogr.DataSource;
 import org.gdal.ogr.ogr;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import edu.sdstate.eastweb.prototype.ConfigReadException;
-import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.Config;
 import edu.sdstate.eastweb.prototype.ProjectInfo;
-import edu.sdstate.eastweb.prototype.Projection.ResamplingType;
 
 public class GdalUtils {
     private GdalUtils() {
@@ -77,6 +73,57 @@ public class GdalUtils {
         }
     }
 
+    /**
+     * Builds the XML of a single-band Float32 virtual (VRT) dataset, which
+     * gdal.Open accepts in place of a file name. Each source is the first band
+     * of a dataset, copied whole into the window of the VRT given for it. The
+     * numbers are written in the root locale, since GDAL parses them in the C
+     * locale.
+     *
+     * @param noData the no-data value of the VRT, or null for none
+     * @param sources names of the source datasets
+     * @param windows x offset, y offset, width and height of each source
+     */
+    public static String makeVrt(int xSize, int ySize, String projection, double[] transform,
+            Double noData, String[] sources, int[][] windows) {
+        assert (sources.length == windows.length);
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "<VRTDataset rasterXSize=\"%d\" rasterYSize=\"%d\">",
+                xSize, ySize));
+        builder.append("<SRS>").append(escape(projection)).append("</SRS>");
+        builder.append(String.format(Locale.ROOT, "<GeoTransform>%.17g,%.17g,%.17g,%.17g,%.17g,%.17g</GeoTransform>",
+                transform[0], transform[1], transform[2],
+                transform[3], transform[4], transform[5]));
+        builder.append("<VRTRasterBand dataType=\"Float32\" band=\"1\">");
+        if (noData != null) {
+            builder.append("<NoDataValue>").append(noData.doubleValue()).append("</NoDataValue>");
+        }
+        for (int i = 0; i < sources.length; i++) {
+            final int[] window = windows[i];
+            builder.append("<SimpleSource>");
+            builder.append("<SourceFilename relativeToVRT=\"0\">")
+            .append(escape(sources[i]))
+            .append("</SourceFilename>");
+            builder.append("<SourceBand>1</SourceBand>");
+            builder.append(String.format(Locale.ROOT, "<SrcRect xOff=\"0\" yOff=\"0\" xSize=\"%d\" ySize=\"%d\"/>",
+                    window[2], window[3]));
+            builder.append(String.format(Locale.ROOT, "<DstRect xOff=\"%d\" yOff=\"%d\" xSize=\"%d\" ySize=\"%d\"/>",
+                    window[0], window[1], window[2], window[3]));
+            builder.append("</SimpleSource>");
+        }
+        builder.append("</VRTRasterBand>");
+        builder.append("</VRTDataset>");
+        return builder.toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;")
+        .replace("<", "&lt;")
+        .replace(">", "&gt;")
+        .replace("\"", "&quot;");
+    }
+
     /**
      * Do the projection for input file, and write the processed data into
      * output file
@@ -92,87 +139,81 @@ public class GdalUtils {
      *            output file.
      * @param resampleAlg
      *            the type of resampling to use, among gdalconst.GRA_
-     * @throws ConfigReadException
+     * @throws Exception
      *             *
      **/
     public static void project(String wkt, File input, ProjectInfo project,
-            File output) throws ConfigReadException {
-        assert (project.getShapeFiles().size() > 0);
+            File output) throws Exception {
+        project(wkt, input, project, output, project.getProjection().getPixelSize());
+    }
 
+    /**
+     * Do the projection for input file at the given pixel size rather than
+     * the project's, e.g. to keep a coarse input at its native resolution.
+     */
+    public static void project(String wkt, File input, ProjectInfo project,
+            File output, double pixelSize) throws Exception {
         GdalUtils.register();
 
+        final Dataset inputDS;
         synchronized (GdalUtils.lockObject) {
-            // Load input file and features
-            Dataset inputDS = gdal.Open(input.getPath());
-            // System.out.println(inputDS.GetProjectionRef().toString());
-            // SpatialReference inputRef = new SpatialReference();
-            List<DataSource> features = new ArrayList<DataSource>();
-            for (String filename : project.getShapeFiles()) {
-                features.add(ogr.Open(new File(DirectoryLayout
-                        .getSettingsDirectory(project), filename).getPath()));
+            inputDS = gdal.Open(input.getPath());
+            errorCheck();
+        }
+        try {
+            project(inputDS, project, output, pixelSize);
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                inputDS.delete();
             }
+        }
+    }
+
+    /**
+     * Do the projection for an already opened input dataset (e.g. a virtual
+     * mosaic), and write the processed data into output file. The input
+     * dataset is left open. If the input band has a no-data value, the output
+     * is initialized with it so that areas without source data stay no-data.
+     *
+     * @param inputDS
+     *            input dataset
+     * @param project
+     *            store the shape file and project information
+     * @param output
+     *            output file.
+     * @throws Exception
+     */
+    public static void project(Dataset inputDS, ProjectInfo project,
+            File output) throws Exception {
+        project(inputDS, project, output, project.getProjection().getPixelSize());
+    }
+
+    /**
+     * Do the projection for an already opened input dataset at the given
+     * pixel size, in the units of the output projection. The warp runs on
+     * several threads unless the caller holds the GDAL lock.
+     */
+    public static void project(Dataset inputDS, ProjectInfo project,
+            File output, double pixelSize) throws Exception {
+        GdalUtils.register();
 
-            // Find union of extents
-            double[] extent = features.get(0).GetLayer(0).GetExtent(); // Ordered:
-            // left,
-            // right,
-            // bottom,
-            // top
-            // System.out.println(Arrays.toString(extent));
-            double left = extent[0];
-            double right = extent[1];
-            double bottom = extent[2];
-            double top = extent[3];
-            for (int i = 1; i < features.size(); i++) {
-                extent = features.get(i).GetLayer(0).GetExtent();
-                if (extent[0] < left) {
-                    left = extent[0];
-                } else if (extent[1] > right) {
-                    right = extent[1];
-                } else if (extent[2] < bottom) {
-                    bottom = extent[2];
-                } else if (extent[3] > top) {
-                    top = extent[3];
+        final RasterGrid grid = ProjectGrids.get(project, pixelSize);
+        final Dataset outputDS = grid.create(output, gdalconst.GDT_Float32);
+        try {
+            synchronized (GdalUtils.lockObject) {
+                Double[] noData = new Double[1];
+                inputDS.GetRasterBand(1).GetNoDataValue(noData);
+                if (noData[0] != null) {
+                    outputDS.GetRasterBand(1).SetNoDataValue(noData[0]);
                 }
             }
 
-            // Project to union of extents
-            Dataset outputDS =
-                    gdal.GetDriverByName("GTiff").Create(
-                            output.getPath(),
-                            (int) Math.ceil((right - left)
-                                    / project.getProjection().getPixelSize()),
-                                    (int) Math.ceil((top - bottom)
-                                            / project.getProjection().getPixelSize()),
-                                            1, gdalconst.GDT_Float32);
-
-            // TODO: get projection from project info, and get transform from
-            // shape file
-            // SpatialReference outputRef = new SpatialReference();
-            // outputRef.ImportFromWkt(wkt);
-            String outputProjection =
-                    features.get(0).GetLayer(0).GetSpatialRef().ExportToWkt();
-            outputDS.SetProjection(outputProjection);
-            outputDS.SetGeoTransform(new double[] { left,
-                    project.getProjection().getPixelSize(), 0, top, 0,
-                    -project.getProjection().getPixelSize() });
-
-            // get resample argument
-            int resampleAlg = -1;
-            ResamplingType resample =
-                    project.getProjection().getResamplingType();
-            switch (resample) {
-            case NEAREST_NEIGHBOR:
-                resampleAlg = gdalconst.GRA_NearestNeighbour;
-            case BILINEAR:
-                resampleAlg = gdalconst.GRA_Bilinear;
-            case CUBIC_CONVOLUTION:
-                resampleAlg = gdalconst.GRA_CubicSpline;
+            GdalWarper.warp(inputDS, outputDS, project.getProjection().getResamplingType(),
+                    Config.getInstance().getWarpMemory());
+        } finally {
+            synchronized (GdalUtils.lockObject) {
+                outputDS.delete();
             }
-            gdal.ReprojectImage(inputDS, outputDS, null, null, resampleAlg);
-            outputDS.GetRasterBand(1).ComputeStatistics(false);
-            outputDS.delete();
-            inputDS.delete();
         }
     }
 }
@@ -0,0 +1,133 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+
+import edu.sdstate.eastweb.prototype.Projection.ResamplingType;
+
+/**
+ * Warps a single-band raster onto the grid of another. The target is split
+ * into one band of rows per thread, and each band is warped a strip at a
+ * time: the source window a strip needs is read under the GDAL lock, then
+ * resampled in Java along the cached WarpPlan while other threads read and
+ * write. Strips are sized so that all threads together stay within the warp
+ * memory. The statistics of the target are gathered while it is written.
+ */
+public final class GdalWarper {
+    private GdalWarper() {
+    }
+
+    /**
+     * Warps the source band into the target band. Target pixels without
+     * source data get the target's no-data value, or 0 if it has none.
+     *
+     * @param warpMemory approximate number of bytes of pixels held at once
+     */
+    public static void warp(final Dataset sourceDS, final Dataset targetDS,
+            ResamplingType resampling, long warpMemory) throws Exception {
+        final Resampler resampler = Resampler.forType(resampling);
+        final RasterGrid sourceGrid = RasterGrid.of(sourceDS);
+        final RasterGrid targetGrid = RasterGrid.of(targetDS);
+        final WarpPlan plan = WarpPlan.get(sourceGrid, targetGrid);
+
+        final Band sourceBand;
+        final Band targetBand;
+        final double SOURCE_NO_DATA;
+        final double TARGET_NO_DATA;
+        synchronized (GdalUtils.lockObject) {
+            sourceBand = sourceDS.GetRasterBand(1);
+            targetBand = targetDS.GetRasterBand(1);
+
+            Double[] noData = new Double[1];
+            sourceBand.GetNoDataValue(noData);
+            SOURCE_NO_DATA = noData[0] == null ? Double.NaN : noData[0];
+            targetBand.GetNoDataValue(noData);
+            TARGET_NO_DATA = noData[0] == null ? Double.NaN : noData[0];
+        }
+
+        final int WIDTH = targetGrid.getWidth();
+        final int HEIGHT = targetGrid.getHeight();
+        final int SOURCE_WIDTH = sourceGrid.getWidth();
+        final int SOURCE_HEIGHT = sourceGrid.getHeight();
+        final double FILL = Double.isNaN(TARGET_NO_DATA) ? 0 : TARGET_NO_DATA;
+
+        // Workers can't read while the caller holds the lock
+        final int partitions = Thread.holdsLock(GdalUtils.lockObject) ? 1 :
+            Math.max(1, Math.min(ParallelUtils.getThreadCount(), HEIGHT));
+
+        // A strip's source window is assumed to be about as large as the strip
+        final long bytesPerRow = 2L * 8 * WIDTH;
+        final int STRIP_ROWS = (int) Math.max(1, Math.min((HEIGHT + partitions - 1) / partitions,
+                warpMemory / partitions / bytesPerRow));
+
+        List<Callable<BandStatistics>> tasks = new ArrayList<Callable<BandStatistics>>();
+        for (int p=0; p<partitions; p++) {
+            final int top = (int) ((long) HEIGHT * p / partitions);
+            final int bottom = (int) ((long) HEIGHT * (p + 1) / partitions);
+            tasks.add(new Callable<BandStatistics>() {
+                @Override
+                public BandStatistics call() throws Exception {
+                    BandStatistics statistics = new BandStatistics();
+                    double[] xs = new double[WIDTH];
+                    double[] ys = new double[WIDTH];
+                    double[] strip = new double[WIDTH * STRIP_ROWS];
+                    double[] window = new double[0];
+
+                    for (int y=top; y<bottom; y+=STRIP_ROWS) {
+                        final int rows = Math.min(STRIP_ROWS, bottom - y);
+                        Arrays.fill(strip, 0, WIDTH * rows, FILL);
+
+                        int[] bounds = plan.getSourceWindow(y, y + rows, resampler.getRadius());
+                        if (bounds != null) {
+                            final int left = bounds[0];
+                            final int up = bounds[1];
+                            final int windowWidth = bounds[2] - left;
+                            final int windowHeight = bounds[3] - up;
+                            if (window.length < windowWidth * windowHeight) {
+                                window = new double[windowWidth * windowHeight];
+                            }
+                            synchronized (GdalUtils.lockObject) {
+                                sourceBand.ReadRaster(left, up, windowWidth, windowHeight, window);
+                                GdalUtils.errorCheck();
+                            }
+
+                            for (int row=0; row<rows; row++) {
+                                plan.getRow(y + row, xs, ys);
+                                for (int x=0; x<WIDTH; x++) {
+                                    // Outside the source, or no position known
+                                    if (!(xs[x] >= 0 && xs[x] < SOURCE_WIDTH
+                                            && ys[x] >= 0 && ys[x] < SOURCE_HEIGHT)) {
+                                        continue;
+                                    }
+                                    double value = resampler.sample(window, windowWidth, windowHeight,
+                                            xs[x] - left, ys[x] - up, SOURCE_NO_DATA);
+                                    if (!Double.isNaN(value)) {
+                                        strip[row * WIDTH + x] = value;
+                                    }
+                                }
+                            }
+                        }
+
+                        synchronized (GdalUtils.lockObject) {
+                            targetBand.WriteRaster(0, y, WIDTH, rows, strip); GdalUtils.errorCheck();
+                        }
+                        statistics.addAll(strip, 0, WIDTH * rows, TARGET_NO_DATA);
+                    }
+
+                    return statistics;
+                }
+            });
+        }
+
+        BandStatistics statistics = new BandStatistics();
+        for (BandStatistics partial : ParallelUtils.invokeAll(tasks)) {
+            statistics.merge(partial);
+        }
+        statistics.apply(targetBand);
+    }
+}
@@ -0,0 +1,232 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A read-only raster of bits backed by a memory-mapped file, used for masks
+ * that are computed once and then looked up for every pixel of every date.
+ * Bit (x, y) is bit (y * width + x) of the file's data words.
+ *
+ * The file starts with a header holding a magic number, a caller-defined
+ * signature, the width and the height. The signature identifies what the
+ * bits were computed from (source file, grid, ...), so a stale file is
+ * detected on open.
+ */
+public final class MappedBitSet {
+    private static final long MAGIC = 0x4541535457454221L;
+    private static final int HEADER_LONGS = 3;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final LongBuffer mWords;
+
+    private MappedBitSet(int width, int height, LongBuffer words) {
+        mWidth = width;
+        mHeight = height;
+        mWords = words;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public boolean get(int x, int y) {
+        return get(y * mWidth + x);
+    }
+
+    public boolean get(int index) {
+        return ((mWords.get(index >>> 6) >>> (index & 63)) & 1) != 0;
+    }
+
+    /**
+     * Returns the index of the first set bit at or after the given index, or
+     * -1 if there is none.
+     */
+    public int nextSetBit(int from) {
+        final int size = mWidth * mHeight;
+        if (from >= size) {
+            return -1;
+        }
+
+        int wordIndex = from >>> 6;
+        long word = mWords.get(wordIndex) & (-1L << (from & 63));
+        while (word == 0) {
+            if (++wordIndex == mWords.limit()) {
+                return -1;
+            }
+            word = mWords.get(wordIndex);
+        }
+
+        final int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        return index < size ? index : -1;
+    }
+
+    /**
+     * Returns the index of the first clear bit at or after the given index,
+     * or the number of bits if there is none.
+     */
+    public int nextClearBit(int from) {
+        final int size = mWidth * mHeight;
+        if (from >= size) {
+            return size;
+        }
+
+        int wordIndex = from >>> 6;
+        long word = ~mWords.get(wordIndex) & (-1L << (from & 63));
+        while (word == 0) {
+            if (++wordIndex == mWords.limit()) {
+                return size;
+            }
+            word = ~mWords.get(wordIndex);
+        }
+
+        return Math.min(size, (wordIndex << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    /**
+     * Returns the number of set bits.
+     */
+    public long cardinality() {
+        long count = 0;
+        for (int i = 0; i < mWords.limit(); i++) {
+            count += Long.bitCount(mWords.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Maps an existing bit set file, or returns null if the file doesn't
+     * exist or was written with a different signature.
+     */
+    public static MappedBitSet open(File file, long signature) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_LONGS * 8) {
+                return null;
+            }
+
+            // Check the header before mapping, since on Windows a mapped file
+            // can't be replaced until the mapping is garbage collected
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LONGS * 8);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return null;
+                }
+            }
+            if (header.getLong(0) != MAGIC || header.getLong(8) != signature) {
+                return null;
+            }
+
+            final LongBuffer all = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .asLongBuffer();
+
+            final int width = (int) (all.get(2) >>> 32);
+            final int height = (int) all.get(2);
+            final int words = getWordCount(width, height);
+            if (all.limit() != HEADER_LONGS + words) {
+                return null;
+            }
+
+            all.position(HEADER_LONGS);
+            return new MappedBitSet(width, height, all.slice());
+        } finally {
+            raf.close(); // The mapping stays valid after the file is closed
+        }
+    }
+
+    /**
+     * Writes the bits collected by a builder and maps the written file.
+     */
+    public static MappedBitSet write(File file, long signature, Builder builder)
+            throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+
+        // Write to a temporary file first so a reader never maps a partial
+        // file. The file is not mapped while writing, since on Windows a
+        // mapped file can't be renamed.
+        final File temp = new File(file.getPath() + ".tmp");
+        final ByteBuffer buffer =
+                ByteBuffer.allocate((HEADER_LONGS + builder.mWords.length) * 8);
+        final LongBuffer longs = buffer.asLongBuffer();
+        longs.put(MAGIC);
+        longs.put(signature);
+        longs.put(((long) builder.mWidth << 32) | (builder.mHeight & 0xffffffffL));
+        longs.put(builder.mWords);
+
+        final FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            final FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            stream.close();
+        }
+
+        // On Windows a stale file can't be replaced while it is still mapped;
+        // keep the bits in memory until the next run in that case
+        FileUtils.deleteQuietly(file);
+        if (!temp.renameTo(file)) {
+            FileUtils.deleteQuietly(temp);
+            return wrap(builder);
+        }
+
+        final MappedBitSet result = open(file, signature);
+        if (result == null) {
+            throw new IOException("Could not map " + file);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a bit set held in memory rather than in a file.
+     */
+    public static MappedBitSet wrap(Builder builder) {
+        return new MappedBitSet(builder.mWidth, builder.mHeight,
+                LongBuffer.wrap(builder.mWords.clone()));
+    }
+
+    private static int getWordCount(int width, int height) {
+        return (int) (((long) width * height + 63) >>> 6);
+    }
+
+    /**
+     * Collects bits in memory before they are written.
+     */
+    public static final class Builder {
+        private final int mWidth;
+        private final int mHeight;
+        private final long[] mWords;
+
+        public Builder(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            mWords = new long[getWordCount(width, height)];
+        }
+
+        public void set(int x, int y) {
+            set(y * mWidth + x);
+        }
+
+        public void set(int index) {
+            mWords[index >>> 6] |= 1L << (index & 63);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Stores a fixed number of int arrays in one file and maps them back as
+ * read-only IntBuffers, for per-pixel lookup tables (zone rasters, pixel
+ * indices) that are computed once and scanned for every date.
+ *
+ * The file starts with a magic number, a caller-defined signature identifying
+ * what the arrays were computed from, the number of arrays and their lengths.
+ * A file with a different signature is treated as missing.
+ */
+public final class MappedIntArrays {
+    private static final long MAGIC = 0x4541535457454249L;
+    private static final int HEADER_BYTES = 20; // Magic, signature and array count
+
+    private MappedIntArrays() {
+    }
+
+    /**
+     * Maps the arrays of an existing file, or returns null if the file
+     * doesn't exist or was written with a different signature.
+     */
+    public static IntBuffer[] open(File file, long signature) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+
+            // Check the header before mapping, since on Windows a mapped file
+            // can't be replaced until the mapping is garbage collected
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    return null;
+                }
+            }
+            if (header.getLong(0) != MAGIC || header.getLong(8) != signature) {
+                return null;
+            }
+
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            final IntBuffer all = mapped.asIntBuffer();
+            final int count = all.get(4);
+            if (count < 0 || 5 + count > all.limit()) {
+                return null;
+            }
+
+            final IntBuffer[] arrays = new IntBuffer[count];
+            int position = 5 + count;
+            for (int i = 0; i < count; i++) {
+                final int length = all.get(5 + i);
+                if (length < 0 || position + length > all.limit()) {
+                    return null;
+                }
+                all.limit(position + length);
+                all.position(position);
+                arrays[i] = all.slice();
+                all.limit(all.capacity());
+                position += length;
+            }
+
+            return position == all.capacity() ? arrays : null;
+        } finally {
+            raf.close(); // The mapping stays valid after the file is closed
+        }
+    }
+
+    /**
+     * Writes the arrays to the file, replacing it. Returns false if the file
+     * couldn't be replaced, in which case the caller keeps the arrays in
+     * memory until the next run.
+     */
+    public static boolean write(File file, long signature, int[]... arrays) throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+
+        long ints = 1 + arrays.length;
+        for (int[] array : arrays) {
+            ints += array.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (16 + ints * 4));
+        buffer.putLong(MAGIC);
+        buffer.putLong(signature);
+        final IntBuffer intBuffer = buffer.asIntBuffer();
+        intBuffer.put(arrays.length);
+        for (int[] array : arrays) {
+            intBuffer.put(array.length);
+        }
+        for (int[] array : arrays) {
+            intBuffer.put(array);
+        }
+        buffer.rewind();
+
+        // Write to a temporary file first so a reader never maps a partial file
+        final File temp = new File(file.getPath() + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            final FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            stream.close();
+        }
+
+        // On Windows a stale file can't be replaced while it is still mapped
+        FileUtils.deleteQuietly(file);
+        if (!temp.renameTo(file)) {
+            FileUtils.deleteQuietly(temp);
+            return false;
+        }
+        return true;
+    }
+}
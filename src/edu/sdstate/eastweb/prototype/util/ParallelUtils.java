@@ -0,0 +1,82 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs independent pieces of a task (bands, row blocks) concurrently on a
+ * shared pool of daemon threads. GDAL calls made by the pieces must still be
+ * done while holding {@link GdalUtils#lockObject}; only the work done outside
+ * the lock actually overlaps.
+ */
+public final class ParallelUtils {
+    private ParallelUtils() {
+    }
+
+    private static final ThreadLocal<Boolean> sIsWorker = new ThreadLocal<Boolean>();
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(
+            getThreadCount(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            sIsWorker.set(Boolean.TRUE);
+                            runnable.run();
+                        }
+                    }, "ParallelUtils worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    public static int getThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs all tasks and returns their results in order. A single task, or
+     * tasks submitted from a pool thread (nested parallelism), run on the
+     * calling thread so the pool can't deadlock waiting on itself. If any
+     * task fails, its exception is rethrown after all tasks have finished.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws Exception {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.size() == 1 || sIsWorker.get() != null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        final List<Future<T>> futures = sExecutor.invokeAll(tasks);
+        Exception failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    if (e.getCause() instanceof Exception) {
+                        failure = (Exception) e.getCause();
+                    } else if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    } else {
+                        failure = e;
+                    }
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+}
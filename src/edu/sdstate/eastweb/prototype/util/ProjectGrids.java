@@ -0,0 +1,181 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gdal.ogr.DataSource;
+import org.gdal.ogr.ogr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import edu.sdstate.eastweb.prototype.ConfigReadException;
+import edu.sdstate.eastweb.prototype.DirectoryLayout;
+import edu.sdstate.eastweb.prototype.ProjectInfo;
+
+/**
+ * The grids a project's rasters are projected onto: the union of the extents
+ * of the project's shape files, in their projection, at a pixel size. Every
+ * stage takes its grid from here so that rasters line up exactly. Grids are
+ * computed once and cached in the project's settings directory, next to the
+ * shape files they are derived from, together with a signature of those
+ * files so that a changed shape file invalidates them.
+ */
+public final class ProjectGrids {
+    private static final String ROOT_ELEMENT_NAME = "ProjectGrid";
+    private static final String SIGNATURE_ATTRIBUTE_NAME = "signature";
+
+    private static final Map<Long, RasterGrid> sGrids = new HashMap<Long, RasterGrid>();
+    private static final Map<File, Object> sLocks = new HashMap<File, Object>();
+
+    private ProjectGrids() {
+    }
+
+    /**
+     * Returns the grid of the project at its own pixel size.
+     */
+    public static RasterGrid get(ProjectInfo project) throws ConfigReadException, IOException {
+        return get(project, project.getProjection().getPixelSize());
+    }
+
+    /**
+     * Returns the grid of the project at the given pixel size, in the units
+     * of the project's projection.
+     */
+    public static RasterGrid get(ProjectInfo project, double pixelSize)
+            throws ConfigReadException, IOException {
+        assert (project.getShapeFiles().size() > 0);
+
+        final Signature signature = new Signature().add(pixelSize);
+        final List<File> files = new ArrayList<File>();
+        for (String filename : project.getShapeFiles()) {
+            final File file = new File(DirectoryLayout.getSettingsDirectory(project), filename);
+            files.add(file);
+            signature.add(file);
+        }
+        final Long key = signature.get();
+
+        synchronized (sGrids) {
+            final RasterGrid grid = sGrids.get(key);
+            if (grid != null) {
+                return grid;
+            }
+        }
+
+        // Computed outside of sGrids, as callers may hold the GDAL lock
+        final File cacheFile = DirectoryLayout.getProjectGridFile(project, pixelSize);
+        RasterGrid grid = read(cacheFile, key);
+        if (grid == null) {
+            grid = compute(files, pixelSize);
+
+            // Only the write is locked, as compute takes the GDAL lock
+            synchronized (getLock(cacheFile)) {
+                if (read(cacheFile, key) == null) {
+                    write(cacheFile, key, grid);
+                }
+            }
+        }
+
+        synchronized (sGrids) {
+            sGrids.put(key, grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Returns the cached grid, or null if it is missing, unreadable or was
+     * derived from other shape files.
+     */
+    private static RasterGrid read(File file, long signature) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final Element rootElement = XmlUtils.parse(file).getDocumentElement();
+            if (!rootElement.getNodeName().equals(ROOT_ELEMENT_NAME) ||
+                    !rootElement.getAttribute(SIGNATURE_ATTRIBUTE_NAME).equals(
+                            String.format("%016x", signature))) {
+                return null;
+            }
+            return RasterGrid.fromXml(XmlUtils.getChildElement(rootElement));
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            // Malformed documents
+            return null;
+        }
+    }
+
+    private static void write(File file, long signature, RasterGrid grid) throws IOException {
+        final Document doc = XmlUtils.newDocument(ROOT_ELEMENT_NAME);
+        final Element rootElement = doc.getDocumentElement();
+        rootElement.setAttribute(SIGNATURE_ATTRIBUTE_NAME, String.format("%016x", signature));
+        rootElement.appendChild(grid.toXml(doc));
+
+        // Replace the cached grid in one step, so readers never see half of it
+        final File temp = new File(file.getPath() + ".tmp");
+        XmlUtils.transformToFile(doc, temp);
+        if (!(temp.renameTo(file) || (file.delete() && temp.renameTo(file)))) {
+            temp.delete();
+
+            // Another process may have written the same grid in the meantime
+            if (read(file, signature) == null) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+
+    private static Object getLock(File file) {
+        synchronized (sLocks) {
+            Object lock = sLocks.get(file);
+            if (lock == null) {
+                sLocks.put(file, lock = new Object());
+            }
+            return lock;
+        }
+    }
+
+    private static RasterGrid compute(List<File> files, double pixelSize) throws IOException {
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            final List<DataSource> features = new ArrayList<DataSource>();
+            try {
+                for (File file : files) {
+                    features.add(ogr.Open(file.getPath())); GdalUtils.errorCheck();
+                }
+
+                // Find union of extents, ordered: left, right, bottom, top
+                double[] extent = features.get(0).GetLayer(0).GetExtent();
+                double left = extent[0];
+                double right = extent[1];
+                double bottom = extent[2];
+                double top = extent[3];
+                for (int i = 1; i < features.size(); i++) {
+                    extent = features.get(i).GetLayer(0).GetExtent();
+                    left = Math.min(left, extent[0]);
+                    right = Math.max(right, extent[1]);
+                    bottom = Math.min(bottom, extent[2]);
+                    top = Math.max(top, extent[3]);
+                }
+
+                // FIXME: hack --should get projection from project info somehow
+                final String projection =
+                        features.get(0).GetLayer(0).GetSpatialRef().ExportToWkt();
+
+                return new RasterGrid(projection,
+                        new double[] { left, pixelSize, 0, top, 0, -pixelSize },
+                        (int) Math.ceil((right - left) / pixelSize),
+                        (int) Math.ceil((top - bottom) / pixelSize));
+            } finally {
+                for (DataSource feature : features) {
+                    feature.delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * The georeferencing and size of a raster: its projection, geotransform,
+ * width and height. Two rasters on equal grids have pixels that line up.
+ */
+public final class RasterGrid {
+    private static final String ROOT_ELEMENT_NAME = "RasterGrid";
+    private static final String PROJECTION_ATTRIBUTE_NAME = "projection";
+    private static final String TRANSFORM_ATTRIBUTE_NAME = "transform";
+    private static final String WIDTH_ATTRIBUTE_NAME = "width";
+    private static final String HEIGHT_ATTRIBUTE_NAME = "height";
+
+    private final String mProjection;
+    private final double[] mTransform;
+    private final int mWidth;
+    private final int mHeight;
+
+    public RasterGrid(String projection, double[] transform, int width, int height) {
+        mProjection = projection;
+        mTransform = transform.clone();
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Returns the grid of an open dataset.
+     */
+    public static RasterGrid of(Dataset dataset) {
+        synchronized (GdalUtils.lockObject) {
+            return new RasterGrid(dataset.GetProjectionRef(), dataset.GetGeoTransform(),
+                    dataset.GetRasterXSize(), dataset.GetRasterYSize());
+        }
+    }
+
+    /**
+     * Creates a single-band GeoTIFF on this grid. The caller must delete the
+     * returned dataset.
+     *
+     * @param dataType among gdalconst.GDT_
+     */
+    public Dataset create(File file, int dataType) throws IOException {
+        synchronized (GdalUtils.lockObject) {
+            final Dataset dataset = gdal.GetDriverByName("GTiff").Create(
+                    file.getPath(), mWidth, mHeight, 1, dataType);
+            if (dataset == null) {
+                throw new IOException("Could not create " + file);
+            }
+            dataset.SetProjection(mProjection);
+            dataset.SetGeoTransform(mTransform);
+            return dataset;
+        }
+    }
+
+    public String getProjection() {
+        return mProjection;
+    }
+
+    public double[] getGeoTransform() {
+        return mTransform.clone();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getSignature() {
+        return new Signature()
+        .add(mTransform)
+        .add(mWidth)
+        .add(mHeight)
+        .add(mProjection)
+        .get();
+    }
+
+    public Element toXml(Document doc) {
+        final StringBuilder transform = new StringBuilder();
+        for (int i = 0; i < mTransform.length; i++) {
+            if (i > 0) {
+                transform.append(' ');
+            }
+            transform.append(Double.toString(mTransform[i]));
+        }
+
+        final Element rootElement = doc.createElement(ROOT_ELEMENT_NAME);
+        rootElement.setAttribute(PROJECTION_ATTRIBUTE_NAME, mProjection);
+        rootElement.setAttribute(TRANSFORM_ATTRIBUTE_NAME, transform.toString());
+        rootElement.setAttribute(WIDTH_ATTRIBUTE_NAME, Integer.toString(mWidth));
+        rootElement.setAttribute(HEIGHT_ATTRIBUTE_NAME, Integer.toString(mHeight));
+        return rootElement;
+    }
+
+    public static RasterGrid fromXml(Element rootElement) throws IOException {
+        if (!rootElement.getNodeName().equals(ROOT_ELEMENT_NAME)) {
+            throw new IOException("Unexpected root element name");
+        }
+
+        try {
+            final String[] parts = rootElement.getAttribute(TRANSFORM_ATTRIBUTE_NAME).trim().split(" +");
+            final double[] transform = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                transform[i] = Double.parseDouble(parts[i]);
+            }
+
+            return new RasterGrid(
+                    rootElement.getAttribute(PROJECTION_ATTRIBUTE_NAME),
+                    transform,
+                    Integer.parseInt(rootElement.getAttribute(WIDTH_ATTRIBUTE_NAME)),
+                    Integer.parseInt(rootElement.getAttribute(HEIGHT_ATTRIBUTE_NAME)));
+        } catch (NumberFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RasterGrid)) {
+            return false;
+        }
+        final RasterGrid other = (RasterGrid) obj;
+        return mWidth == other.mWidth && mHeight == other.mHeight
+        && Arrays.equals(mTransform, other.mTransform)
+        && mProjection.equals(other.mProjection);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (getSignature() ^ (getSignature() >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d %s", mWidth, mHeight, Arrays.toString(mTransform));
+    }
+}
@@ -0,0 +1,149 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import edu.sdstate.eastweb.prototype.Projection.ResamplingType;
+
+/**
+ * Interpolates a value of a window of source pixels at a fractional position.
+ * Positions are in pixel coordinates of the window, so the center of pixel
+ * (i, j) is at (i + 0.5, j + 0.5). Neighbours beyond the window's edges are
+ * clamped to it, and no-data neighbours are left out with the weights of the
+ * others renormalized.
+ */
+public abstract class Resampler {
+    /**
+     * Takes the pixel the position falls in.
+     */
+    public static final Resampler NEAREST = new Resampler(0) {
+        @Override
+        public double sample(double[] window, int width, int height, double x, double y,
+                double noData) {
+            final int i = clamp((int) Math.floor(x), width);
+            final int j = clamp((int) Math.floor(y), height);
+            final double value = window[j * width + i];
+            return isNoData(value, noData) ? Double.NaN : value;
+        }
+    };
+
+    /**
+     * Interpolates linearly between the 2x2 nearest pixel centers.
+     */
+    public static final Resampler BILINEAR = new Resampler(1) {
+        @Override
+        public double sample(double[] window, int width, int height, double x, double y,
+                double noData) {
+            final double fx = x - 0.5;
+            final double fy = y - 0.5;
+            final int i0 = (int) Math.floor(fx);
+            final int j0 = (int) Math.floor(fy);
+            final double tx = fx - i0;
+            final double ty = fy - j0;
+
+            double sum = 0;
+            double weights = 0;
+            for (int dj = 0; dj < 2; dj++) {
+                final int row = clamp(j0 + dj, height) * width;
+                final double wy = dj == 0 ? 1 - ty : ty;
+                for (int di = 0; di < 2; di++) {
+                    final double value = window[row + clamp(i0 + di, width)];
+                    final double weight = wy * (di == 0 ? 1 - tx : tx);
+                    if (weight != 0 && !isNoData(value, noData)) {
+                        sum += weight * value;
+                        weights += weight;
+                    }
+                }
+            }
+            return weights > 0 ? sum / weights : Double.NaN;
+        }
+    };
+
+    /**
+     * Cubic convolution (Keys, a = -0.5) over the 4x4 nearest pixel centers,
+     * as GDAL's GRA_Cubic.
+     */
+    public static final Resampler CUBIC = new Resampler(2) {
+        @Override
+        public double sample(double[] window, int width, int height, double x, double y,
+                double noData) {
+            final double fx = x - 0.5;
+            final double fy = y - 0.5;
+            final int i0 = (int) Math.floor(fx) - 1;
+            final int j0 = (int) Math.floor(fy) - 1;
+            final double tx = fx - Math.floor(fx);
+            final double ty = fy - Math.floor(fy);
+
+            double sum = 0;
+            double weights = 0;
+            double absWeights = 0;
+            for (int dj = 0; dj < 4; dj++) {
+                final int row = clamp(j0 + dj, height) * width;
+                final double wy = keys(dj - 1 - ty);
+                for (int di = 0; di < 4; di++) {
+                    final double value = window[row + clamp(i0 + di, width)];
+                    final double weight = wy * keys(di - 1 - tx);
+                    if (weight != 0 && !isNoData(value, noData)) {
+                        sum += weight * value;
+                        weights += weight;
+                        absWeights += Math.abs(weight);
+                    }
+                }
+            }
+
+            // Renormalizing only the negative lobes would blow up
+            return weights > 0.5 * absWeights ? sum / weights : Double.NaN;
+        }
+
+        private double keys(double t) {
+            t = Math.abs(t);
+            if (t < 1) {
+                return (1.5 * t - 2.5) * t * t + 1;
+            } else if (t < 2) {
+                return ((-0.5 * t + 2.5) * t - 4) * t + 2;
+            }
+            return 0;
+        }
+    };
+
+    private final int mRadius;
+
+    private Resampler(int radius) {
+        mRadius = radius;
+    }
+
+    public static Resampler forType(ResamplingType type) {
+        switch (type) {
+        case NEAREST_NEIGHBOR:
+            return NEAREST;
+        case BILINEAR:
+            return BILINEAR;
+        case CUBIC_CONVOLUTION:
+            return CUBIC;
+        default:
+            throw new IllegalArgumentException("Unsupported resampling type " + type);
+        }
+    }
+
+    /**
+     * Returns how many pixels beyond the one containing a position may be
+     * used to interpolate it.
+     */
+    public int getRadius() {
+        return mRadius;
+    }
+
+    /**
+     * Returns the value at (x, y), or NaN if there is no data around it.
+     *
+     * @param window width * height source values, row by row
+     * @param noData value of pixels without data; NaN if there is none
+     */
+    public abstract double sample(double[] window, int width, int height, double x, double y,
+            double noData);
+
+    private static int clamp(int i, int size) {
+        return i < 0 ? 0 : (i >= size ? size - 1 : i);
+    }
+
+    private static boolean isNoData(double value, double noData) {
+        return value == noData || Double.isNaN(value);
+    }
+}
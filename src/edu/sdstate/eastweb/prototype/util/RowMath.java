@@ -0,0 +1,167 @@
+package edu.sdstate.eastweb.prototype.util;
+
+/**
+ * Element-wise math on rows of raster values, the inner loops of the index,
+ * filter and watermask stages. The implementation is chosen once, when this
+ * class is loaded: the SIMD one (VectorRowMath, built from src-vector with
+ * JDK 16 or later) if it can be loaded and agrees with the scalar one on a
+ * self-check, the scalar one otherwise. Setting the system property
+ * eastweb.vector to false forces the scalar one.
+ *
+ * Every implementation gives bit-identical results; comparisons and
+ * conditions are 1 or 0, and a condition is true when non-zero.
+ */
+public abstract class RowMath {
+    // Binary operators
+    public static final int ADD = 0;
+    public static final int SUBTRACT = 1;
+    public static final int MULTIPLY = 2;
+    public static final int DIVIDE = 3;
+    public static final int LESS = 4;
+    public static final int LESS_EQUAL = 5;
+    public static final int GREATER = 6;
+    public static final int GREATER_EQUAL = 7;
+    public static final int EQUAL = 8;
+    public static final int NOT_EQUAL = 9;
+    public static final int AND = 10;
+    public static final int OR = 11;
+    public static final int MIN = 12;
+    public static final int MAX = 13;
+
+    // Unary operators
+    public static final int NEGATE = 14;
+    public static final int NOT = 15;
+    public static final int ABS = 16;
+    public static final int SQRT = 17;
+
+    private static final String VECTOR_CLASS = "edu.sdstate.eastweb.prototype.util.VectorRowMath";
+
+    private static final RowMath sScalar = new ScalarRowMath();
+    private static final RowMath sInstance = load();
+
+    protected RowMath() {
+    }
+
+    /**
+     * Returns the implementation chosen at startup.
+     */
+    public static RowMath get() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the scalar implementation, which is always available.
+     */
+    public static RowMath scalar() {
+        return sScalar;
+    }
+
+    /**
+     * Returns a name for the implementation, for logs.
+     */
+    public abstract String getName();
+
+    /**
+     * out[i] = a[i] operator b[i] for i below length.
+     */
+    public abstract void binary(int operator, double[] a, double[] b, double[] out, int length);
+
+    /**
+     * out[i] = operator a[i] for i below length.
+     */
+    public abstract void unary(int operator, double[] a, double[] out, int length);
+
+    /**
+     * out[i] = condition[i] != 0 ? a[i] : b[i] for i below length.
+     */
+    public abstract void select(double[] condition, double[] a, double[] b, double[] out, int length);
+
+    /**
+     * Sets values[offset + i] to replacement where keys[keyOffset + i] equals
+     * key, for i below length.
+     */
+    public abstract void replaceWhere(double[] values, int offset, double[] keys, int keyOffset,
+            int length, double key, double replacement);
+
+    /**
+     * Sets values[i] to replacement where it is below min or above max, and
+     * to values[i] * scale otherwise, for i from offset to offset + length.
+     */
+    public abstract void filterRange(double[] values, int offset, int length, double min,
+            double max, double scale, double replacement);
+
+    private static RowMath load() {
+        if ("false".equals(System.getProperty("eastweb.vector"))) {
+            return sScalar;
+        }
+
+        final RowMath vector;
+        try {
+            vector = (RowMath) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            // Not built, or the JVM lacks the incubator module
+            return sScalar;
+        }
+        return agrees(vector) ? vector : sScalar;
+    }
+
+    /**
+     * Checks an implementation against the scalar one on values covering the
+     * special cases, at lengths that leave a tail after the vector loop.
+     */
+    private static boolean agrees(RowMath math) {
+        final double[] a = { 1, -2.5, 0, -0.0, Double.NaN, 32767, 7500, 1e300, -1e-300,
+                Double.POSITIVE_INFINITY, 3, 0.1, -7, 2, 5, 32766, 0, 4, Double.NaN };
+        final double[] b = { 3, 0, -0.0, 0, 1, 32767, 0.02, 1e300, 3, 1, Double.NaN, 0.2, -7,
+                -2, 0, 1, 0, Double.NEGATIVE_INFINITY, 6 };
+        final double[] expected = new double[a.length];
+        final double[] actual = new double[a.length];
+
+        try {
+            for (int length = 0; length <= a.length; length += 3) {
+                for (int operator = ADD; operator <= MAX; operator++) {
+                    sScalar.binary(operator, a, b, expected, length);
+                    math.binary(operator, a, b, actual, length);
+                    if (!same(expected, actual, length)) {
+                        return false;
+                    }
+                }
+                for (int operator = NEGATE; operator <= SQRT; operator++) {
+                    sScalar.unary(operator, a, expected, length);
+                    math.unary(operator, a, actual, length);
+                    if (!same(expected, actual, length)) {
+                        return false;
+                    }
+                }
+
+                sScalar.select(b, a, b, expected, length);
+                math.select(b, a, b, actual, length);
+                if (!same(expected, actual, length)) {
+                    return false;
+                }
+
+                System.arraycopy(a, 0, expected, 0, a.length);
+                System.arraycopy(a, 0, actual, 0, a.length);
+                sScalar.replaceWhere(expected, 0, b, 0, length, 0, 32767);
+                math.replaceWhere(actual, 0, b, 0, length, 0, 32767);
+                sScalar.filterRange(expected, 0, length, 0, 32766, 0.02, 32767);
+                math.filterRange(actual, 0, length, 0, 32766, 0.02, 32767);
+                if (!same(expected, actual, a.length)) {
+                    return false;
+                }
+            }
+        } catch (Throwable e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean same(double[] expected, double[] actual, int length) {
+        for (int i = 0; i < length; i++) {
+            if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.sdstate.eastweb.prototype.util;
+
+/**
+ * The plain Java implementation of RowMath, with one loop per operator so
+ * that each is a tight loop.
+ */
+final class ScalarRowMath extends RowMath {
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void binary(int operator, double[] a, double[] b, double[] out, int length) {
+        switch (operator) {
+        case ADD:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] + b[i];
+            }
+            break;
+        case SUBTRACT:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] - b[i];
+            }
+            break;
+        case MULTIPLY:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] * b[i];
+            }
+            break;
+        case DIVIDE:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] / b[i];
+            }
+            break;
+        case LESS:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] < b[i] ? 1 : 0;
+            }
+            break;
+        case LESS_EQUAL:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] <= b[i] ? 1 : 0;
+            }
+            break;
+        case GREATER:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] > b[i] ? 1 : 0;
+            }
+            break;
+        case GREATER_EQUAL:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] >= b[i] ? 1 : 0;
+            }
+            break;
+        case EQUAL:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] == b[i] ? 1 : 0;
+            }
+            break;
+        case NOT_EQUAL:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] != b[i] ? 1 : 0;
+            }
+            break;
+        case AND:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] != 0 && b[i] != 0 ? 1 : 0;
+            }
+            break;
+        case OR:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] != 0 || b[i] != 0 ? 1 : 0;
+            }
+            break;
+        case MIN:
+            for (int i = 0; i < length; i++) {
+                out[i] = Math.min(a[i], b[i]);
+            }
+            break;
+        case MAX:
+            for (int i = 0; i < length; i++) {
+                out[i] = Math.max(a[i], b[i]);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Not a binary operator: " + operator);
+        }
+    }
+
+    @Override
+    public void unary(int operator, double[] a, double[] out, int length) {
+        switch (operator) {
+        case NEGATE:
+            for (int i = 0; i < length; i++) {
+                out[i] = -a[i];
+            }
+            break;
+        case NOT:
+            for (int i = 0; i < length; i++) {
+                out[i] = a[i] == 0 ? 1 : 0;
+            }
+            break;
+        case ABS:
+            for (int i = 0; i < length; i++) {
+                out[i] = Math.abs(a[i]);
+            }
+            break;
+        case SQRT:
+            for (int i = 0; i < length; i++) {
+                out[i] = Math.sqrt(a[i]);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Not a unary operator: " + operator);
+        }
+    }
+
+    @Override
+    public void select(double[] condition, double[] a, double[] b, double[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            out[i] = condition[i] != 0 ? a[i] : b[i];
+        }
+    }
+
+    @Override
+    public void replaceWhere(double[] values, int offset, double[] keys, int keyOffset,
+            int length, double key, double replacement) {
+        for (int i = 0; i < length; i++) {
+            if (keys[keyOffset + i] == key) {
+                values[offset + i] = replacement;
+            }
+        }
+    }
+
+    @Override
+    public void filterRange(double[] values, int offset, int length, double min,
+            double max, double scale, double replacement) {
+        for (int i = offset; i < offset + length; i++) {
+            final double value = values[i];
+            values[i] = value < min || value > max ? replacement : value * scale;
+        }
+    }
+}
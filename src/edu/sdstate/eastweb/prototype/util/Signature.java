@@ -0,0 +1,56 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.io.File;
+
+/**
+ * Builds a 64-bit FNV-1a hash identifying the inputs of a cached result, e.g.
+ * a source file and the raster grid it was resampled to. A file contributes
+ * its path, length and modification time, so editing it changes the
+ * signature.
+ */
+public final class Signature {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long mHash = OFFSET_BASIS;
+
+    public Signature() {
+    }
+
+    public Signature add(long value) {
+        for (int i = 0; i < 8; i++) {
+            mHash ^= (value >>> (i * 8)) & 0xff;
+            mHash *= PRIME;
+        }
+        return this;
+    }
+
+    public Signature add(double value) {
+        return add(Double.doubleToLongBits(value));
+    }
+
+    public Signature add(double[] values) {
+        add(values.length);
+        for (double value : values) {
+            add(value);
+        }
+        return this;
+    }
+
+    public Signature add(String value) {
+        add(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            mHash ^= value.charAt(i);
+            mHash *= PRIME;
+        }
+        return this;
+    }
+
+    public Signature add(File file) {
+        return add(file.getAbsolutePath()).add(file.length()).add(file.lastModified());
+    }
+
+    public long get() {
+        return mHash;
+    }
+}
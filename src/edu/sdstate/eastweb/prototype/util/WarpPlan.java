@@ -0,0 +1,185 @@
+package edu.sdstate.eastweb.prototype.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.Transformer;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+/**
+ * Maps the pixels of a target grid to positions on a source grid. The exact
+ * transformation is only evaluated on a lattice of every STEP-th target
+ * pixel, and positions in between are interpolated bilinearly, as GDAL's
+ * approximate transformer does; for the smooth projections used here the
+ * error is a small fraction of a pixel. Plans only depend on the two grids,
+ * so they are cached and reused for every band and date warped between them.
+ */
+final class WarpPlan {
+    private static final int STEP = 16;
+    private static final int CACHE_SIZE = 16;
+
+    private static final Map<String, WarpPlan> sPlans = new LinkedHashMap<String, WarpPlan>(
+            CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WarpPlan> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int mSourceWidth;
+    private final int mSourceHeight;
+    private final int[] mColumns; // Target columns of the lattice
+    private final int[] mRows; // Target rows of the lattice
+    private final float[] mX; // Source positions at the lattice, NaN if unknown
+    private final float[] mY;
+
+    private WarpPlan(RasterGrid source, RasterGrid target) {
+        mSourceWidth = source.getWidth();
+        mSourceHeight = source.getHeight();
+        mColumns = lattice(target.getWidth());
+        mRows = lattice(target.getHeight());
+        mX = new float[mColumns.length * mRows.length];
+        mY = new float[mX.length];
+
+        synchronized (GdalUtils.lockObject) {
+            final Dataset sourceDS = createGrid(source);
+            final Dataset targetDS = createGrid(target);
+            try {
+                final Transformer transformer = new Transformer(sourceDS, targetDS,
+                        new Vector<String>());
+                try {
+                    final double[][] points = new double[mColumns.length][3];
+                    final int[] success = new int[mColumns.length];
+                    for (int j = 0; j < mRows.length; j++) {
+                        for (int i = 0; i < mColumns.length; i++) {
+                            points[i][0] = mColumns[i] + 0.5;
+                            points[i][1] = mRows[j] + 0.5;
+                            points[i][2] = 0;
+                        }
+                        transformer.TransformPoints(1, points, success);
+                        for (int i = 0; i < mColumns.length; i++) {
+                            final int k = j * mColumns.length + i;
+                            mX[k] = success[i] != 0 ? (float) points[i][0] : Float.NaN;
+                            mY[k] = success[i] != 0 ? (float) points[i][1] : Float.NaN;
+                        }
+                    }
+                } finally {
+                    transformer.delete();
+                }
+            } finally {
+                sourceDS.delete();
+                targetDS.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the plan from the source grid to the target grid, creating it
+     * if it isn't cached.
+     */
+    static WarpPlan get(RasterGrid source, RasterGrid target) {
+        final String key = String.format("%016x:%016x", source.getSignature(), target.getSignature());
+        synchronized (sPlans) {
+            WarpPlan plan = sPlans.get(key);
+            if (plan == null) {
+                plan = new WarpPlan(source, target);
+                sPlans.put(key, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Fills xs and ys, as long as the target width, with the source positions
+     * of the centers of a target row's pixels; positions are NaN where
+     * unknown.
+     */
+    void getRow(int row, double[] xs, double[] ys) {
+        final int j = segment(mRows, row);
+        final double ty = fraction(mRows, j, row);
+        final int top = j * mColumns.length;
+        final int bottom = Math.min(j + 1, mRows.length - 1) * mColumns.length;
+
+        for (int x = 0; x < xs.length; x++) {
+            final int i = segment(mColumns, x);
+            final int next = Math.min(i + 1, mColumns.length - 1);
+            final double tx = fraction(mColumns, i, x);
+            xs[x] = interpolate(mX, top, bottom, i, next, tx, ty);
+            ys[x] = interpolate(mY, top, bottom, i, next, tx, ty);
+        }
+    }
+
+    /**
+     * Returns the window of source pixels { left, top, right, bottom } needed
+     * to warp target rows [top, bottom) with the given resampling radius, or
+     * null if they don't overlap the source.
+     */
+    int[] getSourceWindow(int top, int bottom, int radius) {
+        final int first = segment(mRows, top);
+        final int last = Math.min(segment(mRows, bottom - 1) + 1, mRows.length - 1);
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int k = first * mColumns.length; k < (last + 1) * mColumns.length; k++) {
+            if (!Float.isNaN(mX[k]) && !Float.isNaN(mY[k])) {
+                minX = Math.min(minX, mX[k]);
+                maxX = Math.max(maxX, mX[k]);
+                minY = Math.min(minY, mY[k]);
+                maxY = Math.max(maxY, mY[k]);
+            }
+        }
+
+        final int left = (int) Math.max(0, Math.floor(minX) - radius);
+        final int right = (int) Math.min(mSourceWidth, Math.floor(maxX) + radius + 1);
+        final int up = (int) Math.max(0, Math.floor(minY) - radius);
+        final int down = (int) Math.min(mSourceHeight, Math.floor(maxY) + radius + 1);
+        if (minX > maxX || left >= right || up >= down) {
+            return null;
+        }
+        return new int[] { left, up, right, down };
+    }
+
+    private static Dataset createGrid(RasterGrid grid) {
+        final Dataset dataset = gdal.GetDriverByName("MEM").Create("", 1, 1, 1, gdalconst.GDT_Byte);
+        dataset.SetProjection(grid.getProjection());
+        dataset.SetGeoTransform(grid.getGeoTransform());
+        return dataset;
+    }
+
+    /**
+     * Returns every STEP-th index of a dimension, and its last index.
+     */
+    private static int[] lattice(int size) {
+        final int count = (size - 1) / STEP + ((size - 1) % STEP == 0 ? 1 : 2);
+        final int[] lattice = new int[count];
+        for (int i = 0; i < count; i++) {
+            lattice[i] = Math.min(i * STEP, size - 1);
+        }
+        return lattice;
+    }
+
+    private static double interpolate(float[] values, int top, int bottom, int i, int next,
+            double tx, double ty) {
+        final double upper = values[top + i] + (values[top + next] - values[top + i]) * tx;
+        final double lower = values[bottom + i] + (values[bottom + next] - values[bottom + i]) * tx;
+        return upper + (lower - upper) * ty;
+    }
+
+    private static int segment(int[] lattice, int index) {
+        return Math.max(0, Math.min(index / STEP, lattice.length - 2));
+    }
+
+    private static double fraction(int[] lattice, int segment, int index) {
+        if (segment + 1 >= lattice.length) {
+            return 0;
+        }
+        return (double) (index - lattice[segment]) / (lattice[segment + 1] - lattice[segment]);
+    }
+}
@@ -0,0 +1,44 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.util.BandStatistics;
+import static org.junit.Assert.*;
+
+public class BandStatisticsTests {
+    private static final Random sRandom = new Random();
+
+    @Test
+    public void testSmall() {
+        final BandStatistics stats = new BandStatistics();
+        stats.addAll(new double[] { 2, 4, 32767, 4, 4, 5, 5, 7, 9 }, 0, 9, 32767);
+
+        assertEquals(8, stats.getCount());
+        assertEquals(2, stats.getMin(), 0);
+        assertEquals(9, stats.getMax(), 0);
+        assertEquals(5, stats.getMean(), 1e-12);
+        assertEquals(2, stats.getStdDev(), 1e-12);
+    }
+
+    @Test
+    public void testMerge() {
+        final BandStatistics all = new BandStatistics();
+        final BandStatistics first = new BandStatistics();
+        final BandStatistics second = new BandStatistics();
+        for (int i = 0; i < 10000; ++i) {
+            final double value = sRandom.nextGaussian() * 100 + 1000;
+            all.add(value);
+            (i % 3 == 0 ? first : second).add(value);
+        }
+        first.merge(second);
+        first.merge(new BandStatistics());
+
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getMin(), first.getMin(), 0);
+        assertEquals(all.getMax(), first.getMax(), 0);
+        assertEquals(all.getMean(), first.getMean(), 1e-9);
+        assertEquals(all.getStdDev(), first.getStdDev(), 1e-9);
+    }
+}
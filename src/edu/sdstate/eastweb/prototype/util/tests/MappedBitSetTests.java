@@ -0,0 +1,92 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.util.MappedBitSet;
+import edu.sdstate.eastweb.prototype.util.Signature;
+import static org.junit.Assert.*;
+
+public class MappedBitSetTests {
+    private static final Random sRandom = new Random();
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        final int width = 1 + sRandom.nextInt(300);
+        final int height = 1 + sRandom.nextInt(300);
+        final boolean[] expected = new boolean[width * height];
+        final MappedBitSet.Builder builder = new MappedBitSet.Builder(width, height);
+        int count = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            expected[i] = sRandom.nextBoolean();
+            if (expected[i]) {
+                builder.set(i % width, i / width);
+                ++count;
+            }
+        }
+
+        final File file = File.createTempFile("MappedBitSetTests", ".bits");
+        try {
+            final long signature = new Signature().add(file).add(width).get();
+            MappedBitSet.write(file, signature, builder);
+
+            final MappedBitSet bits = MappedBitSet.open(file, signature);
+            assertNotNull(bits);
+            assertEquals(width, bits.getWidth());
+            assertEquals(height, bits.getHeight());
+            assertEquals(count, bits.cardinality());
+            for (int i = 0; i < expected.length; ++i) {
+                assertEquals(expected[i], bits.get(i % width, i / width));
+            }
+
+            assertNull(MappedBitSet.open(file, signature + 1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRuns() {
+        final int width = 1 + sRandom.nextInt(200);
+        final int height = 1 + sRandom.nextInt(50);
+        final boolean[] expected = new boolean[width * height];
+        final MappedBitSet.Builder builder = new MappedBitSet.Builder(width, height);
+        for (int i = 0; i < expected.length; ) {
+            final int run = 1 + sRandom.nextInt(100);
+            final boolean set = sRandom.nextBoolean();
+            for (int j = i; j < Math.min(i + run, expected.length); ++j) {
+                expected[j] = set;
+                if (set) {
+                    builder.set(j);
+                }
+            }
+            i += run;
+        }
+
+        final MappedBitSet bits = MappedBitSet.wrap(builder);
+        for (int i = 0; i < expected.length; ++i) {
+            int nextSet = i;
+            while (nextSet < expected.length && !expected[nextSet]) {
+                ++nextSet;
+            }
+            int nextClear = i;
+            while (nextClear < expected.length && expected[nextClear]) {
+                ++nextClear;
+            }
+
+            assertEquals(nextSet == expected.length ? -1 : nextSet, bits.nextSetBit(i));
+            assertEquals(nextClear, bits.nextClearBit(i));
+        }
+    }
+
+    @Test
+    public void testSignature() {
+        assertEquals(new Signature().add("a").add(1.5).get(),
+                new Signature().add("a").add(1.5).get());
+        assertFalse(new Signature().add("ab").add("c").get()
+                == new Signature().add("a").add("bc").get());
+    }
+}
@@ -0,0 +1,55 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.util.MappedIntArrays;
+import static org.junit.Assert.*;
+
+public class MappedIntArraysTests {
+    private static final Random sRandom = new Random();
+
+    @Test
+    public void testWriteAndOpen() throws IOException {
+        final int[][] arrays = new int[3][];
+        for (int i = 0; i < arrays.length; ++i) {
+            arrays[i] = new int[sRandom.nextInt(1000)];
+            for (int j = 0; j < arrays[i].length; ++j) {
+                arrays[i][j] = sRandom.nextInt();
+            }
+        }
+
+        final File file = File.createTempFile("MappedIntArraysTests", ".ints");
+        try {
+            final long signature = sRandom.nextLong();
+            assertTrue(MappedIntArrays.write(file, signature, arrays));
+
+            final IntBuffer[] mapped = MappedIntArrays.open(file, signature);
+            assertNotNull(mapped);
+            assertEquals(arrays.length, mapped.length);
+            for (int i = 0; i < arrays.length; ++i) {
+                final int[] copy = new int[mapped[i].limit()];
+                mapped[i].get(copy);
+                assertArrayEquals(arrays[i], copy);
+            }
+
+            assertNull(MappedIntArrays.open(file, signature ^ 1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testShortFile() throws IOException {
+        final File file = File.createTempFile("MappedIntArraysTests", ".ints");
+        try {
+            assertNull(MappedIntArrays.open(file, 0));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import edu.sdstate.eastweb.prototype.util.RasterGrid;
+import edu.sdstate.eastweb.prototype.util.XmlUtils;
+import static org.junit.Assert.*;
+
+public class RasterGridTests {
+    @Test
+    public void testXml() throws Exception {
+        final RasterGrid ref = new RasterGrid(
+                "PROJCS[\"Albers\",GEOGCS[\"NAD83\"],UNIT[\"metre\",1]]",
+                new double[] { -1234567.125, 1000.0 / 3, 0, 2345678.5, 0, -1000.0 / 3 },
+                4821, 3107);
+
+        final Document doc = XmlUtils.newDocument("test");
+        final RasterGrid grid = RasterGrid.fromXml(ref.toXml(doc));
+        assertEquals(ref, grid);
+        assertEquals(ref.getSignature(), grid.getSignature());
+        assertArrayEquals(ref.getGeoTransform(), grid.getGeoTransform(), 0);
+    }
+}
@@ -0,0 +1,85 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.Projection.ResamplingType;
+import edu.sdstate.eastweb.prototype.util.Resampler;
+import static org.junit.Assert.*;
+
+public class ResamplerTests {
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+    private static final double NO_DATA = 32767;
+
+    /**
+     * Returns a window whose pixels are a linear function of their centers.
+     */
+    private static double[] ramp() {
+        final double[] window = new double[WIDTH * HEIGHT];
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                window[j * WIDTH + i] = ramp(i + 0.5, j + 0.5);
+            }
+        }
+        return window;
+    }
+
+    private static double ramp(double x, double y) {
+        return 3 * x - 2 * y + 10;
+    }
+
+    @Test
+    public void testForType() {
+        assertSame(Resampler.NEAREST, Resampler.forType(ResamplingType.NEAREST_NEIGHBOR));
+        assertSame(Resampler.BILINEAR, Resampler.forType(ResamplingType.BILINEAR));
+        assertSame(Resampler.CUBIC, Resampler.forType(ResamplingType.CUBIC_CONVOLUTION));
+    }
+
+    @Test
+    public void testNearest() {
+        final double[] window = ramp();
+        assertEquals(ramp(2.5, 3.5), Resampler.NEAREST.sample(window, WIDTH, HEIGHT, 2.9, 3.1, NO_DATA), 0);
+        assertEquals(ramp(0.5, 5.5), Resampler.NEAREST.sample(window, WIDTH, HEIGHT, -0.2, 6.4, NO_DATA), 0);
+
+        window[3 * WIDTH + 2] = NO_DATA;
+        assertTrue(Double.isNaN(Resampler.NEAREST.sample(window, WIDTH, HEIGHT, 2.9, 3.1, NO_DATA)));
+    }
+
+    @Test
+    public void testLinearRamp() {
+        final double[] window = ramp();
+        final Resampler[] resamplers = { Resampler.BILINEAR, Resampler.CUBIC };
+        for (Resampler resampler : resamplers) {
+            for (double y = 2; y < 4; y += 0.25) {
+                for (double x = 2; x < 6; x += 0.3) {
+                    assertEquals(ramp(x, y), resampler.sample(window, WIDTH, HEIGHT, x, y, NO_DATA), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCenters() {
+        final double[] window = ramp();
+        window[0] = NO_DATA;
+        final Resampler[] resamplers = { Resampler.NEAREST, Resampler.BILINEAR, Resampler.CUBIC };
+        for (Resampler resampler : resamplers) {
+            assertEquals(window[2 * WIDTH + 5],
+                    resampler.sample(window, WIDTH, HEIGHT, 5.5, 2.5, NO_DATA), 1e-9);
+        }
+    }
+
+    @Test
+    public void testBilinearNoData() {
+        final double[] window = new double[] {
+                1, 3,
+                NO_DATA, 5,
+        };
+        // Only the valid neighbours are averaged
+        assertEquals(3, Resampler.BILINEAR.sample(window, 2, 2, 1, 1, NO_DATA), 1e-12);
+        assertEquals(1, Resampler.BILINEAR.sample(window, 2, 2, 0.5, 0.9, NO_DATA), 1e-12);
+
+        final double[] empty = new double[] { NO_DATA, NO_DATA, NO_DATA, NO_DATA };
+        assertTrue(Double.isNaN(Resampler.BILINEAR.sample(empty, 2, 2, 1, 1, NO_DATA)));
+    }
+}
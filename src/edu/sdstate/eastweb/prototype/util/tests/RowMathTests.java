@@ -0,0 +1,136 @@
+package edu.sdstate.eastweb.prototype.util.tests;
+
+import java.util.*;
+import org.junit.Test;
+import edu.sdstate.eastweb.prototype.util.RowMath;
+import static org.junit.Assert.*;
+
+public final class RowMathTests {
+    private static final double[] SPECIAL = { 0, -0.0, 1, -1, 32766, 32767, 7500, 7499.999,
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE,
+        Double.MAX_VALUE, -Float.MAX_VALUE };
+
+    /**
+     * Returns the implementations to check against the scalar one: the one in
+     * use, and the SIMD one if it was built and the JVM supports it.
+     */
+    private static List<RowMath> getImplementations() {
+        final List<RowMath> implementations = new ArrayList<RowMath>();
+        implementations.add(RowMath.get());
+        try {
+            implementations.add((RowMath) Class.forName(
+                    "edu.sdstate.eastweb.prototype.util.VectorRowMath")
+                    .getDeclaredConstructor().newInstance());
+        } catch (Throwable e) {
+            // Only the scalar implementation is available
+        }
+        return implementations;
+    }
+
+    private static double[] random(Random random, int length) {
+        final double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+            case 0:
+                values[i] = SPECIAL[random.nextInt(SPECIAL.length)];
+                break;
+            case 1:
+                values[i] = random.nextInt(3) - 1;
+                break;
+            default:
+                values[i] = (random.nextDouble() - 0.3) * 40000;
+                break;
+            }
+        }
+        return values;
+    }
+
+    private static void assertSame(double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("at " + i, Double.doubleToLongBits(expected[i]),
+                    Double.doubleToLongBits(actual[i]));
+        }
+    }
+
+    @Test
+    public void testSameResults() {
+        final RowMath scalar = RowMath.scalar();
+        final Random random = new Random(11);
+        for (RowMath math : getImplementations()) {
+            for (int length = 0; length < 40; length++) {
+                final double[] a = random(random, length);
+                final double[] b = random(random, length);
+                final double[] expected = new double[length];
+                final double[] actual = new double[length];
+
+                for (int operator = RowMath.ADD; operator <= RowMath.MAX; operator++) {
+                    scalar.binary(operator, a, b, expected, length);
+                    math.binary(operator, a, b, actual, length);
+                    assertSame(expected, actual);
+                }
+                for (int operator = RowMath.NEGATE; operator <= RowMath.SQRT; operator++) {
+                    scalar.unary(operator, a, expected, length);
+                    math.unary(operator, a, actual, length);
+                    assertSame(expected, actual);
+                }
+
+                scalar.select(b, a, b, expected, length);
+                math.select(b, a, b, actual, length);
+                assertSame(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testReplaceWhere() {
+        final Random random = new Random(12);
+        for (RowMath math : getImplementations()) {
+            for (int length = 0; length < 40; length++) {
+                final double[] values = random(random, length + 3);
+                final double[] keys = random(random, length + 2);
+                final double[] expected = values.clone();
+                final double[] actual = values.clone();
+
+                for (int i = 0; i < length; i++) {
+                    if (keys[2 + i] == 0) {
+                        expected[3 + i] = 32767;
+                    }
+                }
+                math.replaceWhere(actual, 3, keys, 2, length, 0, 32767);
+                assertSame(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testFilters() {
+        final Random random = new Random(13);
+        for (RowMath math : getImplementations()) {
+            for (int length = 0; length < 40; length++) {
+                final double[] values = random(random, length + 1);
+
+                // The NBAR and LST filters, as they were written per pixel
+                final double[] nbar = values.clone();
+                final double[] lst = values.clone();
+                for (int i = 1; i < nbar.length; i++) {
+                    nbar[i] = nbar[i] < 0 || nbar[i] > 32766 ? 32767 : nbar[i];
+                    lst[i] = lst[i] < 7500 ? 32767 : lst[i] * 0.02;
+                }
+
+                final double[] actual = values.clone();
+                math.filterRange(actual, 1, length, 0, 32766, 1, 32767);
+                assertSame(nbar, actual);
+
+                System.arraycopy(values, 0, actual, 0, values.length);
+                math.filterRange(actual, 1, length, 7500, Double.POSITIVE_INFINITY, 0.02, 32767);
+                assertSame(lst, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testScalarFallback() {
+        assertEquals("scalar", RowMath.scalar().getName());
+        assertNotNull(RowMath.get().getName());
+    }
+}
@@ -0,0 +1,371 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.ParallelUtils;
+
+/**
+ * Calculates the zonal statistics of several rasters and zone fields of the
+ * same layer. Each raster is read once and its values are gathered for all of
+ * its fields in the same pass; the zone indices are shared between rasters on
+ * the same grid.
+ *
+ * Tables of coarse rasters can be weighted, in which case each pixel counts
+ * by the fraction of it covered by the zone rather than by whether the zone
+ * covers its center; the count column is then the covered area in pixels.
+ *
+ * Optionally, the QUANTILES of each zone are estimated with a QuantileSketch
+ * and appended to its line of the table, and a histogram of each zone is
+ * written to a second table next to it (see getHistogramTable).
+ */
+public class GdalZonalStatisticsBatch {
+
+    private static final int STRIP_ROWS = 32;
+
+    /**
+     * Quantiles appended to the tables when they are enabled.
+     */
+    public static final double[] QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
+
+    /**
+     * Number of equal bins between each zone's min and max in the histogram
+     * tables.
+     */
+    public static final int HISTOGRAM_BINS = 10;
+
+    private final File mLayerFile;
+    private final File mZoneCache;
+    private final boolean mQuantiles;
+    private final Map<File, Map<File, Zones>> mTables = new LinkedHashMap<File, Map<File, Zones>>();
+
+    /**
+     * Identifies a zone index of the layer.
+     */
+    private static final class Zones {
+        final String field;
+        final boolean weighted;
+
+        Zones(String field, boolean weighted) {
+            this.field = field;
+            this.weighted = weighted;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Zones)) {
+                return false;
+            }
+            Zones other = (Zones) obj;
+            return field.equals(other.field) && weighted == other.weighted;
+        }
+
+        @Override
+        public int hashCode() {
+            return field.hashCode() * 2 + (weighted ? 1 : 0);
+        }
+    }
+
+    /**
+     *
+     * @param layer must be a subset of every raster
+     * @param zoneCache directory where rasterized zones are cached, or null
+     */
+    public GdalZonalStatisticsBatch(File layer, File zoneCache) {
+        this(layer, zoneCache, false);
+    }
+
+    /**
+     *
+     * @param layer must be a subset of every raster
+     * @param zoneCache directory where rasterized zones are cached, or null
+     * @param quantiles whether to append the QUANTILES to the tables and
+     * write the histogram tables
+     */
+    public GdalZonalStatisticsBatch(File layer, File zoneCache, boolean quantiles) {
+        mLayerFile = layer;
+        mZoneCache = zoneCache;
+        mQuantiles = quantiles;
+    }
+
+    /**
+     * Adds a table to calculate.
+     *
+     * @param raster
+     * @param field must be an integer field that exists within the layer
+     * @param table
+     */
+    public GdalZonalStatisticsBatch add(File raster, String field, File table) {
+        return add(raster, field, table, false);
+    }
+
+    /**
+     * Adds a table to calculate.
+     *
+     * @param raster
+     * @param field must be an integer field that exists within the layer
+     * @param table
+     * @param weighted whether pixels are weighted by their zone coverage
+     */
+    public GdalZonalStatisticsBatch add(File raster, String field, File table, boolean weighted) {
+        Map<File, Zones> tables = mTables.get(raster);
+        if (tables == null) {
+            tables = new LinkedHashMap<File, Zones>();
+            mTables.put(raster, tables);
+        }
+        tables.put(table, new Zones(field, weighted));
+        return this;
+    }
+
+
+    /**
+     *
+     *
+     * @throws Exception
+     */
+    public void calculate() throws Exception {
+        GdalUtils.register();
+
+        for (Map.Entry<File, Map<File, Zones>> entry : mTables.entrySet()) {
+            Dataset raster;
+            synchronized (GdalUtils.lockObject) {
+                // Open inputs
+                raster = gdal.Open(entry.getKey().getPath()); GdalUtils.errorCheck();
+            }
+
+            try {
+                // Get the zone indices, rasterizing the layer if they aren't cached
+                List<Zones> zones = new ArrayList<Zones>(
+                        new LinkedHashSet<Zones>(entry.getValue().values()));
+                ZoneIndex[] zoneIndices = new ZoneIndex[zones.size()];
+                for (int i=0; i<zoneIndices.length; i++) {
+                    zoneIndices[i] = ZoneIndex.get(mLayerFile, zones.get(i).field, raster,
+                            mZoneCache, zones.get(i).weighted);
+                }
+
+                // Calculate statistics
+                ZoneAccumulator[] statistics = calculateStatistics(raster, zoneIndices);
+
+                // Write the tables
+                for (Map.Entry<File, Zones> table : entry.getValue().entrySet()) {
+                    int i = zones.indexOf(table.getValue());
+                    writeTable(table.getKey(), zoneIndices[i], statistics[i]);
+                }
+            } finally { // Clean up
+                synchronized (GdalUtils.lockObject) {
+                    raster.delete(); GdalUtils.errorCheck();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Splits the rows covered by any zone into one band per thread. Each band
+     * is read in strips, and each zone's pixels in the strip are gathered into
+     * a ZoneAccumulator per zone index, weighted by the coverage if the index
+     * has it; the accumulators are merged at the
+     * end. Reads are serialized by the GDAL lock, while the accumulation of
+     * other bands goes on.
+     */
+    private ZoneAccumulator[] calculateStatistics(final Dataset rasterDS,
+            final ZoneIndex[] zoneIndices) throws Exception {
+        final Band rasterBand;
+        final float NO_DATA;
+        synchronized (GdalUtils.lockObject) {
+            for (ZoneIndex zoneIndex : zoneIndices) {
+                assert(rasterDS.GetRasterXSize() == zoneIndex.getWidth());
+                assert(rasterDS.GetRasterYSize() == zoneIndex.getHeight());
+            }
+
+            rasterBand = rasterDS.GetRasterBand(1); GdalUtils.errorCheck();
+
+            Double[] noData = new Double[1];
+            rasterBand.GetNoDataValue(noData);
+            NO_DATA = noData[0].floatValue();
+        }
+
+        final int WIDTH = zoneIndices[0].getWidth();
+
+        // Only the rows between the first and last zone pixels are read
+        int first = zoneIndices[0].getHeight();
+        int last = 0;
+        for (ZoneIndex zoneIndex : zoneIndices) {
+            for (int i=0; i<zoneIndex.getZoneCount(); i++) {
+                if (zoneIndex.getStart(i) < zoneIndex.getEnd(i)) {
+                    first = Math.min(first, zoneIndex.getPixel(zoneIndex.getStart(i)) / WIDTH);
+                    last = Math.max(last, zoneIndex.getPixel(zoneIndex.getEnd(i) - 1) / WIDTH + 1);
+                }
+            }
+        }
+        if (first >= last) {
+            return newAccumulators(zoneIndices.length);
+        }
+
+        // Workers can't read while the caller holds the lock
+        final int FIRST = first;
+        final int ROWS = last - first;
+        final int partitions = Thread.holdsLock(GdalUtils.lockObject) ? 1 :
+            Math.max(1, Math.min(ParallelUtils.getThreadCount(), ROWS / STRIP_ROWS));
+
+        List<Callable<ZoneAccumulator[]>> tasks = new ArrayList<Callable<ZoneAccumulator[]>>();
+        for (int p=0; p<partitions; p++) {
+            final int top = FIRST + (int) ((long) ROWS * p / partitions);
+            final int bottom = FIRST + (int) ((long) ROWS * (p + 1) / partitions);
+            tasks.add(new Callable<ZoneAccumulator[]>() {
+                @Override
+                public ZoneAccumulator[] call() throws Exception {
+                    ZoneAccumulator[] statistics = newAccumulators(zoneIndices.length);
+                    double[] rasterArray = new double[WIDTH * STRIP_ROWS];
+
+                    // Position of each zone's next pixel
+                    int[][] cursors = new int[zoneIndices.length][];
+                    for (int f=0; f<zoneIndices.length; f++) {
+                        cursors[f] = new int[zoneIndices[f].getZoneCount()];
+                        for (int i=0; i<cursors[f].length; i++) {
+                            cursors[f][i] = zoneIndices[f].findPixel(i, top * WIDTH);
+                        }
+                    }
+
+                    for (int y=top; y<bottom; y+=STRIP_ROWS) {
+                        final int rows = Math.min(STRIP_ROWS, bottom - y);
+                        synchronized (GdalUtils.lockObject) {
+                            rasterBand.ReadRaster(0, y, WIDTH, rows, rasterArray); GdalUtils.errorCheck();
+                        }
+
+                        final int base = y * WIDTH;
+                        final int limit = (y + rows) * WIDTH;
+                        for (int f=0; f<zoneIndices.length; f++) {
+                            ZoneIndex zoneIndex = zoneIndices[f];
+                            boolean weighted = zoneIndex.hasCoverage();
+                            for (int i=0; i<cursors[f].length; i++) {
+                                int zone = zoneIndex.getZone(i);
+                                int end = zoneIndex.getEnd(i);
+                                int position = cursors[f][i];
+                                for (; position<end; position++) {
+                                    int pixel = zoneIndex.getPixel(position);
+                                    if (pixel >= limit) {
+                                        break;
+                                    }
+
+                                    double value = rasterArray[pixel - base];
+                                    if (zone != 0 && value != NO_DATA) { // Neither are no data values
+                                        if (weighted) {
+                                            statistics[f].add(zone, value, zoneIndex.getCoverage(position));
+                                        } else {
+                                            statistics[f].add(zone, value);
+                                        }
+                                    }
+                                }
+                                cursors[f][i] = position;
+                            }
+                        }
+                    }
+
+                    return statistics;
+                }
+            });
+        }
+
+        ZoneAccumulator[] statistics = newAccumulators(zoneIndices.length);
+        for (ZoneAccumulator[] partial : ParallelUtils.invokeAll(tasks)) {
+            for (int f=0; f<statistics.length; f++) {
+                statistics[f].merge(partial[f]);
+            }
+        }
+        return statistics;
+    }
+
+    private ZoneAccumulator[] newAccumulators(int count) {
+        ZoneAccumulator[] accumulators = new ZoneAccumulator[count];
+        for (int i=0; i<count; i++) {
+            accumulators[i] = new ZoneAccumulator(mQuantiles);
+        }
+        return accumulators;
+    }
+
+
+    /**
+     * Writes one line per feature with values: zone, count, sum, mean,
+     * standard deviation, min and max, followed by the QUANTILES if enabled.
+     */
+    private void writeTable(File table, ZoneIndex zoneIndex, ZoneAccumulator statistics)
+    throws Exception {
+        PrintWriter writer = new PrintWriter(table);
+
+        for (int zone : zoneIndex.getFeatureZones()) {
+            if (statistics.getCount(zone) != 0) {
+                writer.print(zone + ",");
+                if (zoneIndex.hasCoverage()) {
+                    writer.print(statistics.getWeight(zone) + ",");
+                } else {
+                    writer.print(statistics.getCount(zone) + ",");
+                }
+                writer.print(statistics.getSum(zone) + ",");
+                writer.print(statistics.getMean(zone) + ",");
+                writer.print(statistics.getStdDev(zone) + ",");
+                writer.print(statistics.getMin(zone) + ",");
+                writer.print(statistics.getMax(zone));
+                if (mQuantiles) {
+                    for (double q : QUANTILES) {
+                        writer.print("," + statistics.getQuantile(zone, q));
+                    }
+                }
+                writer.println();
+            }
+        }
+
+        writer.close();
+
+        if (mQuantiles) {
+            writeHistogramTable(getHistogramTable(table), zoneIndex, statistics);
+        }
+    }
+
+    /**
+     * Returns the histogram table written next to a table when quantiles are
+     * enabled, e.g. zonal-histogram.csv for zonal.csv.
+     */
+    public static File getHistogramTable(File table) {
+        final String name = table.getName();
+        final int dot = name.lastIndexOf('.');
+        return new File(table.getParentFile(), dot < 0 ? name + "-histogram" :
+            name.substring(0, dot) + "-histogram" + name.substring(dot));
+    }
+
+    /**
+     * Writes one line per feature with values: zone, min, max, followed by
+     * the estimated count (or covered area) of each of the HISTOGRAM_BINS
+     * equal bins from min to max.
+     */
+    private void writeHistogramTable(File table, ZoneIndex zoneIndex, ZoneAccumulator statistics)
+    throws Exception {
+        PrintWriter writer = new PrintWriter(table);
+
+        for (int zone : zoneIndex.getFeatureZones()) {
+            if (statistics.getCount(zone) != 0) {
+                writer.print(zone + ",");
+                writer.print(statistics.getMin(zone) + ",");
+                writer.print(statistics.getMax(zone));
+                for (double weight : statistics.getHistogram(zone, HISTOGRAM_BINS)) {
+                    writer.print("," + weight);
+                }
+                writer.println();
+            }
+        }
+
+        writer.close();
+    }
+
+}
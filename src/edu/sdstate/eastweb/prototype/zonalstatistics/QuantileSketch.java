@@ -0,0 +1,311 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics;
+
+import java.util.Arrays;
+
+/**
+ * Estimates quantiles of a stream of values in a single pass with a merging
+ * t-digest: values are buffered, then sorted and collapsed into weighted
+ * centroids that are small near the tails and larger near the median. Two
+ * sketches can be merged, e.g. ones filled by different threads, with about
+ * the same accuracy as a single sketch of all the values. Values can be
+ * weighted, in which case the quantiles are of the weighted distribution.
+ */
+public final class QuantileSketch {
+    private static final double DEFAULT_COMPRESSION = 100;
+    private static final int INITIAL_BUFFER = 16;
+
+    private final double mCompression;
+    private final int mMaxBuffer;
+
+    private double[] mMeans = new double[0];
+    private double[] mWeights = new double[0];
+    private int mCentroids = 0;
+
+    private double[] mBuffer = new double[INITIAL_BUFFER];
+    private double[] mBufferWeights = new double[INITIAL_BUFFER];
+    private int mBuffered = 0;
+
+    private long mCount = 0;
+    private double mTotalWeight = 0;
+    private double mMin = Double.POSITIVE_INFINITY;
+    private double mMax = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression bounds the number of centroids; higher is more
+     * accurate and uses more memory
+     */
+    public QuantileSketch(double compression) {
+        mCompression = compression;
+        mMaxBuffer = (int) (5 * compression);
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value with a positive weight.
+     */
+    public void add(double value, double weight) {
+        if (mBuffered == mBuffer.length) {
+            if (mBuffered >= mMaxBuffer) {
+                compress();
+            } else {
+                final int length = Math.min(mMaxBuffer, mBuffer.length * 2);
+                mBuffer = Arrays.copyOf(mBuffer, length);
+                mBufferWeights = Arrays.copyOf(mBufferWeights, length);
+            }
+        }
+        mBuffer[mBuffered] = value;
+        mBufferWeights[mBuffered++] = weight;
+
+        mCount++;
+        mTotalWeight += weight;
+        if (value < mMin) {
+            mMin = value;
+        }
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    /**
+     * Adds the values summarized by another sketch.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.mCount == 0) {
+            return;
+        }
+
+        compress();
+        other.compress();
+        collapse(other.mMeans, other.mWeights, other.mCentroids);
+
+        mCount += other.mCount;
+        mTotalWeight += other.mTotalWeight;
+        mMin = Math.min(mMin, other.mMin);
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getMin() {
+        return mCount == 0 ? Double.NaN : mMin;
+    }
+
+    public double getMax() {
+        return mCount == 0 ? Double.NaN : mMax;
+    }
+
+    /**
+     * Returns the estimated value at quantile q (0 to 1), or NaN if the
+     * sketch is empty.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]");
+        }
+
+        compress();
+        if (mCentroids == 0) {
+            return Double.NaN;
+        }
+        if (mCentroids == 1) {
+            return mMeans[0];
+        }
+
+        // Each centroid's weight is centered on its mean
+        final double index = q * mTotalWeight;
+        if (index < mWeights[0] / 2) {
+            return mMin + (mMeans[0] - mMin) * index / (mWeights[0] / 2);
+        }
+
+        double weightSoFar = mWeights[0] / 2;
+        for (int i = 0; i < mCentroids - 1; i++) {
+            final double dw = (mWeights[i] + mWeights[i + 1]) / 2;
+            if (weightSoFar + dw > index) {
+                final double t = (index - weightSoFar) / dw;
+                return mMeans[i] + t * (mMeans[i + 1] - mMeans[i]);
+            }
+            weightSoFar += dw;
+        }
+
+        final int last = mCentroids - 1;
+        final double t = Math.min(1, (index - weightSoFar) / (mWeights[last] / 2));
+        return mMeans[last] + t * (mMax - mMeans[last]);
+    }
+
+    /**
+     * Returns the estimated fraction of the weight at or below value, the
+     * inverse of quantile, or NaN if the sketch is empty.
+     */
+    public double cdf(double value) {
+        compress();
+        if (mCentroids == 0) {
+            return Double.NaN;
+        }
+        if (value < mMin) {
+            return 0;
+        }
+        if (value >= mMax) {
+            return 1;
+        }
+        if (mCentroids == 1) {
+            return (value - mMin) / (mMax - mMin);
+        }
+
+        // Walk the same points quantile interpolates between
+        double weightSoFar = 0;
+        double previous = mMin;
+        for (int i = 0; i <= mCentroids; i++) {
+            final double nextWeight;
+            final double next;
+            if (i == mCentroids) {
+                nextWeight = mTotalWeight;
+                next = mMax;
+            } else {
+                nextWeight = i == 0 ? mWeights[0] / 2 : weightSoFar + (mWeights[i - 1] + mWeights[i]) / 2;
+                next = mMeans[i];
+            }
+            if (value < next) {
+                final double t = (value - previous) / (next - previous);
+                return (weightSoFar + t * (nextWeight - weightSoFar)) / mTotalWeight;
+            }
+            weightSoFar = nextWeight;
+            previous = next;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the estimated weight of each bin between consecutive edges,
+     * which must be sorted. Bins include their lower edge, and the last one
+     * its upper edge too; weight outside the edges isn't counted.
+     */
+    public double[] histogram(double[] edges) {
+        final double[] weights = new double[Math.max(0, edges.length - 1)];
+        if (mCount == 0) {
+            return weights;
+        }
+
+        double below = edges[0] <= mMin ? 0 : cdf(edges[0]);
+        for (int i = 0; i < weights.length; i++) {
+            final double cdf = cdf(edges[i + 1]);
+            weights[i] = (cdf - below) * mTotalWeight;
+            below = cdf;
+        }
+        return weights;
+    }
+
+    /**
+     * Collapses the buffered values into the centroids.
+     */
+    private void compress() {
+        if (mBuffered == 0) {
+            return;
+        }
+
+        sort(mBuffer, mBufferWeights, 0, mBuffered - 1);
+        final int buffered = mBuffered;
+        mBuffered = 0;
+        collapse(mBuffer, mBufferWeights, buffered);
+    }
+
+    /**
+     * Merges the sorted centroids into this sketch's centroids, combining
+     * neighbours while they fit within one unit of the k1 scale function.
+     */
+    private void collapse(double[] means, double[] weights, int count) {
+        // Merge the two sorted lists
+        final int total = mCentroids + count;
+        final double[] sortedMeans = new double[total];
+        final double[] sortedWeights = new double[total];
+        double totalWeight = 0;
+        for (int i = 0, a = 0, b = 0; i < total; i++) {
+            if (b == count || (a < mCentroids && mMeans[a] <= means[b])) {
+                sortedMeans[i] = mMeans[a];
+                sortedWeights[i] = mWeights[a++];
+            } else {
+                sortedMeans[i] = means[b];
+                sortedWeights[i] = weights[b++];
+            }
+            totalWeight += sortedWeights[i];
+        }
+
+        // Combine neighbours in place
+        int out = 0;
+        double weightSoFar = 0;
+        for (int i = 1; i < total; i++) {
+            final double proposed = sortedWeights[out] + sortedWeights[i];
+            if (k(weightSoFar / totalWeight) + 1 >= k((weightSoFar + proposed) / totalWeight)) {
+                sortedMeans[out] += (sortedMeans[i] - sortedMeans[out]) * sortedWeights[i] / proposed;
+                sortedWeights[out] = proposed;
+            } else {
+                weightSoFar += sortedWeights[out];
+                out++;
+                sortedMeans[out] = sortedMeans[i];
+                sortedWeights[out] = sortedWeights[i];
+            }
+        }
+
+        mCentroids = total == 0 ? 0 : out + 1;
+        mMeans = Arrays.copyOf(sortedMeans, mCentroids);
+        mWeights = Arrays.copyOf(sortedWeights, mCentroids);
+    }
+
+    /**
+     * Sorts values[low..high] in place, moving their weights along.
+     */
+    private static void sort(double[] values, double[] weights, int low, int high) {
+        while (high - low > 16) {
+            final double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, weights, i++, j--);
+                }
+            }
+
+            // Recurse into the smaller part
+            if (j - low < high - i) {
+                sort(values, weights, low, j);
+                low = i;
+            } else {
+                sort(values, weights, i, high);
+                high = j;
+            }
+        }
+
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && values[j - 1] > values[j]; j--) {
+                swap(values, weights, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(double[] values, double[] weights, int i, int j) {
+        final double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        final double weight = weights[i];
+        weights[i] = weights[j];
+        weights[j] = weight;
+    }
+
+    private double k(double q) {
+        return mCompression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+    }
+}
@@ -0,0 +1,276 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics;
+
+/**
+ * Accumulates per-zone statistics (count, sum, min, max, mean and population
+ * standard deviation) without boxing: zones are kept in an open-addressing
+ * hash table of primitive arrays, and the mean and variance are updated with
+ * Welford's method. Adding a value never allocates unless the table grows.
+ *
+ * Values can be weighted, e.g. by the fraction of their pixel covered by the
+ * zone; the sum, mean and standard deviation are then weighted, and the total
+ * weight is kept next to the count of values.
+ *
+ * Zone 0 means "no zone" and can't be accumulated.
+ *
+ * Optionally, a QuantileSketch is kept per zone so that quantiles such as the
+ * median, and histograms, can be estimated in the same pass.
+ */
+public final class ZoneAccumulator {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int mSize = 0;
+    private int[] mZones;
+    private long[] mCounts;
+    private double[] mWeights;
+    private double[] mSums;
+    private double[] mMins;
+    private double[] mMaxs;
+    private double[] mMeans;
+    private double[] mM2s;
+    private final boolean mQuantiles;
+    private QuantileSketch[] mSketches;
+
+    public ZoneAccumulator() {
+        this(false);
+    }
+
+    /**
+     * @param quantiles whether to keep a quantile sketch per zone
+     */
+    public ZoneAccumulator(boolean quantiles) {
+        mQuantiles = quantiles;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mZones = new int[capacity];
+        mCounts = new long[capacity];
+        mWeights = new double[capacity];
+        mSums = new double[capacity];
+        mMins = new double[capacity];
+        mMaxs = new double[capacity];
+        mMeans = new double[capacity];
+        mM2s = new double[capacity];
+        if (mQuantiles) {
+            mSketches = new QuantileSketch[capacity];
+        }
+    }
+
+    private static int hash(int zone) {
+        final int h = zone * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot of the zone, or the empty slot where it would go.
+     */
+    private int slot(int zone) {
+        final int mask = mZones.length - 1;
+        int slot = hash(zone) & mask;
+        while (mZones[slot] != 0 && mZones[slot] != zone) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the zone, creating it if needed.
+     */
+    private int slotForUpdate(int zone) {
+        int slot = slot(zone);
+        if (mZones[slot] == 0) {
+            if ((mSize + 1) * 2 > mZones.length) {
+                grow();
+                slot = slot(zone);
+            }
+            mZones[slot] = zone;
+            mMins[slot] = Double.POSITIVE_INFINITY;
+            mMaxs[slot] = Double.NEGATIVE_INFINITY;
+            if (mQuantiles) {
+                mSketches[slot] = new QuantileSketch();
+            }
+            mSize++;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        final int[] zones = mZones;
+        final long[] counts = mCounts;
+        final double[] weights = mWeights;
+        final double[] sums = mSums;
+        final double[] mins = mMins;
+        final double[] maxs = mMaxs;
+        final double[] means = mMeans;
+        final double[] m2s = mM2s;
+        final QuantileSketch[] sketches = mSketches;
+
+        allocate(zones.length * 2);
+        for (int i = 0; i < zones.length; i++) {
+            if (zones[i] != 0) {
+                final int slot = slot(zones[i]);
+                mZones[slot] = zones[i];
+                mCounts[slot] = counts[i];
+                mWeights[slot] = weights[i];
+                mSums[slot] = sums[i];
+                mMins[slot] = mins[i];
+                mMaxs[slot] = maxs[i];
+                mMeans[slot] = means[i];
+                mM2s[slot] = m2s[i];
+                if (mQuantiles) {
+                    mSketches[slot] = sketches[i];
+                }
+            }
+        }
+    }
+
+    public void add(int zone, double value) {
+        add(zone, value, 1);
+    }
+
+    /**
+     * Adds a value with a positive weight.
+     */
+    public void add(int zone, double value, double weight) {
+        assert(zone != 0);
+        assert(weight > 0);
+
+        final int slot = slotForUpdate(zone);
+        mCounts[slot]++;
+        final double totalWeight = mWeights[slot] += weight;
+        mSums[slot] += weight * value;
+        if (value < mMins[slot]) {
+            mMins[slot] = value;
+        }
+        if (value > mMaxs[slot]) {
+            mMaxs[slot] = value;
+        }
+        final double delta = value - mMeans[slot];
+        mMeans[slot] += delta * weight / totalWeight;
+        mM2s[slot] += weight * delta * (value - mMeans[slot]);
+        if (mQuantiles) {
+            mSketches[slot].add(value, weight);
+        }
+    }
+
+    /**
+     * Adds the values accumulated by another accumulator, e.g. one filled by
+     * another thread.
+     */
+    public void merge(ZoneAccumulator other) {
+        for (int i = 0; i < other.mZones.length; i++) {
+            if (other.mZones[i] == 0) {
+                continue;
+            }
+
+            final int slot = slotForUpdate(other.mZones[i]);
+            final double weight = mWeights[slot] + other.mWeights[i];
+            final double delta = other.mMeans[i] - mMeans[slot];
+            mM2s[slot] += other.mM2s[i] + delta * delta * mWeights[slot] * other.mWeights[i] / weight;
+            mMeans[slot] += delta * other.mWeights[i] / weight;
+            mWeights[slot] = weight;
+            mCounts[slot] += other.mCounts[i];
+            mSums[slot] += other.mSums[i];
+            mMins[slot] = Math.min(mMins[slot], other.mMins[i]);
+            mMaxs[slot] = Math.max(mMaxs[slot], other.mMaxs[i]);
+            if (mQuantiles && other.mQuantiles) {
+                mSketches[slot].merge(other.mSketches[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of zones with at least one value.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean contains(int zone) {
+        return zone != 0 && mZones[slot(zone)] == zone;
+    }
+
+    /**
+     * Returns the zones with at least one value, in no particular order.
+     */
+    public int[] getZones() {
+        final int[] zones = new int[mSize];
+        int i = 0;
+        for (int zone : mZones) {
+            if (zone != 0) {
+                zones[i++] = zone;
+            }
+        }
+        return zones;
+    }
+
+    public long getCount(int zone) {
+        return contains(zone) ? mCounts[slot(zone)] : 0;
+    }
+
+    /**
+     * Returns the total weight of the zone's values, which is the count if
+     * they weren't weighted.
+     */
+    public double getWeight(int zone) {
+        return contains(zone) ? mWeights[slot(zone)] : 0;
+    }
+
+    public double getSum(int zone) {
+        return get(mSums, zone);
+    }
+
+    public double getMin(int zone) {
+        return get(mMins, zone);
+    }
+
+    public double getMax(int zone) {
+        return get(mMaxs, zone);
+    }
+
+    public double getMean(int zone) {
+        return get(mMeans, zone);
+    }
+
+    public double getStdDev(int zone) {
+        if (!contains(zone)) {
+            return Double.NaN;
+        }
+        final int slot = slot(zone);
+        return Math.sqrt(mM2s[slot] / mWeights[slot]);
+    }
+
+    /**
+     * Returns the estimated value of the zone at quantile q (0 to 1), or NaN
+     * if the zone is missing or quantiles aren't kept.
+     */
+    public double getQuantile(int zone, double q) {
+        if (!mQuantiles || !contains(zone)) {
+            return Double.NaN;
+        }
+        return mSketches[slot(zone)].quantile(q);
+    }
+
+    /**
+     * Returns the estimated weight of the zone in each of the given number of
+     * equal bins between its min and max, or null if the zone is missing or
+     * quantiles aren't kept.
+     */
+    public double[] getHistogram(int zone, int bins) {
+        if (!mQuantiles || !contains(zone)) {
+            return null;
+        }
+
+        final int slot = slot(zone);
+        final double[] edges = new double[bins + 1];
+        for (int i = 0; i <= bins; i++) {
+            edges[i] = mMins[slot] + (mMaxs[slot] - mMins[slot]) * i / bins;
+        }
+        edges[bins] = mMaxs[slot];
+        return mSketches[slot].histogram(edges);
+    }
+
+    private double get(double[] array, int zone) {
+        return contains(zone) ? array[slot(zone)] : Double.NaN;
+    }
+}
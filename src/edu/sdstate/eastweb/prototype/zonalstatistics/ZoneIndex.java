@@ -0,0 +1,592 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.Transformer;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+import org.gdal.ogr.DataSource;
+import org.gdal.ogr.Feature;
+import org.gdal.ogr.Geometry;
+import org.gdal.ogr.Layer;
+import org.gdal.ogr.ogr;
+import org.gdal.osr.SpatialReference;
+
+import edu.sdstate.eastweb.prototype.util.GdalUtils;
+import edu.sdstate.eastweb.prototype.util.MappedIntArrays;
+import edu.sdstate.eastweb.prototype.util.Signature;
+
+/**
+ * The pixels of each zone of a shapefile field on the grid of a raster, in
+ * compressed sparse row form: zone i owns the pixel offsets (y * width + x)
+ * from getStart(i) to getEnd(i), in ascending order. Zonal statistics are then
+ * a gather over each zone's own pixels, so small zones in large rasters are
+ * cheap and overlapping features are counted in every zone they belong to.
+ *
+ * Each feature is rasterized on its own, in a window around its envelope. A
+ * pixel belongs to a feature if its center is inside. When coverage is
+ * requested, features are rasterized on a finer grid instead, and every pixel
+ * they touch is kept with the fraction of it they cover.
+ *
+ * The index is built once per (shapefile, field, grid) and kept as a
+ * memory-mapped file in a cache directory. The cache file is rebuilt when the
+ * shapefile changes.
+ */
+public final class ZoneIndex {
+    private static final String[] SHAPEFILE_EXTENSIONS = { ".shp", ".shx", ".dbf", ".prj" };
+
+    /**
+     * Subpixels per pixel side used to estimate coverage fractions.
+     */
+    private static final int SUBPIXELS = 8;
+
+    /**
+     * Largest window rasterized at once, in bytes. Features whose window is
+     * larger are rasterized in strips of pixel rows.
+     */
+    private static final int MAX_WINDOW_BYTES = 16 * 1024 * 1024;
+
+    private static final Map<File, Long> sSignatures = new HashMap<File, Long>();
+    private static final Map<File, ZoneIndex> sIndices = new HashMap<File, ZoneIndex>();
+
+    private final int mWidth;
+    private final int mHeight;
+    private final IntBuffer mZones;
+    private final IntBuffer mOffsets;
+    private final IntBuffer mPixels;
+    private final IntBuffer mCoverage;
+    private final int[] mFeatureZones;
+
+    private ZoneIndex(int width, int height, IntBuffer zones, IntBuffer offsets,
+            IntBuffer pixels, IntBuffer coverage, int[] featureZones) {
+        mWidth = width;
+        mHeight = height;
+        mZones = zones;
+        mOffsets = offsets;
+        mPixels = pixels;
+        mCoverage = coverage;
+        mFeatureZones = featureZones;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getZoneCount() {
+        return mZones.limit();
+    }
+
+    public int getZone(int i) {
+        return mZones.get(i);
+    }
+
+    /**
+     * Returns the position of the first pixel of zone i.
+     */
+    public int getStart(int i) {
+        return mOffsets.get(i);
+    }
+
+    /**
+     * Returns the position after the last pixel of zone i.
+     */
+    public int getEnd(int i) {
+        return mOffsets.get(i + 1);
+    }
+
+    /**
+     * Returns the pixel offset (y * width + x) at a position.
+     */
+    public int getPixel(int position) {
+        return mPixels.get(position);
+    }
+
+    /**
+     * Returns the first position of zone i whose pixel offset is at least the
+     * given one.
+     */
+    public int findPixel(int i, int pixel) {
+        int low = getStart(i);
+        int high = getEnd(i);
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mPixels.get(middle) < pixel) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public boolean hasCoverage() {
+        return mCoverage != null;
+    }
+
+    /**
+     * Returns the fraction of the pixel at a position covered by its zone, or
+     * 1 if the index has no coverage.
+     */
+    public float getCoverage(int position) {
+        return mCoverage == null ? 1 : Float.intBitsToFloat(mCoverage.get(position));
+    }
+
+    /**
+     * Returns the zone of each feature, in layer order.
+     */
+    public int[] getFeatureZones() {
+        return mFeatureZones.clone();
+    }
+
+    /**
+     * Collects (zone, pixel, coverage) entries in any order and builds the
+     * sorted index. A pixel added twice to a zone, by overlapping features
+     * with the same value, is kept once with the coverages summed up to 1.
+     *
+     * Entries are kept in flat primitive arrays, tagged with the number of
+     * their zone in order of appearance, which an open-addressing table maps
+     * zones to. build() counts the entries of each zone, lays the zones out
+     * with prefix sums, and fills them in a second pass.
+     */
+    public static final class Builder {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final int mWidth;
+        private final int mHeight;
+        private final boolean mCoverage;
+
+        private int[] mZones = new int[INITIAL_CAPACITY];
+        private int mZoneCount = 0;
+        private int[] mTable = newTable(INITIAL_CAPACITY);
+
+        private int[] mEntryZones = new int[INITIAL_CAPACITY];
+        private long[] mEntries = new long[INITIAL_CAPACITY];
+        private int mSize = 0;
+
+        private int[] mFeatureZones = new int[INITIAL_CAPACITY];
+        private int mFeatureCount = 0;
+
+        public Builder(int width, int height, boolean coverage) {
+            mWidth = width;
+            mHeight = height;
+            mCoverage = coverage;
+        }
+
+        private static int[] newTable(int capacity) {
+            final int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            return table;
+        }
+
+        private static int hash(int zone) {
+            final int h = zone * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Returns the slot of the table holding the zone's number, or the
+         * empty slot where it would go.
+         */
+        private int slot(int zone) {
+            final int mask = mTable.length - 1;
+            int slot = hash(zone) & mask;
+            while (mTable[slot] != -1 && mZones[mTable[slot]] != zone) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the number of the zone, adding it if it's new.
+         */
+        private int addZone(int zone) {
+            int slot = slot(zone);
+            if (mTable[slot] == -1) {
+                if ((mZoneCount + 1) * 2 > mTable.length) {
+                    mTable = newTable(mTable.length * 2);
+                    for (int i = 0; i < mZoneCount; i++) {
+                        mTable[slot(mZones[i])] = i;
+                    }
+                    slot = slot(zone);
+                }
+                if (mZoneCount == mZones.length) {
+                    mZones = Arrays.copyOf(mZones, mZoneCount * 2);
+                }
+                mZones[mZoneCount] = zone;
+                mTable[slot] = mZoneCount++;
+            }
+            return mTable[slot];
+        }
+
+        /**
+         * Adds the zone of the next feature in layer order.
+         */
+        public void addFeature(int zone) {
+            if (mFeatureCount == mFeatureZones.length) {
+                mFeatureZones = Arrays.copyOf(mFeatureZones, mFeatureCount * 2);
+            }
+            mFeatureZones[mFeatureCount++] = zone;
+            addZone(zone);
+        }
+
+        public void add(int zone, int pixel, float coverage) {
+            assert(pixel >= 0 && pixel < mWidth * mHeight);
+
+            if (mSize == mEntries.length) {
+                mEntryZones = Arrays.copyOf(mEntryZones, mSize * 2);
+                mEntries = Arrays.copyOf(mEntries, mSize * 2);
+            }
+            mEntryZones[mSize] = addZone(zone);
+            mEntries[mSize] = ((long) pixel << 32) | (Float.floatToIntBits(coverage) & 0xffffffffL);
+            mSize++;
+        }
+
+        public ZoneIndex build() {
+            final int[] zones = Arrays.copyOf(mZones, mZoneCount);
+
+            // Count the entries of each zone, and turn the counts into starts
+            final int[] starts = new int[zones.length + 1];
+            for (int i = 0; i < mSize; i++) {
+                starts[mEntryZones[i] + 1]++;
+            }
+            for (int i = 0; i < zones.length; i++) {
+                starts[i + 1] += starts[i];
+            }
+
+            // Fill in the entries zone by zone
+            final int[] next = Arrays.copyOf(starts, zones.length);
+            final long[] entries = new long[mSize];
+            for (int i = 0; i < mSize; i++) {
+                entries[next[mEntryZones[i]]++] = mEntries[i];
+            }
+
+            final int[] offsets = new int[zones.length + 1];
+            final int[] pixels = new int[mSize];
+            final int[] coverage = mCoverage ? new int[mSize] : null;
+            int position = 0;
+            for (int i = 0; i < zones.length; i++) {
+                Arrays.sort(entries, starts[i], starts[i + 1]);
+
+                offsets[i] = position;
+                for (int j = starts[i]; j < starts[i + 1]; j++) {
+                    final int pixel = (int) (entries[j] >>> 32);
+                    final float fraction = Float.intBitsToFloat((int) entries[j]);
+                    if (position > offsets[i] && pixels[position - 1] == pixel) {
+                        if (mCoverage) {
+                            coverage[position - 1] = Float.floatToIntBits(Math.min(1,
+                                    Float.intBitsToFloat(coverage[position - 1]) + fraction));
+                        }
+                        continue;
+                    }
+                    pixels[position] = pixel;
+                    if (mCoverage) {
+                        coverage[position] = Float.floatToIntBits(fraction);
+                    }
+                    position++;
+                }
+            }
+            offsets[zones.length] = position;
+
+            return new ZoneIndex(mWidth, mHeight, IntBuffer.wrap(zones), IntBuffer.wrap(offsets),
+                    IntBuffer.wrap(Arrays.copyOf(pixels, position)),
+                    mCoverage ? IntBuffer.wrap(Arrays.copyOf(coverage, position)) : null,
+                    Arrays.copyOf(mFeatureZones, mFeatureCount));
+        }
+    }
+
+    /**
+     * Returns the zone index of the field on the grid of the given raster.
+     *
+     * @param layerFile shapefile, which must be a subset of raster
+     * @param field integer field of the shapefile
+     * @param raster raster defining the grid
+     * @param cacheDirectory directory of the cache files, or null to keep the
+     * index in memory only
+     * @param coverage whether to compute coverage fractions
+     */
+    public static ZoneIndex get(File layerFile, String field, Dataset raster,
+            File cacheDirectory, boolean coverage) throws Exception {
+        if (cacheDirectory == null) {
+            return rasterize(layerFile, field, raster, coverage);
+        }
+
+        final double[] transform;
+        final int rasterWidth;
+        final int rasterHeight;
+        final String projection;
+        synchronized (GdalUtils.lockObject) {
+            transform = raster.GetGeoTransform();
+            rasterWidth = raster.GetRasterXSize();
+            rasterHeight = raster.GetRasterYSize();
+            projection = raster.GetProjection();
+        }
+
+        final long grid = new Signature()
+        .add(transform)
+        .add(rasterWidth)
+        .add(rasterHeight)
+        .add(projection)
+        .get();
+
+        final Signature signature = new Signature().add(field).add(grid).add(coverage ? 1 : 0);
+        final String baseName = layerFile.getName().replaceFirst("\\.[^.]*$", "");
+        for (String extension : SHAPEFILE_EXTENSIONS) {
+            final File file = new File(layerFile.getParentFile(), baseName + extension);
+            if (file.exists()) {
+                signature.add(file);
+            }
+        }
+
+        final File cacheFile = new File(cacheDirectory, String.format("%s.%s.%016x.%s",
+                baseName, field, grid, coverage ? "coverage" : "zones"));
+        synchronized (sIndices) {
+            final Long cachedSignature = sSignatures.get(cacheFile);
+            if (cachedSignature != null && cachedSignature == signature.get()) {
+                return sIndices.get(cacheFile);
+            }
+
+            ZoneIndex index = open(cacheFile, signature.get());
+            if (index == null) {
+                index = rasterize(layerFile, field, raster, coverage);
+
+                // If a stale file is still mapped (on Windows), the index is
+                // kept in memory only until the next run
+                MappedIntArrays.write(cacheFile, signature.get(),
+                        new int[] { index.mWidth, index.mHeight },
+                        index.mZones.array(),
+                        index.mOffsets.array(),
+                        index.mPixels.array(),
+                        index.mCoverage == null ? new int[0] : index.mCoverage.array(),
+                        index.mFeatureZones);
+            }
+
+            sIndices.put(cacheFile, index);
+            sSignatures.put(cacheFile, signature.get());
+            return index;
+        }
+    }
+
+    private static ZoneIndex open(File cacheFile, long signature) throws IOException {
+        final IntBuffer[] arrays = MappedIntArrays.open(cacheFile, signature);
+        if (arrays == null || arrays.length != 6 || arrays[0].limit() != 2) {
+            return null;
+        }
+
+        final int[] featureZones = new int[arrays[5].limit()];
+        arrays[5].get(featureZones);
+        return new ZoneIndex(arrays[0].get(0), arrays[0].get(1), arrays[1], arrays[2], arrays[3],
+                arrays[4].limit() == 0 ? null : arrays[4], featureZones);
+    }
+
+    private static ZoneIndex rasterize(File layerFile, String field, Dataset raster,
+            boolean coverage) throws Exception {
+        GdalUtils.register();
+
+        synchronized (GdalUtils.lockObject) {
+            DataSource layerSource = null;
+            Layer layer = null;
+            try {
+                layerSource = ogr.Open(layerFile.getPath());
+                if (layerSource == null) {
+                    throw new IOException("Could not load " + layerFile.getPath());
+                }
+                layer = layerSource.GetLayer(0);
+                if (layer == null) {
+                    throw new IOException("Could not load layer 0 of " + layerFile.getPath());
+                }
+
+                // Validate inputs
+                if (!isSameProjection(raster, layer)) {
+                    throw new IOException("Raster isn't in same projection as \"" + layerFile.getPath() + "\"");
+                }
+
+                if (!isLayerSubsetOfRaster(layer, raster)) {
+                    throw new IOException("\"" + layerFile.getPath() + "\" isn't a subset of the raster.");
+                }
+
+                final double[] transform = raster.GetGeoTransform();
+                final int width = raster.GetRasterXSize();
+                final int height = raster.GetRasterYSize();
+                final Builder builder = new Builder(width, height, coverage);
+
+                // Rasterize every feature in its own window
+                layer.ResetReading(); GdalUtils.errorCheck();
+                Feature feature = layer.GetNextFeature(); GdalUtils.errorCheck();
+                while (feature != null) {
+                    final int zone = feature.GetFieldAsInteger(field); GdalUtils.errorCheck();
+                    builder.addFeature(zone);
+
+                    final Geometry geometry = feature.GetGeometryRef();
+                    if (geometry != null) {
+                        rasterize(geometry, layer.GetSpatialRef(), zone, transform, width, height,
+                                coverage ? SUBPIXELS : 1, builder);
+                    }
+
+                    feature.delete();
+                    feature = layer.GetNextFeature(); GdalUtils.errorCheck();
+                }
+
+                return builder.build();
+            } finally { // Clean up
+                if (layer != null) {
+                    layer.delete(); GdalUtils.errorCheck();
+                }
+                if (layerSource != null) {
+                    layerSource.delete(); GdalUtils.errorCheck();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rasterizes one geometry over the window of pixels around its envelope,
+     * with the given number of subpixels per pixel side, and adds the pixels
+     * it covers to the builder. The window is rasterized in strips of pixel
+     * rows of at most MAX_WINDOW_BYTES.
+     */
+    private static void rasterize(Geometry geometry, SpatialReference reference, int zone,
+            double[] transform, int width, int height, int subpixels, Builder builder)
+    throws Exception {
+        final double[] envelope = new double[4];
+        geometry.GetEnvelope(envelope); GdalUtils.errorCheck();
+
+        final double x0 = (envelope[0] - transform[0]) / transform[1];
+        final double x1 = (envelope[1] - transform[0]) / transform[1];
+        final double y0 = (envelope[3] - transform[3]) / transform[5];
+        final double y1 = (envelope[2] - transform[3]) / transform[5];
+        final int left = Math.max(0, (int) Math.floor(Math.min(x0, x1)));
+        final int right = Math.min(width, (int) Math.ceil(Math.max(x0, x1)));
+        final int top = Math.max(0, (int) Math.floor(Math.min(y0, y1)));
+        final int bottom = Math.min(height, (int) Math.ceil(Math.max(y0, y1)));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        final int windowWidth = (right - left) * subpixels;
+        final int stripRows = Math.max(1, Math.min(bottom - top,
+                MAX_WINDOW_BYTES / (windowWidth * subpixels)));
+
+        DataSource featureSource = null;
+        Dataset window = null;
+        try {
+            // A layer holding only this feature
+            featureSource = ogr.GetDriverByName("Memory").CreateDataSource(""); GdalUtils.errorCheck();
+            final Layer featureLayer = featureSource.CreateLayer("feature", reference); GdalUtils.errorCheck();
+            final Feature copy = new Feature(featureLayer.GetLayerDefn());
+            copy.SetGeometry(geometry); GdalUtils.errorCheck();
+            featureLayer.CreateFeature(copy); GdalUtils.errorCheck();
+            copy.delete();
+
+            window = gdal.GetDriverByName("MEM").Create("", windowWidth, stripRows * subpixels, 1,
+                    gdalconst.GDT_Byte);
+            GdalUtils.errorCheck();
+
+            final byte[] rows = new byte[windowWidth * subpixels];
+            final int[] counts = new int[right - left];
+            final float area = subpixels * subpixels;
+            for (int y = top; y < bottom; y++) {
+                final int stripTop = top + (y - top) / stripRows * stripRows;
+                if (y == stripTop) {
+                    window.SetGeoTransform(new double[] {
+                            transform[0] + left * transform[1], transform[1] / subpixels, 0,
+                            transform[3] + stripTop * transform[5], 0, transform[5] / subpixels
+                    });
+                    GdalUtils.errorCheck();
+                    window.GetRasterBand(1).Fill(0); GdalUtils.errorCheck();
+
+                    gdal.RasterizeLayer(window, new int[] {1}, featureLayer, new double[] {1});
+                    GdalUtils.errorCheck();
+                }
+
+                window.GetRasterBand(1).ReadRaster(0, (y - stripTop) * subpixels, windowWidth,
+                        subpixels, rows);
+                GdalUtils.errorCheck();
+
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < rows.length; i++) {
+                    if (rows[i] != 0) {
+                        counts[(i % windowWidth) / subpixels]++;
+                    }
+                }
+
+                for (int x = 0; x < counts.length; x++) {
+                    if (counts[x] != 0) {
+                        builder.add(zone, y * width + left + x, counts[x] / area);
+                    }
+                }
+            }
+        } finally {
+            if (window != null) {
+                window.delete();
+            }
+            if (featureSource != null) {
+                featureSource.delete();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given raster and layer share the same projection.
+     *
+     * @param raster
+     * @param layer
+     * @return true if projections are the same
+     * @throws IOException
+     * @throws UnsupportedOperationException
+     * @throws IllegalArgumentException
+     */
+    private static boolean isSameProjection(Dataset raster, Layer layer) throws IllegalArgumentException, UnsupportedOperationException, IOException {
+        SpatialReference rasterRef = new SpatialReference(raster.GetProjection()); GdalUtils.errorCheck();
+        boolean same = layer.GetSpatialRef().IsSame(rasterRef) != 0; GdalUtils.errorCheck();
+        return same;
+    }
+
+    private static boolean isLayerSubsetOfRaster(Layer layer, Dataset raster)
+    throws IllegalArgumentException, UnsupportedOperationException, IOException {
+        double[] extent = layer.GetExtent(true); GdalUtils.errorCheck();
+
+        Vector<String> options = new Vector<String>();
+        options.add("SRC_DS=" + layer.GetSpatialRef().ExportToWkt()); GdalUtils.errorCheck();
+
+        Transformer transformer = new Transformer(null, raster, options); GdalUtils.errorCheck();
+
+        double[] min = new double[] {Math.min(extent[0], extent[1]), Math.min(extent[2], extent[3]), 0};
+        double[] max = new double[] {Math.max(extent[0], extent[1]), Math.max(extent[2], extent[3]), 0};
+
+        transformer.TransformPoint(0, min); GdalUtils.errorCheck();
+        transformer.TransformPoint(0, max); GdalUtils.errorCheck();
+
+        int layerMinX = (int) Math.round(Math.min(min[0], max[0]));
+        int layerMaxX = (int) Math.round(Math.max(min[0], max[0]));
+        int layerMinY = (int) Math.round(Math.min(min[1], max[1]));
+        int layerMaxY = (int) Math.round(Math.max(min[1], max[1]));
+
+        int rasterMinX = 0;
+        int rasterMaxX = raster.GetRasterXSize(); GdalUtils.errorCheck();
+        int rasterMinY = 0;
+        int rasterMaxY = raster.GetRasterYSize(); GdalUtils.errorCheck();
+
+        if (layerMinX < rasterMinX) {
+            return false;
+        } else if (layerMaxX > rasterMaxX) {
+            return false;
+        } else if (layerMinY < rasterMinY) {
+            return false;
+        } else if (layerMaxY > rasterMaxY) {
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics.tests;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.zonalstatistics.QuantileSketch;
+import edu.sdstate.eastweb.prototype.zonalstatistics.ZoneAccumulator;
+import static org.junit.Assert.*;
+
+public class QuantileSketchTests {
+    private static final Random sRandom = new Random(36);
+
+    @Test
+    public void testSmall() {
+        final QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+
+        for (double value : new double[] { 5, 1, 4, 2, 3 }) {
+            sketch.add(value);
+        }
+
+        assertEquals(5, sketch.getCount());
+        assertEquals(3, sketch.quantile(0.5), 0);
+        assertEquals(1, sketch.quantile(0), 0);
+        assertEquals(5, sketch.quantile(1), 0);
+    }
+
+    @Test
+    public void testLarge() {
+        final QuantileSketch sketch = new QuantileSketch();
+        final double[] values = new double[100000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = sRandom.nextGaussian();
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[] { 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99 }) {
+            assertEquals(values[(int) (q * values.length)], sketch.quantile(q), 0.02);
+        }
+        assertEquals(values[0], sketch.getMin(), 0);
+        assertEquals(values[values.length - 1], sketch.getMax(), 0);
+    }
+
+    @Test
+    public void testMerge() {
+        final QuantileSketch all = new QuantileSketch();
+        final QuantileSketch first = new QuantileSketch();
+        final QuantileSketch second = new QuantileSketch();
+        for (int i = 0; i < 50000; ++i) {
+            final double value = sRandom.nextDouble() * 100;
+            all.add(value);
+            (sRandom.nextBoolean() ? first : second).add(value);
+        }
+        first.merge(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        for (double q : new double[] { 0.05, 0.25, 0.5, 0.75, 0.95 }) {
+            assertEquals(all.quantile(q), first.quantile(q), 0.5);
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        final QuantileSketch sketch = new QuantileSketch();
+        final double[] exact = new double[10];
+        for (int i = 0; i < 100000; ++i) {
+            final double value = sRandom.nextDouble() * 100;
+            sketch.add(value);
+            exact[(int) (value / 10)]++;
+        }
+
+        final double[] edges = new double[11];
+        for (int i = 0; i < edges.length; ++i) {
+            edges[i] = i * 10;
+        }
+        final double[] histogram = sketch.histogram(edges);
+
+        double total = 0;
+        for (int i = 0; i < exact.length; ++i) {
+            assertEquals(exact[i], histogram[i], 500);
+            total += histogram[i];
+        }
+        assertEquals(sketch.getCount(), total, 1e-6);
+        assertEquals(0, sketch.cdf(-1), 0);
+        assertEquals(1, sketch.cdf(100), 0);
+        assertEquals(0.5, sketch.cdf(sketch.quantile(0.5)), 1e-9);
+    }
+
+    @Test
+    public void testZoneAccumulator() {
+        final ZoneAccumulator first = new ZoneAccumulator(true);
+        final ZoneAccumulator second = new ZoneAccumulator(true);
+        for (int i = 1; i <= 1001; ++i) {
+            (i % 2 == 0 ? first : second).add(1 + i % 3, i);
+        }
+        first.merge(second);
+
+        assertEquals(3, first.size());
+        assertEquals(501, first.getQuantile(3, 0.5), 10);
+        assertTrue(Double.isNaN(first.getQuantile(7, 0.5)));
+        assertTrue(Double.isNaN(new ZoneAccumulator().getQuantile(1, 0.5)));
+
+        double total = 0;
+        for (double weight : first.getHistogram(3, 4)) {
+            total += weight;
+        }
+        assertEquals(first.getCount(3), total, 1e-6);
+        assertNull(new ZoneAccumulator().getHistogram(1, 4));
+    }
+}
@@ -0,0 +1,87 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics.tests;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.zonalstatistics.ZoneAccumulator;
+import static org.junit.Assert.*;
+
+public class ZoneAccumulatorTests {
+    private static final Random sRandom = new Random();
+
+    @Test
+    public void testStatistics() {
+        final ZoneAccumulator statistics = new ZoneAccumulator();
+        for (double value : new double[] { 2, 4, 4, 4, 5, 5, 7, 9 }) {
+            statistics.add(46011, value);
+        }
+        statistics.add(3, -1.5);
+
+        assertEquals(2, statistics.size());
+        assertEquals(8, statistics.getCount(46011));
+        assertEquals(40, statistics.getSum(46011), 1e-12);
+        assertEquals(5, statistics.getMean(46011), 1e-12);
+        assertEquals(2, statistics.getStdDev(46011), 1e-12);
+        assertEquals(2, statistics.getMin(46011), 0);
+        assertEquals(9, statistics.getMax(46011), 0);
+        assertEquals(0, statistics.getStdDev(3), 0);
+        assertEquals(0, statistics.getCount(7));
+        assertFalse(statistics.contains(7));
+    }
+
+    @Test
+    public void testManyZonesAndMerge() {
+        final ZoneAccumulator all = new ZoneAccumulator();
+        final ZoneAccumulator first = new ZoneAccumulator();
+        final ZoneAccumulator second = new ZoneAccumulator();
+        for (int i = 0; i < 100000; ++i) {
+            final int zone = 1 + sRandom.nextInt(5000);
+            final double value = sRandom.nextGaussian() * 10 + zone;
+            all.add(zone, value);
+            (sRandom.nextBoolean() ? first : second).add(zone, value);
+        }
+        first.merge(second);
+
+        assertEquals(all.size(), first.size());
+        for (int zone : all.getZones()) {
+            assertEquals(all.getCount(zone), first.getCount(zone));
+            assertEquals(all.getSum(zone), first.getSum(zone), 1e-6);
+            assertEquals(all.getMin(zone), first.getMin(zone), 0);
+            assertEquals(all.getMax(zone), first.getMax(zone), 0);
+            assertEquals(all.getMean(zone), first.getMean(zone), 1e-9);
+            assertEquals(all.getStdDev(zone), first.getStdDev(zone), 1e-9);
+        }
+    }
+
+    @Test
+    public void testWeighted() {
+        final double[] values = new double[1000];
+        final double[] weights = new double[values.length];
+        final ZoneAccumulator first = new ZoneAccumulator(true);
+        final ZoneAccumulator second = new ZoneAccumulator(true);
+        double totalWeight = 0;
+        double sum = 0;
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = sRandom.nextGaussian() * 5 + 20;
+            weights[i] = 0.01 + sRandom.nextDouble();
+            totalWeight += weights[i];
+            sum += weights[i] * values[i];
+            (sRandom.nextBoolean() ? first : second).add(1, values[i], weights[i]);
+        }
+        first.merge(second);
+
+        final double mean = sum / totalWeight;
+        double m2 = 0;
+        for (int i = 0; i < values.length; ++i) {
+            m2 += weights[i] * (values[i] - mean) * (values[i] - mean);
+        }
+
+        assertEquals(values.length, first.getCount(1));
+        assertEquals(totalWeight, first.getWeight(1), 1e-9);
+        assertEquals(sum, first.getSum(1), 1e-6);
+        assertEquals(mean, first.getMean(1), 1e-9);
+        assertEquals(Math.sqrt(m2 / totalWeight), first.getStdDev(1), 1e-9);
+        assertEquals(20, first.getQuantile(1, 0.5), 1);
+    }
+}
@@ -0,0 +1,91 @@
+package edu.sdstate.eastweb.prototype.zonalstatistics.tests;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.sdstate.eastweb.prototype.zonalstatistics.ZoneIndex;
+import static org.junit.Assert.*;
+
+public class ZoneIndexTests {
+    private static final Random sRandom = new Random();
+
+    @Test
+    public void testBuild() {
+        final int width = 1 + sRandom.nextInt(100);
+        final int height = 1 + sRandom.nextInt(100);
+        final boolean[][] expected = new boolean[3][width * height];
+
+        final ZoneIndex.Builder builder = new ZoneIndex.Builder(width, height, false);
+        builder.addFeature(20);
+        builder.addFeature(10);
+        builder.addFeature(20); // Second feature with the same value
+        builder.addFeature(30);
+        for (int i = 0; i < 5000; ++i) {
+            final int zone = sRandom.nextInt(3);
+            final int pixel = sRandom.nextInt(width * height);
+            expected[zone][pixel] = true;
+            builder.add(10 * (zone + 1), pixel, 1);
+        }
+
+        final ZoneIndex index = builder.build();
+        assertEquals(width, index.getWidth());
+        assertEquals(height, index.getHeight());
+        assertFalse(index.hasCoverage());
+        assertArrayEquals(new int[] { 20, 10, 20, 30 }, index.getFeatureZones());
+        assertEquals(3, index.getZoneCount());
+        assertEquals(20, index.getZone(0));
+        assertEquals(10, index.getZone(1));
+        assertEquals(30, index.getZone(2));
+
+        for (int i = 0; i < index.getZoneCount(); ++i) {
+            final boolean[] pixels = expected[index.getZone(i) / 10 - 1];
+            int position = index.getStart(i);
+            for (int pixel = 0; pixel < pixels.length; ++pixel) {
+                if (pixels[pixel]) {
+                    assertEquals(pixel, index.getPixel(position++));
+                }
+                assertEquals(position, index.findPixel(i, pixel + 1));
+            }
+            assertEquals(index.getEnd(i), position);
+            assertEquals(1, index.getCoverage(index.getStart(i)), 0);
+        }
+    }
+
+    @Test
+    public void testManyZones() {
+        final ZoneIndex.Builder builder = new ZoneIndex.Builder(100, 100, false);
+        for (int zone = -500; zone < 500; ++zone) {
+            builder.add(zone, zone + 500, 1);
+            builder.add(zone, 9999 - (zone + 500), 1);
+        }
+
+        final ZoneIndex index = builder.build();
+        assertEquals(1000, index.getZoneCount());
+        for (int i = 0; i < index.getZoneCount(); ++i) {
+            assertEquals(i - 500, index.getZone(i));
+            assertEquals(2, index.getEnd(i) - index.getStart(i));
+            assertEquals(i, index.getPixel(index.getStart(i)));
+            assertEquals(9999 - i, index.getPixel(index.getStart(i) + 1));
+        }
+    }
+
+    @Test
+    public void testCoverage() {
+        final ZoneIndex.Builder builder = new ZoneIndex.Builder(4, 4, true);
+        builder.addFeature(1);
+        builder.addFeature(1);
+        builder.add(1, 5, 0.25f);
+        builder.add(1, 2, 1);
+        builder.add(1, 5, 0.5f); // Overlapping features
+        builder.add(1, 2, 0.5f);
+
+        final ZoneIndex index = builder.build();
+        assertTrue(index.hasCoverage());
+        assertEquals(2, index.getEnd(0) - index.getStart(0));
+        assertEquals(2, index.getPixel(0));
+        assertEquals(1, index.getCoverage(0), 0);
+        assertEquals(5, index.getPixel(1));
+        assertEquals(0.75, index.getCoverage(1), 1e-6);
+    }
+}